@@ -0,0 +1,87 @@
+package com.byhiras.avro.benchmarks;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.byhiras.avro.AvroMatchers.avroContains;
+import static com.byhiras.avro.AvroMatchers.avroContainsInAnyOrder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.generic.IndexedRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.byhiras.avro.AvroMatchers.Options;
+
+/**
+ * Building and matching {@code avroContains} and {@code avroContainsInAnyOrder} for collections of flat records. The
+ * actual records are in the expected order for {@code avroContains}, and shuffled for {@code avroContainsInAnyOrder}.
+ * <p>
+ * Matching in any order is quadratic in the size, so {@link #containsInAnyOrder()} is only measured up to 10000
+ * records: {@code -p size=10,1000,10000}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContainsBenchmark {
+    @Param({ "10", "1000", "100000" })
+    public int size;
+
+    private List<IndexedRecord> expected;
+    private List<IndexedRecord> actual;
+    private List<IndexedRecord> shuffled;
+    private Options options;
+
+    @Setup
+    public void setUp() {
+        expected = new ArrayList<IndexedRecord>(size);
+        actual = new ArrayList<IndexedRecord>(size);
+        for (int i = 0; i < size; i++) {
+            expected.add(Shape.FLAT.create(i, null));
+            actual.add(Shape.FLAT.create(i, null));
+        }
+        shuffled = new ArrayList<IndexedRecord>(actual);
+        Collections.shuffle(shuffled, new Random(42));
+        options = new Options().freeze();
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return avroContains(expected, options).matches(actual);
+    }
+
+    @Benchmark
+    public boolean containsInAnyOrder() {
+        return avroContainsInAnyOrder(expected, options).matches(shuffled);
+    }
+}
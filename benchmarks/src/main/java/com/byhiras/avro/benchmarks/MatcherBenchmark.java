@@ -0,0 +1,88 @@
+package com.byhiras.avro.benchmarks;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.byhiras.avro.AvroMatchers.avroEqualTo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.generic.IndexedRecord;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.byhiras.avro.AvroMatchers.Options;
+
+/**
+ * Construction of a matcher for one record, matching an equal record, and describing the mismatch with a record which
+ * differs in one deeply nested value.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatcherBenchmark {
+    @Param({ "FLAT", "PERSON", "NESTED", "WIDE" })
+    public Shape shape;
+
+    @Param({ "false", "true" })
+    public boolean compiled;
+
+    private IndexedRecord expected;
+    private IndexedRecord equal;
+    private IndexedRecord different;
+    private Options options;
+    private Matcher<IndexedRecord> matcher;
+
+    @Setup
+    public void setUp() {
+        expected = shape.create(1, "expected");
+        equal = shape.create(1, "expected");
+        different = shape.create(1, "actual");
+        options = new Options().setCompiled(compiled).freeze();
+        matcher = avroEqualTo(expected, options);
+    }
+
+    @Benchmark
+    public Matcher<IndexedRecord> construct() {
+        return avroEqualTo(expected, options);
+    }
+
+    @Benchmark
+    public boolean matchEqual() {
+        return matcher.matches(equal);
+    }
+
+    @Benchmark
+    public String describeMismatch() {
+        StringDescription description = new StringDescription();
+        matcher.describeMismatch(different, description);
+        return description.toString();
+    }
+}
@@ -0,0 +1,93 @@
+package com.byhiras.avro.benchmarks;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.byhiras.avro.AvroMatchers.avroEqualTo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.specific.SpecificData;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.byhiras.avro.RandomAvroGenerator;
+
+/**
+ * Matching and describing mismatches of randomly generated records, with unions, recursion and collections which grow
+ * with the depth.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RandomRecordBenchmark {
+    @Param({ "1", "2", "3" })
+    public long seed;
+
+    @Param({ "3", "6" })
+    public int depth;
+
+    @Param({ "8", "32" })
+    public int collectionSize;
+
+    private IndexedRecord expected;
+    private IndexedRecord equal;
+    private IndexedRecord different;
+    private Matcher<IndexedRecord> matcher;
+
+    @Setup
+    public void setUp() {
+        RandomAvroGenerator generator = new RandomAvroGenerator(seed)
+                .setMaxDepth(depth)
+                .setMaxCollectionSize(collectionSize);
+        expected = generator.generateRecord(generator.generateSchema());
+        equal = SpecificData.get().deepCopy(expected.getSchema(), expected);
+        different = generator.mutate(expected).getRecord();
+        matcher = avroEqualTo(expected);
+    }
+
+    @Benchmark
+    public Matcher<IndexedRecord> construct() {
+        return avroEqualTo(expected);
+    }
+
+    @Benchmark
+    public boolean matchEqual() {
+        return matcher.matches(equal);
+    }
+
+    @Benchmark
+    public String describeMismatch() {
+        StringDescription description = new StringDescription();
+        matcher.describeMismatch(different, description);
+        return description.toString();
+    }
+}
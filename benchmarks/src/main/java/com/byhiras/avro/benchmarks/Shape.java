@@ -0,0 +1,139 @@
+package com.byhiras.avro.benchmarks;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.generic.IndexedRecord;
+
+import com.byhiras.avro.Gender;
+import com.byhiras.avro.Location;
+import com.byhiras.avro.Person;
+import com.byhiras.avro.PhoneNumber;
+import com.byhiras.avro.PhoneNumberType;
+
+/**
+ * Records used by the benchmarks, from flat to deeply nested. Records created with the same arguments are equal, and
+ * a record created with a different {@code leaf} differs from it in a single, deeply nested value.
+ */
+public enum Shape {
+    /**
+     * Ten primitive fields.
+     */
+    FLAT {
+        @Override
+        public IndexedRecord create(long id, String leaf) {
+            return Flat.newBuilder()
+                    .setId(id)
+                    .setName("flat-" + id)
+                    .setCount((int) id)
+                    .setScore(id * 0.5)
+                    .setActive(true)
+                    .setCreated(1500000000000L + id)
+                    .setCategory("category")
+                    .setRank(3)
+                    .setWeight(1.25)
+                    .setNote(leaf)
+                    .build();
+        }
+    },
+
+    /**
+     * The person used by the unit tests, with a nested record, an array of records and a small map.
+     */
+    PERSON {
+        @Override
+        public IndexedRecord create(long id, String leaf) {
+            Map<String, String> familyMembers = new HashMap<String, String>();
+            familyMembers.put("Sister", "Jane Smith");
+            List<PhoneNumber> phoneNumbers = new ArrayList<PhoneNumber>();
+            phoneNumbers.add(new PhoneNumber(PhoneNumberType.HOME, "12345"));
+            phoneNumbers.add(new PhoneNumber(PhoneNumberType.MOBILE, "07654"));
+            phoneNumbers.add(new PhoneNumber(PhoneNumberType.WORK, "23456"));
+
+            return Person.newBuilder()
+                    .setFirstName("John")
+                    .setLastName("Smith")
+                    .setTitle("Mr")
+                    .setGender(Gender.MALE)
+                    .setAge(id)
+                    .setHeight(1.8)
+                    .setEmail("john.smith@acme.com")
+                    .setAddress(Location.newBuilder()
+                            .setFirstLine("High and Over")
+                            .setSecondLine("Highover Park")
+                            .setThirdLine("Amersham")
+                            .setCounty("Buckinghamshire")
+                            .setPostCode(leaf)
+                            .build())
+                    .setTelephoneNumbers(phoneNumbers)
+                    .setFamilyMembers(familyMembers)
+                    .build();
+        }
+    },
+
+    /**
+     * A tree of depth 6 with three children per node, 1093 records in all.
+     */
+    NESTED {
+        @Override
+        public IndexedRecord create(long id, String leaf) {
+            return tree(id, 6, 3, 4, leaf);
+        }
+    },
+
+    /**
+     * One record with an array of 10000 records and a map of 1000 entries.
+     */
+    WIDE {
+        @Override
+        public IndexedRecord create(long id, String leaf) {
+            Node root = tree(id, 1, 0, 1000, null);
+            for (int i = 0; i < 10000; i++) {
+                root.getChildren().add(tree(i, 1, 0, 1, i == 9999 ? leaf : null));
+            }
+            return root;
+        }
+    };
+
+    public abstract IndexedRecord create(long id, String leaf);
+
+    private static Node tree(long id, int depth, int fanout, int attributes, String leaf) {
+        Map<String, String> attributeMap = new HashMap<String, String>();
+        for (int i = 0; i < attributes; i++) {
+            attributeMap.put("attribute-" + i, "value-" + i);
+        }
+        List<Node> children = new ArrayList<Node>();
+        for (int i = 0; i < fanout && depth > 1; i++) {
+            // the leaf value is placed in the last leaf of the tree
+            children.add(tree(id * fanout + i, depth - 1, fanout, attributes, i == fanout - 1 ? leaf : null));
+        }
+        if (leaf != null && children.isEmpty()) {
+            attributeMap.put("leaf", leaf);
+        }
+        return Node.newBuilder()
+                .setName("node-" + id)
+                .setValue(id)
+                .setWeight(id * 0.25)
+                .setChildren(children)
+                .setAttributes(attributeMap)
+                .build();
+    }
+}
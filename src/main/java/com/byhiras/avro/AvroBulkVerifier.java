@@ -0,0 +1,347 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import org.apache.avro.generic.IndexedRecord;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.SelfDescribing;
+import org.hamcrest.StringDescription;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Verifies many independent (expected, actual) pairs concurrently and aggregates the results, instead of asserting
+ * each pair in turn and stopping at the first failure.
+ * <p>
+ * By default pairs are verified on virtual threads when the JDK supports them, otherwise on a pool with one thread
+ * per processor. The number of pairs in flight is bounded, so the pairs may be produced lazily.
+ */
+public class AvroBulkVerifier {
+    private final Options options;
+    private ExecutorService executor;
+    private int maxInFlight = 1024;
+    private int maxFailureDetails = 100;
+
+    public AvroBulkVerifier() {
+        this(new Options());
+    }
+
+    public AvroBulkVerifier(@Nonnull Options options) {
+        this.options = checkNotNull(options, "options is null").freeze();
+    }
+
+    /**
+     * @param executor executor used to verify pairs, which is not shut down by the verifier
+     * @return this
+     */
+    public AvroBulkVerifier setExecutor(@Nonnull ExecutorService executor) {
+        this.executor = checkNotNull(executor, "executor is null");
+        return this;
+    }
+
+    public AvroBulkVerifier setMaxInFlight(int maxInFlight) {
+        checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * @param maxFailureDetails maximum number of failed pairs for which a mismatch description is retained, those with
+     *            the lowest indices, so that reports do not depend on the order pairs finish in
+     * @return this
+     */
+    public AvroBulkVerifier setMaxFailureDetails(int maxFailureDetails) {
+        checkArgument(maxFailureDetails >= 0, "maxFailureDetails is negative");
+        this.maxFailureDetails = maxFailureDetails;
+        return this;
+    }
+
+    public <T extends IndexedRecord> Report verify(Iterable<? extends Pair<T>> pairs) throws InterruptedException {
+        return verify(pairs.iterator());
+    }
+
+    /**
+     * Verify all pairs, blocking until they have been verified.
+     *
+     * @param pairs pairs to verify, consumed from the calling thread
+     * @return aggregated report
+     * @throws InterruptedException if interrupted while waiting for pairs to be verified
+     */
+    public <T extends IndexedRecord> Report verify(Iterator<? extends Pair<T>> pairs) throws InterruptedException {
+        ExecutorService executorService = executor != null ? executor : newDefaultExecutor();
+        final Semaphore inFlight = new Semaphore(maxInFlight);
+        final Failures failures = new Failures(maxFailureDetails);
+
+        long start = System.nanoTime();
+        int count = 0;
+        try {
+            while (pairs.hasNext()) {
+                final Pair<T> pair = pairs.next();
+                final int index = count++;
+                checkArgument(count > 0, "too many pairs");
+
+                inFlight.acquire();
+                Runnable task = new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            verify(pair, index, failures);
+                        } finally {
+                            inFlight.release();
+                        }
+                    }
+                };
+                try {
+                    executorService.execute(task);
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+            inFlight.acquire(maxInFlight);
+            if (options.getMismatchSink() != null) {
+                try {
+                    options.getMismatchSink().flush();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        } finally {
+            if (executor == null) {
+                executorService.shutdown();
+            }
+        }
+
+        return new Report(count, failures.count.get(), failures.failed, failures.sorted(), System.nanoTime() - start);
+    }
+
+    /**
+     * Verify a pair, recording it in the failures unless it matches.
+     */
+    private <T extends IndexedRecord> void verify(Pair<T> pair, int index, Failures failures) {
+        try {
+            Matcher<T> matcher = IsAvroObjectEqual.avroObjectEqualTo(pair.expected, options);
+            if (matcher.matches(pair.actual)) {
+                return;
+            }
+            boolean kept = failures.isKept(index);
+            String mismatch = null;
+            if (kept || options.getMismatchSink() != null) {
+                MismatchList mismatches = MismatchList.create(ImmutableList.of(Integer.toString(index)), options);
+                matcher.describeMismatch(pair.actual, mismatches);
+                if (kept) {
+                    mismatch = StringDescription.toString(mismatches);
+                }
+            }
+            failures.add(index, mismatch);
+        } catch (Throwable e) {
+            // including errors, eg. from a custom matcher, so that the pair is not reported as successful
+            failures.add(index, index + " threw " + e);
+        }
+    }
+
+    private ExecutorService newDefaultExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // virtual threads need Java 21
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * An expected record and the actual record to compare with it.
+     */
+    public static class Pair<T extends IndexedRecord> {
+        private final T expected;
+        private final T actual;
+
+        public static <T extends IndexedRecord> Pair<T> of(@Nonnull T expected, T actual) {
+            return new Pair<T>(expected, actual);
+        }
+
+        private Pair(T expected, T actual) {
+            this.expected = checkNotNull(expected, "expected is null");
+            this.actual = actual;
+        }
+
+        public T getExpected() {
+            return expected;
+        }
+
+        public T getActual() {
+            return actual;
+        }
+    }
+
+    private static final Comparator<Failure> BY_INDEX = new Comparator<Failure>() {
+        @Override
+        public int compare(Failure o1, Failure o2) {
+            return o1.index < o2.index ? -1 : (o1.index == o2.index ? 0 : 1);
+        }
+    };
+
+    /**
+     * The pairs which failed and the mismatch descriptions of those with the lowest indices, whichever finish first.
+     */
+    private static class Failures {
+        private final int maxDetails;
+        private final BitSet failed = new BitSet();
+        private final AtomicInteger count = new AtomicInteger();
+        // with the highest index at the head
+        private final Queue<Failure> details;
+
+        Failures(int maxDetails) {
+            this.maxDetails = maxDetails;
+            this.details = new PriorityQueue<Failure>(Math.max(1, Math.min(maxDetails, 1024)), Collections.reverseOrder(BY_INDEX));
+        }
+
+        /**
+         * @return whether the description of a failure of the pair would be retained, once false it stays false as
+         *         only failures with lower indices replace retained ones
+         */
+        boolean isKept(int index) {
+            synchronized (details) {
+                return details.size() < maxDetails || (maxDetails > 0 && details.peek().index > index);
+            }
+        }
+
+        /**
+         * @param mismatch description of the mismatch, or {@code null} if it is not retained
+         */
+        void add(int index, String mismatch) {
+            synchronized (failed) {
+                failed.set(index);
+            }
+            count.incrementAndGet();
+            if (mismatch == null) {
+                return;
+            }
+            synchronized (details) {
+                if (details.size() < maxDetails) {
+                    details.add(new Failure(index, mismatch));
+                } else if (maxDetails > 0 && details.peek().index > index) {
+                    details.poll();
+                    details.add(new Failure(index, mismatch));
+                }
+            }
+        }
+
+        List<Failure> sorted() {
+            List<Failure> sorted = Lists.newArrayList(details);
+            Collections.sort(sorted, BY_INDEX);
+            return sorted;
+        }
+    }
+
+    static class Failure {
+        final int index;
+        final String mismatch;
+
+        Failure(int index, String mismatch) {
+            this.index = index;
+            this.mismatch = mismatch;
+        }
+    }
+
+    /**
+     * Aggregated outcome of a bulk verification.
+     */
+    public static class Report implements SelfDescribing {
+        private final int count;
+        private final int failureCount;
+        private final BitSet failed;
+        private final List<Failure> failures;
+        private final long elapsedNanos;
+
+        Report(int count, int failureCount, BitSet failed, List<Failure> failures, long elapsedNanos) {
+            this.count = count;
+            this.failureCount = failureCount;
+            this.failed = failed;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public boolean isSuccessful() {
+            return failureCount == 0;
+        }
+
+        /**
+         * @param index index of a pair in the order it was supplied
+         * @return {@code true} if the pair matched
+         */
+        public boolean isSuccessful(int index) {
+            checkArgument(index >= 0 && index < count, "index out of range: %s", index);
+            return !failed.get(index);
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getFailureCount() {
+            return failureCount;
+        }
+
+        public long getElapsed(TimeUnit unit) {
+            return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+
+        public double getPairsPerSecond() {
+            return elapsedNanos == 0 ? 0 : count * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            description.appendText(String.format("verified %d pairs in %d ms (%.0f pairs/s), %d failed",
+                    count, getElapsed(TimeUnit.MILLISECONDS), getPairsPerSecond(), failureCount));
+            for (Failure failure : failures) {
+                description.appendText("\n").appendText(failure.mismatch);
+            }
+            if (failures.size() < failureCount) {
+                description.appendText("\n... " + (failureCount - failures.size()) + " more failures");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return StringDescription.toString(this);
+        }
+    }
+}
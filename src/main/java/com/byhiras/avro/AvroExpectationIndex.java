@@ -0,0 +1,265 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.IndexedRecord;
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.base.Objects;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Holds many expected records and finds the one an actual record matches, for example to match the arguments of a
+ * mock with thousands of expectations using a single matcher from {@link #matcher()}. Expected records are indexed by
+ * fingerprint, so only expectations with the same fingerprint as the actual record are compared, rather than all of
+ * them.
+ * <p>
+ * Expectations added with the same {@link Options} instance share an index, the options are frozen when they are
+ * first used. When several expectations match, the first one added wins. When none do, the mismatch is described
+ * against the closest expectation: one with the same fingerprint if there is one, otherwise the one with the fewest
+ * top-level fields which differ from the actual record.
+ * <p>
+ * Expectations should all be added before matching, after which instances can be used by many threads.
+ *
+ * @param <E> record type
+ */
+public class AvroExpectationIndex<E extends IndexedRecord> {
+    private final Options defaultOptions = new Options().freeze();
+    private final Map<Options, Group<E>> groups = Maps.newIdentityHashMap();
+    private final List<Expectation<E>> expectations = Lists.newArrayList();
+
+    AvroExpectationIndex() {
+    }
+
+    /**
+     * Add an expected record, compared with the default options.
+     *
+     * @param expected expected record
+     * @return this
+     */
+    public AvroExpectationIndex<E> add(@Nonnull E expected) {
+        return add(expected, defaultOptions);
+    }
+
+    /**
+     * @param expected expected record
+     * @param options options to compare the record with
+     * @return this
+     */
+    public AvroExpectationIndex<E> add(@Nonnull E expected, @Nonnull Options options) {
+        checkNotNull(expected, "expected is null");
+        checkNotNull(options, "options is null");
+        Group<E> group = groups.get(options);
+        if (group == null) {
+            group = new Group<E>(options.freeze());
+            groups.put(options, group);
+        }
+        Expectation<E> expectation = new Expectation<E>(expectations.size(), expected,
+                IsAvroObjectEqual.avroObjectEqualTo(expected, group.options));
+        group.expectations.put(group.fingerprinter.fingerprint(expected), expectation);
+        expectations.add(expectation);
+        return this;
+    }
+
+    public int size() {
+        return expectations.size();
+    }
+
+    /**
+     * @param actual actual record
+     * @return the first added expected record which the actual record matches, or {@code null} if there is none
+     */
+    @Nullable
+    public E findMatch(@Nonnull E actual) {
+        int index = indexOf(actual);
+        return index < 0 ? null : expectations.get(index).record;
+    }
+
+    /**
+     * @param actual actual record
+     * @return index, in order of addition, of the first expected record which the actual record matches, or -1 if
+     *         there is none
+     */
+    public int indexOf(@Nonnull E actual) {
+        checkNotNull(actual, "actual is null");
+        Expectation<E> match = null;
+        for (Group<E> group : groups.values()) {
+            for (long fingerprint : group.fingerprinter.candidateFingerprints(actual)) {
+                for (Expectation<E> candidate : group.expectations.get(fingerprint)) {
+                    if (match != null && candidate.index > match.index) {
+                        // candidates are in order of addition, any later ones cannot win
+                        break;
+                    }
+                    if (candidate.matcher.matches(actual)) {
+                        match = candidate;
+                        break;
+                    }
+                }
+            }
+        }
+        return match == null ? -1 : match.index;
+    }
+
+    /**
+     * @return matcher which matches records matching any of the expected records
+     */
+    public Matcher<E> matcher() {
+        return new IndexMatcher();
+    }
+
+    /**
+     * Describe the mismatches of the actual record with the closest expectation. Only that expectation is described,
+     * as describing is much more expensive than matching.
+     */
+    private void describeClosest(E actual, Description description) {
+        Expectation<E> closest = null;
+        // an expectation with the same fingerprint differs only in what the fingerprint leaves out
+        for (Group<E> group : groups.values()) {
+            for (long fingerprint : group.fingerprinter.candidateFingerprints(actual)) {
+                List<Expectation<E>> candidates = group.expectations.get(fingerprint);
+                if (!candidates.isEmpty() && (closest == null || candidates.get(0).index < closest.index)) {
+                    closest = candidates.get(0);
+                }
+            }
+        }
+        if (closest == null) {
+            closest = closestByFields(actual);
+        }
+
+        MismatchList closestMismatches = new MismatchList();
+        closest.matcher.describeMismatch(actual, closestMismatches);
+        if (description instanceof MismatchList) {
+            MismatchList indexed = new MismatchList(ImmutableList.of(Integer.toString(closest.index)));
+            indexed.addAll(closestMismatches);
+            ((MismatchList) description).addAll(indexed);
+        } else {
+            description.appendText("closest is expectation " + closest.index + ":\n").appendDescriptionOf(closestMismatches);
+        }
+    }
+
+    /**
+     * @return the expectation with the fewest top-level fields which differ from the actual record, preferring
+     *         expectations with the same schema
+     */
+    private Expectation<E> closestByFields(E actual) {
+        String schemaName = actual.getSchema().getFullName();
+        boolean sameSchema = false;
+        for (Expectation<E> expectation : expectations) {
+            if (expectation.record.getSchema().getFullName().equals(schemaName)) {
+                sameSchema = true;
+                break;
+            }
+        }
+
+        Expectation<E> closest = null;
+        int closestDifferences = Integer.MAX_VALUE;
+        for (Expectation<E> expectation : expectations) {
+            if (sameSchema && !expectation.record.getSchema().getFullName().equals(schemaName)) {
+                continue;
+            }
+            int differences = countDifferences(expectation.record, actual, closestDifferences);
+            if (differences < closestDifferences) {
+                closest = expectation;
+                closestDifferences = differences;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Count the top-level fields of the expected record whose value is not equal in the actual record, ignoring the
+     * options, which is only an estimate of the number of mismatches but stops at the first difference in each field.
+     *
+     * @param limit count at which to stop, as the expectation cannot be the closest
+     */
+    private static int countDifferences(IndexedRecord expected, IndexedRecord actual, int limit) {
+        Schema actualSchema = actual.getSchema();
+        int differences = 0;
+        for (Field field : expected.getSchema().getFields()) {
+            Field actualField = actualSchema == expected.getSchema() ? field : actualSchema.getField(field.name());
+            if (actualField == null || !Objects.equal(expected.get(field.pos()), actual.get(actualField.pos()))) {
+                if (++differences >= limit) {
+                    break;
+                }
+            }
+        }
+        return differences;
+    }
+
+    private class IndexMatcher extends BaseMatcher<E> {
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean matches(Object item) {
+            return item instanceof IndexedRecord && indexOf((E) item) >= 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void describeMismatch(Object item, Description description) {
+            if (!(item instanceof IndexedRecord) || expectations.isEmpty()) {
+                super.describeMismatch(item, description);
+            } else {
+                describeClosest((E) item, description);
+            }
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            description.appendText("one of " + expectations.size() + " expected records");
+        }
+    }
+
+    private static class Group<E> {
+        final Options options;
+        final RecordFingerprinter fingerprinter;
+        final ListMultimap<Long, Expectation<E>> expectations = ArrayListMultimap.create();
+
+        Group(Options options) {
+            this.options = options;
+            this.fingerprinter = new RecordFingerprinter(options);
+        }
+    }
+
+    private static class Expectation<E> {
+        final int index;
+        final E record;
+        final Matcher<E> matcher;
+
+        Expectation(int index, E record, Matcher<E> matcher) {
+            this.index = index;
+            this.record = record;
+            this.matcher = matcher;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+
+/**
+ * Writes mismatches to an Avro container file, as records of {@link #SCHEMA}.
+ */
+public class AvroFileMismatchSink implements MismatchSink {
+    /**
+     * Schema of the records written, with the field path of the mismatch and its description.
+     */
+    public static final Schema SCHEMA = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"Mismatch\", "
+            + "\"namespace\": \"com.byhiras.avro\", \"fields\": ["
+            + "{\"name\": \"fieldPath\", \"type\": {\"type\": \"array\", \"items\": \"string\"}}, "
+            + "{\"name\": \"description\", \"type\": \"string\"}]}");
+
+    private final File file;
+    private final DataFileWriter<GenericRecord> writer;
+
+    /**
+     * @param file file to create, any existing file is overwritten
+     * @throws IOException if the file cannot be created
+     */
+    public AvroFileMismatchSink(@Nonnull File file) throws IOException {
+        this.file = checkNotNull(file, "file is null");
+        this.writer = new DataFileWriter<GenericRecord>(new GenericDatumWriter<GenericRecord>(SCHEMA)).create(SCHEMA, file);
+    }
+
+    @Override
+    public synchronized void write(List<String> fieldPath, String mismatch) throws IOException {
+        GenericRecord record = new GenericData.Record(SCHEMA);
+        record.put(0, fieldPath);
+        record.put(1, mismatch);
+        writer.append(record);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    @Override
+    public String toString() {
+        return file.getPath();
+    }
+}
@@ -0,0 +1,363 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Verifies the records of an Avro container file against expected records, decoding only the fields which are
+ * compared. The file is read with a projection of its schema which leaves out excluded fields, so the decoder skips
+ * them in the binary data rather than materializing them.
+ * <p>
+ * Records are decoded into the classes, or generic records, of the expected schema, with excluded fields left unset.
+ * Excluders are evaluated once per field of the schema, with array indices and map keys in paths replaced by
+ * {@code *}, so they should only depend on the field path, like {@link AvroMatchers#excludeFields(String...)}.
+ * Fields with custom matchers are always decoded, as are the fields of a record type which are excluded at some of
+ * the paths it occurs at but not all of them.
+ */
+public class AvroFileVerifier {
+    private AvroFileVerifier() {
+    }
+
+    /**
+     * Verify that the file holds the expected records in order.
+     *
+     * @param file Avro container file
+     * @param expected expected records
+     * @param options options to compare the records with
+     * @return the result of the verification
+     * @throws IOException if the file cannot be read
+     */
+    public static <E extends IndexedRecord> AvroStreamVerifier.Result verify(@Nonnull File file, @Nonnull Collection<E> expected,
+            @Nonnull Options options) throws IOException {
+        return verify(file, expected, options, AvroStreamVerifier.ordered(expected, options));
+    }
+
+    /**
+     * Verify that the file holds the expected records in any order.
+     *
+     * @param file Avro container file
+     * @param expected expected records
+     * @param options options to compare the records with
+     * @return the result of the verification
+     * @throws IOException if the file cannot be read
+     */
+    public static <E extends IndexedRecord> AvroStreamVerifier.Result verifyInAnyOrder(@Nonnull File file, @Nonnull Collection<E> expected,
+            @Nonnull Options options) throws IOException {
+        return verify(file, expected, options, AvroStreamVerifier.unordered(expected, options));
+    }
+
+    private static <E extends IndexedRecord> AvroStreamVerifier.Result verify(File file, Collection<E> expected, Options options,
+            AvroStreamVerifier<E> verifier) throws IOException {
+        checkNotNull(file, "file is null");
+        Schema expectedSchema = expected.isEmpty() ? null : Iterables.getFirst(expected, null).getSchema();
+        DataFileReader<E> reader = openProjected(file, expectedSchema, options);
+        try {
+            for (E actual : reader) {
+                verifier.offer(actual);
+            }
+        } finally {
+            reader.close();
+        }
+        return verifier.finish();
+    }
+
+    /**
+     * Open a file for reading only the fields which the options compare.
+     *
+     * @param file Avro container file
+     * @param expectedSchema schema of the expected records, whose classes records are decoded into, or {@code null}
+     *            to decode into the classes of the file's schema
+     * @param options options whose excluder determines the fields which are skipped
+     * @return reader of the projected records
+     * @throws IOException if the file cannot be opened
+     */
+    public static <E extends IndexedRecord> DataFileReader<E> openProjected(@Nonnull File file, @Nullable Schema expectedSchema,
+            @Nonnull Options options) throws IOException {
+        checkNotNull(file, "file is null");
+        checkNotNull(options, "options is null");
+        ProjectingData data = new ProjectingData(expectedSchema);
+        SpecificDatumReader<E> datumReader = new SpecificDatumReader<E>(data);
+        DataFileReader<E> reader = new DataFileReader<E>(file, datumReader);
+        datumReader.setExpected(projection(reader.getSchema(), options));
+        return reader;
+    }
+
+    /**
+     * @return the schema without the fields excluded by the options
+     */
+    static Schema projection(Schema schema, Options options) {
+        return new Projector(options).project(schema);
+    }
+
+    /**
+     * Builds the projection of a schema. A record type has a single definition, which keeps the fields kept at any
+     * of the paths it occurs at, so exclusions at one path do not drop fields at another; fields kept only for other
+     * paths are decoded but not compared. Recursive types, and the types within them, are kept whole.
+     */
+    private static class Projector {
+        private final Options options;
+        /** fields kept for each record type, by full name */
+        private final Map<String, Set<String>> kept = Maps.newHashMap();
+        private final Set<String> recursive = Sets.newHashSet();
+        private final Set<String> keptWhole = Sets.newHashSet();
+        private final Set<String> defined = Sets.newHashSet();
+
+        Projector(Options options) {
+            this.options = options;
+        }
+
+        Schema project(Schema schema) {
+            findRecursive(schema, Lists.<String> newArrayList(), Sets.<String> newHashSet());
+            collect(schema, ImmutableList.<String> of(), false);
+            StringBuilder json = new StringBuilder();
+            append(json, schema);
+            return new Schema.Parser().parse(json.toString());
+        }
+
+        private void findRecursive(Schema schema, List<String> stack, Set<String> visited) {
+            switch (schema.getType()) {
+            case RECORD:
+                int index = stack.indexOf(schema.getFullName());
+                if (index >= 0) {
+                    recursive.addAll(stack.subList(index, stack.size()));
+                    break;
+                }
+                if (!visited.add(schema.getFullName())) {
+                    break;
+                }
+                stack.add(schema.getFullName());
+                for (Field field : schema.getFields()) {
+                    findRecursive(field.schema(), stack, visited);
+                }
+                stack.remove(stack.size() - 1);
+                break;
+            case ARRAY:
+                findRecursive(schema.getElementType(), stack, visited);
+                break;
+            case MAP:
+                findRecursive(schema.getValueType(), stack, visited);
+                break;
+            case UNION:
+                for (Schema branch : schema.getTypes()) {
+                    findRecursive(branch, stack, visited);
+                }
+                break;
+            default:
+                break;
+            }
+        }
+
+        /**
+         * Collect the fields of the record types which are kept at the path.
+         *
+         * @param whole whether every field is kept, within a recursive type
+         */
+        private void collect(Schema schema, List<String> path, boolean whole) {
+            switch (schema.getType()) {
+            case RECORD:
+                String fullName = schema.getFullName();
+                whole = whole || recursive.contains(fullName);
+                if (whole && !keptWhole.add(fullName)) {
+                    break;
+                }
+                Set<String> fields = kept.get(fullName);
+                if (fields == null) {
+                    fields = Sets.newHashSet();
+                    kept.put(fullName, fields);
+                }
+                // excluders are given a record of the right schema, as they are not evaluated against actual records
+                IndexedRecord placeholder = new GenericData.Record(schema);
+                for (Field field : schema.getFields()) {
+                    List<String> fieldPath = AvroFileVerifier.append(path, field.name());
+                    if (whole || options.getMatcher(fieldPath) != null || !options.getExcluder().isExcluded(placeholder, fieldPath)) {
+                        fields.add(field.name());
+                        collect(field.schema(), fieldPath, whole);
+                    }
+                }
+                break;
+            case ARRAY:
+                collect(schema.getElementType(), AvroFileVerifier.append(path, "*"), whole);
+                break;
+            case MAP:
+                collect(schema.getValueType(), AvroFileVerifier.append(path, "*"), whole);
+                break;
+            case UNION:
+                for (Schema branch : schema.getTypes()) {
+                    collect(branch, path, whole);
+                }
+                break;
+            default:
+                break;
+            }
+        }
+
+        private void append(StringBuilder json, Schema schema) {
+            switch (schema.getType()) {
+            case RECORD:
+                if (!defined.add(schema.getFullName())) {
+                    json.append(JsonStrings.quote(schema.getFullName()));
+                    break;
+                }
+                Set<String> fields = kept.get(schema.getFullName());
+                json.append("{\"type\": \"record\", \"name\": ").append(JsonStrings.quote(schema.getFullName())).append(", \"fields\": [");
+                boolean first = true;
+                for (Field field : schema.getFields()) {
+                    if (!fields.contains(field.name())) {
+                        continue;
+                    }
+                    json.append(first ? "" : ", ").append("{\"name\": \"").append(field.name()).append("\", \"type\": ");
+                    append(json, field.schema());
+                    json.append('}');
+                    first = false;
+                }
+                json.append("]}");
+                break;
+            case ARRAY:
+                json.append("{\"type\": \"array\", \"items\": ");
+                append(json, schema.getElementType());
+                appendProps(json, schema);
+                json.append('}');
+                break;
+            case MAP:
+                json.append("{\"type\": \"map\", \"values\": ");
+                append(json, schema.getValueType());
+                // keeps the Java string type of keys
+                appendProps(json, schema);
+                json.append('}');
+                break;
+            case UNION:
+                json.append('[');
+                for (int i = 0; i < schema.getTypes().size(); i++) {
+                    json.append(i == 0 ? "" : ", ");
+                    append(json, schema.getTypes().get(i));
+                }
+                json.append(']');
+                break;
+            case ENUM:
+            case FIXED:
+                if (!defined.add(schema.getFullName())) {
+                    json.append(JsonStrings.quote(schema.getFullName()));
+                    break;
+                }
+                json.append(schema.toString());
+                break;
+            default:
+                // keeps properties such as the Java string type
+                json.append(schema.toString());
+                break;
+            }
+        }
+
+        private static void appendProps(StringBuilder json, Schema schema) {
+            // values are JSON nodes, whose text is their JSON
+            for (Map.Entry<String, ?> prop : schema.getJsonProps().entrySet()) {
+                json.append(", ").append(JsonStrings.quote(prop.getKey())).append(": ").append(prop.getValue());
+            }
+        }
+    }
+
+    private static List<String> append(List<String> path, String segment) {
+        return ImmutableList.copyOf(Iterables.concat(path, ImmutableList.of(segment)));
+    }
+
+    /**
+     * Creates records of the expected schema, rather than the projection, and sets their fields by name.
+     */
+    private static class ProjectingData extends SpecificData {
+        private final Map<String, Schema> expectedSchemas = Maps.newHashMap();
+
+        ProjectingData(Schema expectedSchema) {
+            if (expectedSchema != null) {
+                collectRecordSchemas(expectedSchema);
+            }
+        }
+
+        private void collectRecordSchemas(Schema schema) {
+            switch (schema.getType()) {
+            case RECORD:
+                if (expectedSchemas.put(schema.getFullName(), schema) == null) {
+                    for (Field field : schema.getFields()) {
+                        collectRecordSchemas(field.schema());
+                    }
+                }
+                break;
+            case ARRAY:
+                collectRecordSchemas(schema.getElementType());
+                break;
+            case MAP:
+                collectRecordSchemas(schema.getValueType());
+                break;
+            case UNION:
+                for (Schema branch : schema.getTypes()) {
+                    collectRecordSchemas(branch);
+                }
+                break;
+            default:
+                break;
+            }
+        }
+
+        @Override
+        public Object newRecord(Object old, Schema schema) {
+            // without an expected schema, specific records are still created from their own full schema
+            Schema expected = expectedSchemas.get(schema.getFullName());
+            return super.newRecord(old, expected != null ? expected : schema);
+        }
+
+        @Override
+        protected void setField(Object record, String name, int position, Object value, Object state) {
+            IndexedRecord indexedRecord = (IndexedRecord) record;
+            Field field = indexedRecord.getSchema().getField(name);
+            if (field != null) {
+                indexedRecord.put(field.pos(), value);
+            }
+        }
+
+        @Override
+        protected Object getField(Object record, String name, int position, Object state) {
+            IndexedRecord indexedRecord = (IndexedRecord) record;
+            Field field = indexedRecord.getSchema().getField(name);
+            return field == null ? null : indexedRecord.get(field.pos());
+        }
+    }
+}
@@ -18,12 +18,16 @@ package com.byhiras.avro;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.apache.avro.Schema;
 import org.apache.avro.generic.IndexedRecord;
@@ -33,6 +37,7 @@ import org.hamcrest.Matcher;
 
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 
@@ -46,6 +51,19 @@ public class AvroMatchers {
         return IsAvroObjectEqual.avroObjectEqualTo(obj, options);
     }
 
+    /**
+     * @param obj expected record
+     * @return matcher of the Avro binary encoding of the record, as a {@code byte[]} or {@link java.nio.ByteBuffer},
+     *         written with the schema of the expected record
+     */
+    public static <T extends IndexedRecord> Matcher<Object> avroBinaryEqualTo(T obj) {
+        return avroBinaryEqualTo(obj, new Options());
+    }
+
+    public static <T extends IndexedRecord> Matcher<Object> avroBinaryEqualTo(T obj, Options options) {
+        return new BinaryRecordMatcher<T>(obj, options.freeze());
+    }
+
     public static <E extends IndexedRecord> Matcher<Iterable<? extends E>> avroContains(E... elements) {
         return avroContains(new Options(), elements);
     }
@@ -78,6 +96,35 @@ public class AvroMatchers {
         return IsAvroObjectEqual.containsInAnyOrder(ImmutableList.copyOf(elements), options);
     }
 
+    public static <E extends IndexedRecord> AvroStreamVerifier<E> avroStreamVerifier(Collection<E> expected) {
+        return avroStreamVerifier(expected, new Options());
+    }
+
+    public static <E extends IndexedRecord> AvroStreamVerifier<E> avroStreamVerifier(Collection<E> expected, Options options) {
+        return AvroStreamVerifier.ordered(expected, options);
+    }
+
+    public static <E extends IndexedRecord> AvroStreamVerifier<E> avroStreamVerifierInAnyOrder(Collection<E> expected) {
+        return avroStreamVerifierInAnyOrder(expected, new Options());
+    }
+
+    public static <E extends IndexedRecord> AvroStreamVerifier<E> avroStreamVerifierInAnyOrder(Collection<E> expected, Options options) {
+        return AvroStreamVerifier.unordered(expected, options);
+    }
+
+    public static <E extends IndexedRecord> AvroStreamVerifier<E> avroStreamVerifierByKey(Collection<E> expected, List<String> keyPath) {
+        return avroStreamVerifierByKey(expected, keyPath, new Options());
+    }
+
+    public static <E extends IndexedRecord> AvroStreamVerifier<E> avroStreamVerifierByKey(Collection<E> expected, List<String> keyPath,
+            Options options) {
+        return AvroStreamVerifier.keyed(expected, keyPath, options);
+    }
+
+    public static <E extends IndexedRecord> AvroExpectationIndex<E> avroExpectationIndex() {
+        return new AvroExpectationIndex<E>();
+    }
+
     public static Excluder excludeFields(String... recordFields) {
         if (recordFields == null || recordFields.length == 0) {
             return ALWAYS_FALSE;
@@ -92,6 +139,23 @@ public class AvroMatchers {
         return new RecordFieldExcluder(ImmutableSet.copyOf(recordFields));
     }
 
+    /**
+     * @param pathPatterns patterns of the paths of the fields to exclude, with segments separated by dots which may
+     *        be {@code *} for any segment, {@code **} for any number of segments, globs or regular expressions
+     *        between slashes, eg. {@code address.*}, {@code **.lastModified} or {@code familyMembers.{a,b}}
+     * @return excluder
+     */
+    public static Excluder excludePaths(String... pathPatterns) {
+        return excludePaths(ImmutableList.copyOf(pathPatterns));
+    }
+
+    public static Excluder excludePaths(Collection<String> pathPatterns) {
+        if (pathPatterns == null || pathPatterns.isEmpty()) {
+            return ALWAYS_FALSE;
+        }
+        return new PathPatternExcluder(pathPatterns);
+    }
+
     private AvroMatchers() {
     }
 
@@ -120,53 +184,424 @@ public class AvroMatchers {
     }
 
     public static class Options {
-        private final Map<List<String>, Matcher<?>> customMatchers = Maps.newHashMap();
-        private boolean ignoreArrayOrder;
-        private Excluder excluder = ALWAYS_FALSE;
-        private Function<Schema, DatumWriter> datumWriterFactory = SPECIFIC_DATA_WRITER_FACTORY;
+        private final Map<List<String>, Matcher<?>> customMatchers;
+        private final Map<List<String>, Tolerance> pathTolerances;
+        private final Map<List<String>, List<String>> arrayKeys;
+        private final boolean frozen;
+        // the other settings are only reachable through a final field, so that a frozen copy is safely published
+        private final State state;
+
+        public Options() {
+            this.customMatchers = Maps.newHashMap();
+            this.pathTolerances = Maps.newHashMap();
+            this.arrayKeys = Maps.newHashMap();
+            this.frozen = false;
+            this.state = new State();
+        }
+
+        private Options(Options options) {
+            this.customMatchers = ImmutableMap.copyOf(options.customMatchers);
+            this.pathTolerances = ImmutableMap.copyOf(options.pathTolerances);
+            this.arrayKeys = ImmutableMap.copyOf(options.arrayKeys);
+            this.frozen = true;
+            this.state = new State(options.state);
+        }
+
+        /**
+         * Returns an immutable snapshot of these options. Its settings are only reachable through final fields, so it
+         * may be shared with other threads even through a data race. Matchers built from frozen options can be used by
+         * many threads concurrently without synchronization, provided the excluder, custom matchers and datum writer
+         * factory are themselves thread-safe.
+         *
+         * @return frozen options, {@code this} if already frozen
+         */
+        public Options freeze() {
+            return frozen ? this : new Options(this);
+        }
+
+        public boolean isFrozen() {
+            return frozen;
+        }
 
         @Nonnull
         public Excluder getExcluder() {
-            return excluder;
+            return state.excluder;
         }
 
         public Options setExcluder(@Nonnull Excluder excluder) {
+            checkNotFrozen();
             checkNotNull(excluder, "excluder is null");
-            this.excluder = excluder;
+            state.excluder = excluder;
             return this;
         }
 
         public Options addCustomMatcher(@Nonnull List<String> path, @Nonnull Matcher<?> matcher) {
+            checkNotFrozen();
             checkNotNull(path, "path is null");
             checkArgument(!path.isEmpty(), "path is empty");
             checkNotNull(matcher, "matcher is null");
-            customMatchers.put(path, matcher);
+            customMatchers.put(ImmutableList.copyOf(path), matcher);
             return this;
         }
 
         public Matcher<?> getMatcher(List<String> path) {
             // TODO allow wildcards for eg array matching, map matching
-            return customMatchers.get(path);
+            return customMatchers.isEmpty() ? null : customMatchers.get(path);
+        }
+
+        /**
+         * Set the tolerance for double values, {@link Tolerance#DEFAULT} unless set.
+         *
+         * @param tolerance tolerance
+         * @return this
+         */
+        public Options setTolerance(@Nonnull Tolerance tolerance) {
+            checkNotFrozen();
+            state.tolerance = checkNotNull(tolerance, "tolerance is null");
+            return this;
+        }
+
+        /**
+         * Set the tolerance for the double or float value at the given path. Floats are otherwise compared exactly.
+         *
+         * @param path path of the value
+         * @param tolerance tolerance
+         * @return this
+         */
+        public Options setTolerance(@Nonnull List<String> path, @Nonnull Tolerance tolerance) {
+            checkNotFrozen();
+            checkNotNull(path, "path is null");
+            checkArgument(!path.isEmpty(), "path is empty");
+            pathTolerances.put(ImmutableList.copyOf(path), checkNotNull(tolerance, "tolerance is null"));
+            return this;
+        }
+
+        /**
+         * @param path path of the value
+         * @param type {@link Schema.Type#DOUBLE} or {@link Schema.Type#FLOAT}
+         * @return tolerance for the value, or {@code null} if it is compared exactly
+         */
+        @Nullable
+        Tolerance getTolerance(List<String> path, Schema.Type type) {
+            Tolerance pathTolerance = pathTolerances.isEmpty() ? null : pathTolerances.get(path);
+            if (pathTolerance != null) {
+                return pathTolerance;
+            }
+            return type == Schema.Type.DOUBLE ? state.tolerance : null;
+        }
+
+        /**
+         * @return {@code true} if the comparison of a value may depend on its path, ie. there is an excluder, custom
+         *         matchers, tolerances or keys for some paths
+         */
+        boolean hasPathRules() {
+            return state.excluder != ALWAYS_FALSE || !customMatchers.isEmpty() || !pathTolerances.isEmpty() || !arrayKeys.isEmpty();
+        }
+
+        boolean hasCustomMatchers() {
+            return !customMatchers.isEmpty();
         }
 
         public Options setIgnoreArrayOrder(boolean ignoreArrayOrder) {
-            this.ignoreArrayOrder = ignoreArrayOrder;
+            checkNotFrozen();
+            state.ignoreArrayOrder = ignoreArrayOrder;
             return this;
         }
 
         public boolean isIgnoreArrayOrder() {
-            return ignoreArrayOrder;
+            return state.ignoreArrayOrder;
+        }
+
+        /**
+         * Compare the array of records at the given path by key rather than by index: each expected record is
+         * compared with the actual record with the same key, in linear time, and mismatches list the missing keys,
+         * the additional keys and the differences of the records for each key. Records with the same key are paired
+         * in order. Paths below the array use the key in place of the index, eg. {@code telephoneNumbers.HOME.digits}.
+         *
+         * @param arrayPath path of the array
+         * @param keyPath path of the key in each record, eg. {@code [type]}
+         * @return this
+         */
+        public Options setArrayKey(@Nonnull List<String> arrayPath, @Nonnull List<String> keyPath) {
+            checkNotFrozen();
+            checkNotNull(arrayPath, "arrayPath is null");
+            checkArgument(!arrayPath.isEmpty(), "arrayPath is empty");
+            checkNotNull(keyPath, "keyPath is null");
+            checkArgument(!keyPath.isEmpty(), "keyPath is empty");
+            arrayKeys.put(ImmutableList.copyOf(arrayPath), ImmutableList.copyOf(keyPath));
+            return this;
+        }
+
+        /**
+         * @param arrayPath path of an array
+         * @return path of the key in the records of the array, or {@code null} if it is not compared by key
+         */
+        @Nullable
+        List<String> getArrayKey(List<String> arrayPath) {
+            return arrayKeys.isEmpty() ? null : arrayKeys.get(arrayPath);
+        }
+
+        /**
+         * @return {@code true} if the elements of the array at the given path are compared by index
+         */
+        boolean isOrdered(List<String> arrayPath) {
+            return !state.ignoreArrayOrder && getArrayKey(arrayPath) == null;
         }
 
         @Nonnull
         public Function<Schema, DatumWriter> getDatumWriterFactory() {
-            return datumWriterFactory;
+            return state.datumWriterFactory;
         }
 
         public Options setDatumWriterFactory(@Nonnull Function<Schema, DatumWriter> datumWriterFactory) {
+            checkNotFrozen();
             checkNotNull(datumWriterFactory, "datumWriterFactory is null");
-            this.datumWriterFactory = datumWriterFactory;
+            state.datumWriterFactory = datumWriterFactory;
+            return this;
+        }
+
+        /**
+         * Compare ordered arrays, and collections passed to {@link AvroMatchers#avroContains(Collection, Options)},
+         * with at least the given number of elements in parallel. Mismatches are still reported for the first
+         * differing index. Custom matchers used within such arrays must be thread-safe.
+         *
+         * @param parallelThreshold minimum number of elements, {@link Integer#MAX_VALUE} to disable (the default)
+         * @return this
+         */
+        public Options setParallelThreshold(int parallelThreshold) {
+            checkNotFrozen();
+            checkArgument(parallelThreshold > 0, "parallelThreshold must be positive");
+            state.parallelThreshold = parallelThreshold;
+            return this;
+        }
+
+        public int getParallelThreshold() {
+            return state.parallelThreshold;
+        }
+
+        /**
+         * @param forkJoinPool pool used for parallel comparison, defaults to {@link ForkJoinPool#commonPool()}
+         * @return this
+         */
+        public Options setForkJoinPool(@Nonnull ForkJoinPool forkJoinPool) {
+            checkNotFrozen();
+            checkNotNull(forkJoinPool, "forkJoinPool is null");
+            state.forkJoinPool = forkJoinPool;
+            return this;
+        }
+
+        @Nonnull
+        public ForkJoinPool getForkJoinPool() {
+            return state.forkJoinPool != null ? state.forkJoinPool : ForkJoinPool.commonPool();
+        }
+
+        /**
+         * Compare records whose schemas differ but are compatible, following Avro schema resolution with the expected
+         * record's schema as the reader schema. Record names and fields are matched by name or alias, and fields which
+         * the actual record lacks are compared using their default value. Actual values are promoted as Avro reads
+         * them, ints to longs, floats or doubles, longs to floats or doubles, floats to doubles and strings to bytes and
+         * back, and strings, enums and fixed values are compared by content, as decoded records hold {@link
+         * org.apache.avro.util.Utf8} strings and generic enum symbols. Without this, the actual record must be an
+         * instance of the expected record's class.
+         *
+         * @param schemaResolution whether to resolve actual records against the expected schema
+         * @return this
+         */
+        public Options setSchemaResolution(boolean schemaResolution) {
+            checkNotFrozen();
+            state.schemaResolution = schemaResolution;
+            return this;
+        }
+
+        public boolean isSchemaResolution() {
+            return state.schemaResolution;
+        }
+
+        /**
+         * Compare values regardless of their Java representation, so that generic and specific records can be
+         * compared directly: records match on schema full name and fields, strings on content whether they are
+         * {@link String} or {@link org.apache.avro.util.Utf8}, enums on symbol and fixed values on their bytes.
+         *
+         * @param ignoreRepresentation whether to ignore the representation of values
+         * @return this
+         */
+        public Options setIgnoreRepresentation(boolean ignoreRepresentation) {
+            checkNotFrozen();
+            state.ignoreRepresentation = ignoreRepresentation;
+            return this;
+        }
+
+        public boolean isIgnoreRepresentation() {
+            return state.ignoreRepresentation;
+        }
+
+        /**
+         * Flatten the comparisons for each expected record into one compiled program when the matcher is created,
+         * which speeds up {@link Matcher#matches(Object)} for large or deeply nested records: about twice as fast on
+         * the nested and wide records of {@code MatcherBenchmark}, and no faster on small flat ones. The program is
+         * built from the matcher tree and shares its matchers, so building the matcher costs a little more.
+         * Mismatches are still described by the usual matchers. Not used with schema resolution or when ignoring
+         * representation.
+         *
+         * @param compiled whether to compile expected records
+         * @return this
+         */
+        public Options setCompiled(boolean compiled) {
+            checkNotFrozen();
+            state.compiled = compiled;
+            return this;
+        }
+
+        public boolean isCompiled() {
+            return state.compiled;
+        }
+
+        /**
+         * @param matchListener listener for events from matchers built with these options, eg. {@link MatchMetrics}.
+         *            Compiled matching is not used while a listener is registered.
+         * @return this
+         */
+        public Options setMatchListener(@Nonnull MatchListener matchListener) {
+            checkNotFrozen();
+            checkNotNull(matchListener, "matchListener is null");
+            state.matchListener = matchListener;
+            return this;
+        }
+
+        /**
+         * @return the listener, or {@code null} if there is none
+         */
+        @Nullable
+        public MatchListener getMatchListener() {
+            return state.matchListener;
+        }
+
+        /**
+         * Remember the result of matching each actual record, and its mismatches, so that repeated calls to
+         * {@link Matcher#matches(Object)} and {@link Matcher#describeMismatch(Object, org.hamcrest.Description)} with
+         * the same record, as made by mocking frameworks and {@code assertThat}, compare it only once. Records are
+         * held weakly and looked up by identity, and each result is kept with a shallow fingerprint of the top-level
+         * fields of the record, so a repeat costs a cache lookup and one pass over those fields rather than a
+         * traversal. A record whose top-level field values are set again is matched again, but a change inside a
+         * nested record, array or map which is still the same object is not seen; match a copy instead, or build a
+         * new matcher.
+         *
+         * @param memoized whether to remember results for each actual record
+         * @return this
+         */
+        public Options setMemoized(boolean memoized) {
+            checkNotFrozen();
+            state.memoized = memoized;
             return this;
         }
+
+        public boolean isMemoized() {
+            return state.memoized;
+        }
+
+        /**
+         * Write every mismatch to a sink as it is found, eg. an {@link AvroFileMismatchSink} or a
+         * {@link JsonLinesMismatchSink}, and keep only the first few in memory for the mismatch description. The sink is
+         * flushed after each description but never closed.
+         *
+         * @param mismatchSink sink for mismatches
+         * @return this
+         */
+        public Options setMismatchSink(@Nonnull MismatchSink mismatchSink) {
+            checkNotFrozen();
+            checkNotNull(mismatchSink, "mismatchSink is null");
+            state.mismatchSink = mismatchSink;
+            return this;
+        }
+
+        /**
+         * @return the sink, or {@code null} if mismatches are only kept in memory
+         */
+        @Nullable
+        public MismatchSink getMismatchSink() {
+            return state.mismatchSink;
+        }
+
+        /**
+         * Stop each top-level match which takes longer than the given time, it then fails with a mismatch saying
+         * where the deadline was exceeded. The clock is read every thousand or so values, so a match may slightly
+         * overrun.
+         *
+         * @param timeout time allowed for each match, or 0 for no deadline
+         * @param unit unit of the timeout
+         * @return this
+         */
+        public Options setDeadline(long timeout, @Nonnull TimeUnit unit) {
+            checkNotFrozen();
+            checkArgument(timeout >= 0, "timeout is negative");
+            state.deadlineNanos = checkNotNull(unit, "unit is null").toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * @return time allowed for each match in nanoseconds, or 0 for no deadline
+         */
+        public long getDeadlineNanos() {
+            return state.deadlineNanos;
+        }
+
+        /**
+         * Stop each top-level match which compares more than the given number of records, fields, maps, map entries,
+         * arrays and array elements, it then fails with a mismatch saying where the budget was exceeded.
+         *
+         * @param nodeBudget number of values each match may compare
+         * @return this
+         */
+        public Options setNodeBudget(long nodeBudget) {
+            checkNotFrozen();
+            checkArgument(nodeBudget > 0, "nodeBudget must be positive");
+            state.nodeBudget = nodeBudget;
+            return this;
+        }
+
+        public long getNodeBudget() {
+            return state.nodeBudget;
+        }
+
+        private void checkNotFrozen() {
+            checkState(!frozen, "Options are frozen");
+        }
+
+        private static final class State {
+            Tolerance tolerance = Tolerance.DEFAULT;
+            boolean ignoreArrayOrder;
+            Excluder excluder = ALWAYS_FALSE;
+            Function<Schema, DatumWriter> datumWriterFactory = SPECIFIC_DATA_WRITER_FACTORY;
+            int parallelThreshold = Integer.MAX_VALUE;
+            ForkJoinPool forkJoinPool;
+            boolean schemaResolution;
+            boolean ignoreRepresentation;
+            boolean compiled;
+            MatchListener matchListener;
+            boolean memoized;
+            MismatchSink mismatchSink;
+            long deadlineNanos;
+            long nodeBudget = Long.MAX_VALUE;
+
+            State() {
+            }
+
+            State(State state) {
+                this.tolerance = state.tolerance;
+                this.ignoreArrayOrder = state.ignoreArrayOrder;
+                this.excluder = state.excluder;
+                this.datumWriterFactory = state.datumWriterFactory;
+                this.parallelThreshold = state.parallelThreshold;
+                this.forkJoinPool = state.forkJoinPool;
+                this.schemaResolution = state.schemaResolution;
+                this.ignoreRepresentation = state.ignoreRepresentation;
+                this.compiled = state.compiled;
+                this.matchListener = state.matchListener;
+                this.memoized = state.memoized;
+                this.mismatchSink = state.mismatchSink;
+                this.deadlineNanos = state.deadlineNanos;
+                this.nodeBudget = state.nodeBudget;
+            }
+        }
     }
 }
@@ -0,0 +1,416 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import javax.annotation.Nonnull;
+
+import org.apache.avro.generic.IndexedRecord;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.SelfDescribing;
+import org.hamcrest.StringDescription;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Verifies records as they arrive from a stream, rather than requiring the whole actual collection up front like
+ * {@link AvroMatchers#avroContains(Collection, Options)}. Each actual record is passed to {@link #offer(IndexedRecord)}
+ * and {@link #finish()} produces the final result.
+ * <p>
+ * Only expected records which have not been matched yet are retained. Field paths passed to excluders and custom
+ * matchers are relative to each record, as with {@link AvroMatchers#avroEqualTo(IndexedRecord, Options)}, and
+ * mismatches are reported prefixed with the index of the actual record in the stream.
+ * <p>
+ * Instances are not thread-safe, they are meant to be fed from a single consumer loop.
+ *
+ * @param <E> record type
+ */
+public abstract class AvroStreamVerifier<E extends IndexedRecord> {
+    protected final Options options;
+    protected final MismatchList mismatches;
+    private long offered;
+    private long matched;
+    private long unexpected;
+    private boolean finished;
+
+    static <E extends IndexedRecord> AvroStreamVerifier<E> ordered(Collection<E> expected, Options options) {
+        return new OrderedVerifier<E>(expected, options);
+    }
+
+    static <E extends IndexedRecord> AvroStreamVerifier<E> unordered(Collection<E> expected, Options options) {
+        return new UnorderedVerifier<E>(expected, options);
+    }
+
+    static <E extends IndexedRecord> AvroStreamVerifier<E> keyed(Collection<E> expected, List<String> keyPath, Options options) {
+        return new KeyedVerifier<E>(expected, keyPath, options);
+    }
+
+    static <E extends IndexedRecord> AvroStreamVerifier<E> offHeap(OffHeapExpectedSet<E> expected, Options options) {
+        return new OffHeapVerifier<E>(expected, options);
+    }
+
+    private AvroStreamVerifier(Options options) {
+        this.options = checkNotNull(options, "options is null");
+        this.mismatches = MismatchList.create(ImmutableList.<String> of(), options);
+    }
+
+    /**
+     * Verify the next actual record.
+     *
+     * @param actual actual record
+     * @return {@code true} if the record matched an expected record
+     */
+    public final boolean offer(@Nonnull E actual) {
+        checkNotNull(actual, "actual is null");
+        checkState(!finished, "verifier has already finished");
+        boolean matches = verify(actual, offered++);
+        if (matches) {
+            matched++;
+        } else {
+            unexpected++;
+        }
+        return matches;
+    }
+
+    /**
+     * Complete verification, any expected records which have not been matched are reported as missing.
+     *
+     * @return the result of the verification
+     */
+    public final Result finish() {
+        checkState(!finished, "verifier has already finished");
+        finished = true;
+        long pending = getPendingCount();
+        reportPending();
+        if (options.getMismatchSink() != null) {
+            try {
+                options.getMismatchSink().flush();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return new Result(matched, pending, unexpected, mismatches);
+    }
+
+    /**
+     * @return number of actual records which matched an expected record so far
+     */
+    public long getMatchedCount() {
+        return matched;
+    }
+
+    /**
+     * @return number of expected records which have not been matched yet
+     */
+    public abstract long getPendingCount();
+
+    /**
+     * @return number of actual records which did not match an expected record so far
+     */
+    public long getUnexpectedCount() {
+        return unexpected;
+    }
+
+    protected abstract boolean verify(E actual, long index);
+
+    protected abstract void reportPending();
+
+    protected static List<String> indexPath(long index) {
+        return ImmutableList.of(Long.toString(index));
+    }
+
+    /**
+     * Outcome of a stream verification.
+     */
+    public static class Result implements SelfDescribing {
+        private final long matched;
+        private final long pending;
+        private final long unexpected;
+        private final MismatchList mismatches;
+
+        Result(long matched, long pending, long unexpected, MismatchList mismatches) {
+            this.matched = matched;
+            this.pending = pending;
+            this.unexpected = unexpected;
+            this.mismatches = mismatches;
+        }
+
+        public boolean isSuccessful() {
+            return pending == 0 && unexpected == 0;
+        }
+
+        public long getMatchedCount() {
+            return matched;
+        }
+
+        public long getPendingCount() {
+            return pending;
+        }
+
+        public long getUnexpectedCount() {
+            return unexpected;
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            description.appendText("matched: " + matched + ", missing: " + pending + ", unexpected: " + unexpected);
+            if (!mismatches.isEmpty()) {
+                description.appendText("\n").appendDescriptionOf(mismatches);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return StringDescription.toString(this);
+        }
+    }
+
+    /**
+     * Compares the n-th actual record with the n-th expected record. A record which does not match its counterpart
+     * counts as unexpected.
+     */
+    private static class OrderedVerifier<E extends IndexedRecord> extends AvroStreamVerifier<E> {
+        private final Queue<E> expected;
+
+        OrderedVerifier(Collection<E> expected, Options options) {
+            super(options);
+            this.expected = new ArrayDeque<E>(expected);
+        }
+
+        @Override
+        public long getPendingCount() {
+            return expected.size();
+        }
+
+        @Override
+        protected boolean verify(E actual, long index) {
+            E next = expected.poll();
+            if (next == null) {
+                mismatches.addMismatch(indexPath(index), "was not expected");
+                return false;
+            }
+
+            // matchers are only built when the record is needed so that unverified records are all we retain
+            Matcher<E> matcher = IsAvroObjectEqual.avroObjectEqualTo(next, options);
+            if (matcher.matches(actual)) {
+                return true;
+            }
+            MismatchList recordMismatches = new MismatchList(indexPath(index));
+            matcher.describeMismatch(actual, recordMismatches);
+            mismatches.addAll(recordMismatches);
+            return false;
+        }
+
+        @Override
+        protected void reportPending() {
+            long index = getMatchedCount() + getUnexpectedCount();
+            for (E next; (next = expected.poll()) != null; index++) {
+                StringDescription description = new StringDescription();
+                description.appendText("Expected: ").appendDescriptionOf(IsAvroObjectEqual.avroObjectEqualTo(next, options))
+                        .appendText(" but: was missing");
+                mismatches.addMismatch(indexPath(index), "was missing", description.toString());
+            }
+        }
+    }
+
+    /**
+     * Pairs each actual record with any pending expected record it matches. Pending records are indexed by
+     * fingerprint, so only expected records with the same fingerprint as the actual record are compared, and their
+     * matchers are only built then.
+     */
+    private static class UnorderedVerifier<E extends IndexedRecord> extends AvroStreamVerifier<E> {
+        private final RecordFingerprinter fingerprinter;
+        private final ListMultimap<Long, Pending<E>> pending = ArrayListMultimap.create();
+
+        UnorderedVerifier(Collection<E> expected, Options options) {
+            super(options);
+            this.fingerprinter = new RecordFingerprinter(options);
+            int i = 0;
+            for (E record : expected) {
+                pending.put(fingerprinter.fingerprint(record), new Pending<E>(i++, record));
+            }
+        }
+
+        @Override
+        public long getPendingCount() {
+            return pending.size();
+        }
+
+        @Override
+        protected boolean verify(E actual, long index) {
+            for (long fingerprint : fingerprinter.candidateFingerprints(actual)) {
+                Iterator<Pending<E>> candidates = pending.get(fingerprint).iterator();
+                while (candidates.hasNext()) {
+                    // matchers are only built when the record is needed so that unverified records are all we retain
+                    if (IsAvroObjectEqual.avroObjectEqualTo(candidates.next().record, options).matches(actual)) {
+                        candidates.remove();
+                        return true;
+                    }
+                }
+            }
+
+            mismatches.addMismatch(indexPath(index), "was not matched",
+                    new StringDescription().appendText("Not matched: ").appendValue(actual).toString());
+            return false;
+        }
+
+        @Override
+        protected void reportPending() {
+            List<Pending<E>> remaining = Lists.newArrayList(pending.values());
+            pending.clear();
+            Collections.sort(remaining, new Comparator<Pending<E>>() {
+                @Override
+                public int compare(Pending<E> o1, Pending<E> o2) {
+                    return o1.index < o2.index ? -1 : (o1.index == o2.index ? 0 : 1);
+                }
+            });
+            for (Pending<E> record : remaining) {
+                mismatches.addMismatch(ImmutableList.<String> of(), "was missing", new StringDescription().appendText("No item matches: ")
+                        .appendDescriptionOf(IsAvroObjectEqual.avroObjectEqualTo(record.record, options)).toString());
+            }
+        }
+
+        private static class Pending<E> {
+            final int index;
+            final E record;
+
+            Pending(int index, E record) {
+                this.index = index;
+                this.record = record;
+            }
+        }
+    }
+
+    /**
+     * Compares each actual record with the next pending expected record of the same key, the value at a key path, in
+     * the way {@link AvroMatchers.Options#setArrayKey(List, List)} compares arrays. A record which does not match its
+     * counterpart counts as unexpected, and mismatches are prefixed with the key rather than the index.
+     */
+    private static class KeyedVerifier<E extends IndexedRecord> extends AvroStreamVerifier<E> {
+        private final List<String> keyPath;
+        private final ListMultimap<String, E> pending = LinkedListMultimap.create();
+        private final Map<String, Integer> seen = Maps.newHashMap();
+
+        KeyedVerifier(Collection<E> expected, List<String> keyPath, Options options) {
+            super(options);
+            this.keyPath = ImmutableList.copyOf(checkNotNull(keyPath, "keyPath is null"));
+            for (E record : expected) {
+                pending.put(IsAvroObjectEqual.getArrayKey(record, this.keyPath), record);
+            }
+        }
+
+        @Override
+        public long getPendingCount() {
+            return pending.size();
+        }
+
+        @Override
+        protected boolean verify(E actual, long index) {
+            String key = IsAvroObjectEqual.getArrayKey(actual, keyPath);
+            Integer count = seen.get(key);
+            seen.put(key, count == null ? 1 : count + 1);
+            List<String> path = ImmutableList.of(count == null ? key : key + "#" + count);
+            List<E> candidates = pending.get(key);
+            if (candidates.isEmpty()) {
+                mismatches.addMismatch(path, "was not expected");
+                return false;
+            }
+
+            Matcher<E> matcher = IsAvroObjectEqual.avroObjectEqualTo(candidates.remove(0), options);
+            if (matcher.matches(actual)) {
+                return true;
+            }
+            MismatchList recordMismatches = new MismatchList(path);
+            matcher.describeMismatch(actual, recordMismatches);
+            mismatches.addAll(recordMismatches);
+            return false;
+        }
+
+        @Override
+        protected void reportPending() {
+            for (Map.Entry<String, E> entry : pending.entries()) {
+                Integer count = seen.get(entry.getKey());
+                seen.put(entry.getKey(), count == null ? 1 : count + 1);
+                StringDescription description = new StringDescription();
+                description.appendText("Expected: ").appendDescriptionOf(IsAvroObjectEqual.avroObjectEqualTo(entry.getValue(), options))
+                        .appendText(" but: was missing");
+                mismatches.addMismatch(ImmutableList.of(count == null ? entry.getKey() : entry.getKey() + "#" + count), "was missing",
+                        description.toString());
+            }
+            pending.clear();
+        }
+    }
+
+    /**
+     * Same as {@link UnorderedVerifier}, with the pending records and their index held by an
+     * {@link OffHeapExpectedSet}.
+     */
+    private static class OffHeapVerifier<E extends IndexedRecord> extends AvroStreamVerifier<E> {
+        private final OffHeapExpectedSet<E> expected;
+
+        OffHeapVerifier(OffHeapExpectedSet<E> expected, Options options) {
+            super(options);
+            this.expected = expected;
+        }
+
+        @Override
+        public long getPendingCount() {
+            return expected.getPendingCount();
+        }
+
+        @Override
+        protected boolean verify(E actual, long index) {
+            if (expected.take(actual)) {
+                return true;
+            }
+            mismatches.addMismatch(indexPath(index), "was not matched",
+                    new StringDescription().appendText("Not matched: ").appendValue(actual).toString());
+            return false;
+        }
+
+        @Override
+        protected void reportPending() {
+            expected.visitPending(new OffHeapExpectedSet.Visitor<E>() {
+                @Override
+                public void visit(E record) {
+                    mismatches.addMismatch(ImmutableList.<String> of(), "was missing",
+                            new StringDescription().appendText("No item matches: ")
+                                    .appendDescriptionOf(IsAvroObjectEqual.avroObjectEqualTo(record, options)).toString());
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.Nonnull;
+
+import org.apache.avro.generic.IndexedRecord;
+
+/**
+ * Subscriber which verifies the records of a reactive stream as they arrive, requesting them in batches so that the
+ * publisher never gets ahead of the verification. The records are passed to an {@link AvroStreamVerifier}, ordered,
+ * in any order, by key or against an {@link OffHeapExpectedSet}, and {@link #getResult()} completes with its result
+ * when the stream completes, or exceptionally when the stream fails.
+ * <p>
+ * The methods follow {@code java.util.concurrent.Flow.Subscriber} and {@code org.reactivestreams.Subscriber}, without
+ * depending on either, so adapting it to a publisher takes a subscriber which delegates each signal:
+ *
+ * <pre>
+ * AvroVerifyingSubscriber&lt;Person&gt; verifier = new AvroVerifyingSubscriber&lt;Person&gt;(avroStreamVerifierInAnyOrder(expected), 256);
+ * publisher.subscribe(new Flow.Subscriber&lt;Person&gt;() {
+ *     public void onSubscribe(final Flow.Subscription subscription) {
+ *         verifier.onSubscribe(new AvroVerifyingSubscriber.Subscription() {
+ *             public void request(long n) { subscription.request(n); }
+ *             public void cancel() { subscription.cancel(); }
+ *         });
+ *     }
+ *     public void onNext(Person person) { verifier.onNext(person); }
+ *     ...
+ * });
+ * assertTrue(verifier.getResult().get().isSuccessful());
+ * </pre>
+ * <p>
+ * Signals must not be concurrent, as for any subscriber.
+ *
+ * @param <E> record type
+ */
+public class AvroVerifyingSubscriber<E extends IndexedRecord> {
+    /**
+     * Demand and cancellation of a subscription, as in {@code java.util.concurrent.Flow.Subscription}.
+     */
+    public interface Subscription {
+        void request(long n);
+
+        void cancel();
+    }
+
+    private final AvroStreamVerifier<E> verifier;
+    private final int batchSize;
+    private final CompletableFuture<AvroStreamVerifier.Result> result = new CompletableFuture<AvroStreamVerifier.Result>();
+    private Subscription subscription;
+    /** records still to arrive from the last request */
+    private long outstanding;
+
+    /**
+     * @param verifier verifier of the records
+     * @param batchSize number of records requested at a time, the next batch is requested when the last one has arrived
+     */
+    public AvroVerifyingSubscriber(@Nonnull AvroStreamVerifier<E> verifier, int batchSize) {
+        this.verifier = checkNotNull(verifier, "verifier is null");
+        checkArgument(batchSize > 0, "batchSize must be positive: %s", batchSize);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return future of the result, completed when the stream completes
+     */
+    public CompletableFuture<AvroStreamVerifier.Result> getResult() {
+        return result;
+    }
+
+    public void onSubscribe(@Nonnull Subscription subscription) {
+        checkNotNull(subscription, "subscription is null");
+        if (this.subscription != null || result.isDone()) {
+            // a subscriber verifies a single stream
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        request();
+    }
+
+    public void onNext(@Nonnull E record) {
+        checkNotNull(record, "record is null");
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            verifier.offer(record);
+        } catch (RuntimeException e) {
+            // eg. a custom matcher failed, there is no point in verifying the rest
+            subscription.cancel();
+            result.completeExceptionally(e);
+            return;
+        }
+        if (--outstanding == 0) {
+            request();
+        }
+    }
+
+    public void onError(@Nonnull Throwable error) {
+        checkNotNull(error, "error is null");
+        result.completeExceptionally(error);
+    }
+
+    public void onComplete() {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            result.complete(verifier.finish());
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private void request() {
+        outstanding = batchSize;
+        subscription.request(batchSize);
+    }
+}
@@ -0,0 +1,302 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.util.Utf8;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Reads Avro binary encoded values directly from a byte array, so that values can be compared, and strings, bytes and
+ * fixed values matched against their raw bytes, without decoding them into objects.
+ */
+final class BinaryCursor {
+    private final byte[] buf;
+    private final int limit;
+    private int pos;
+
+    BinaryCursor(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * @param item {@code byte[]} or {@link ByteBuffer}
+     * @return cursor over the bytes, or {@code null} if the item is neither
+     */
+    static BinaryCursor of(Object item) {
+        if (item instanceof byte[]) {
+            return new BinaryCursor((byte[]) item, 0, ((byte[]) item).length);
+        }
+        if (item instanceof ByteBuffer) {
+            ByteBuffer buffer = (ByteBuffer) item;
+            if (buffer.hasArray()) {
+                return new BinaryCursor(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            }
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            return new BinaryCursor(bytes, 0, bytes.length);
+        }
+        return null;
+    }
+
+    byte[] getBuffer() {
+        return buf;
+    }
+
+    int getPosition() {
+        return pos;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param position position in the buffer
+     * @return new cursor over the same bytes, at the given position
+     */
+    BinaryCursor at(int position) {
+        return new BinaryCursor(buf, position, limit - position);
+    }
+
+    void setPosition(int position) {
+        this.pos = position;
+    }
+
+    /**
+     * @return {@code true} if the bytes between the given positions of both cursors are equal
+     */
+    static boolean equalRanges(BinaryCursor first, int firstStart, int firstEnd, BinaryCursor second, int secondStart, int secondEnd) {
+        if (firstEnd - firstStart != secondEnd - secondStart) {
+            return false;
+        }
+        for (int i = 0; i < firstEnd - firstStart; i++) {
+            if (first.buf[firstStart + i] != second.buf[secondStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isAtEnd() {
+        return pos == limit;
+    }
+
+    boolean readBoolean() {
+        require(1);
+        return buf[pos++] != 0;
+    }
+
+    int readInt() {
+        return (int) readLong();
+    }
+
+    long readLong() {
+        long n = 0;
+        int shift = 0;
+        int b;
+        do {
+            require(1);
+            b = buf[pos++] & 0xff;
+            n |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < 70);
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    float readFloat() {
+        return Float.intBitsToFloat(readFixedInt());
+    }
+
+    double readDouble() {
+        long low = readFixedInt() & 0xffffffffL;
+        long high = readFixedInt() & 0xffffffffL;
+        return Double.longBitsToDouble(high << 32 | low);
+    }
+
+    private int readFixedInt() {
+        require(4);
+        int n = (buf[pos] & 0xff) | (buf[pos + 1] & 0xff) << 8 | (buf[pos + 2] & 0xff) << 16 | (buf[pos + 3] & 0xff) << 24;
+        pos += 4;
+        return n;
+    }
+
+    /**
+     * @return length of the following string or bytes
+     */
+    int readLength() {
+        long length = readLong();
+        if (length < 0 || length > limit - pos) {
+            throw new AvroRuntimeException("Malformed length " + length);
+        }
+        return (int) length;
+    }
+
+    /**
+     * @return number of items in the next block of an array or map, 0 at the end
+     */
+    long readBlockCount() {
+        long count = readLong();
+        if (count < 0) {
+            // followed by the size of the block in bytes
+            readLong();
+            count = -count;
+        }
+        return count;
+    }
+
+    String readString() {
+        int length = readLength();
+        String string = new String(buf, pos, length, Charsets.UTF_8);
+        pos += length;
+        return string;
+    }
+
+    void skip(int length) {
+        require(length);
+        pos += length;
+    }
+
+    void skipValue(Schema schema) {
+        switch (schema.getType()) {
+        case NULL:
+            break;
+        case BOOLEAN:
+            skip(1);
+            break;
+        case INT:
+        case LONG:
+        case ENUM:
+            readLong();
+            break;
+        case FLOAT:
+            skip(4);
+            break;
+        case DOUBLE:
+            skip(8);
+            break;
+        case STRING:
+        case BYTES:
+            skip(readLength());
+            break;
+        case FIXED:
+            skip(schema.getFixedSize());
+            break;
+        case RECORD:
+            for (Schema.Field field : schema.getFields()) {
+                skipValue(field.schema());
+            }
+            break;
+        case ARRAY:
+        case MAP:
+            for (long count = readLong(); count != 0; count = readLong()) {
+                if (count < 0) {
+                    // blocks with a byte size can be skipped whole
+                    skip((int) readLong());
+                } else {
+                    for (long i = 0; i < count; i++) {
+                        if (schema.getType() == Schema.Type.MAP) {
+                            skip(readLength());
+                            skipValue(schema.getValueType());
+                        } else {
+                            skipValue(schema.getElementType());
+                        }
+                    }
+                }
+            }
+            break;
+        case UNION:
+            int branch = readInt();
+            if (branch < 0 || branch >= schema.getTypes().size()) {
+                throw new AvroRuntimeException("Malformed union branch " + branch);
+            }
+            skipValue(schema.getTypes().get(branch));
+            break;
+        default:
+            throw new AvroRuntimeException("Unknown type " + schema.getType());
+        }
+    }
+
+    /**
+     * @return {@code true} if the next {@code length} bytes equal the given bytes
+     */
+    boolean equalBytes(int length, byte[] bytes, int offset, int bytesLength) {
+        if (length != bytesLength) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buf[pos + i] != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true} if the next {@code length} bytes are the UTF-8 encoding of the given string, which is
+     *         encoded as it is compared
+     */
+    boolean equalString(int length, CharSequence string) {
+        if (string instanceof Utf8) {
+            Utf8 utf8 = (Utf8) string;
+            return equalBytes(length, utf8.getBytes(), 0, utf8.getByteLength());
+        }
+        int p = pos;
+        int end = pos + length;
+        for (int i = 0; i < string.length(); i++) {
+            int c = string.charAt(i);
+            if (Character.isHighSurrogate((char) c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+                c = Character.toCodePoint((char) c, string.charAt(++i));
+            } else if (Character.isSurrogate((char) c)) {
+                // unpaired surrogates are encoded as '?' by String.getBytes
+                c = '?';
+            }
+            if (c < 0x80) {
+                if (p >= end || buf[p++] != (byte) c) {
+                    return false;
+                }
+            } else if (c < 0x800) {
+                if (p + 2 > end || buf[p++] != (byte) (0xc0 | c >> 6) || buf[p++] != (byte) (0x80 | c & 0x3f)) {
+                    return false;
+                }
+            } else if (c < 0x10000) {
+                if (p + 3 > end || buf[p++] != (byte) (0xe0 | c >> 12) || buf[p++] != (byte) (0x80 | c >> 6 & 0x3f)
+                        || buf[p++] != (byte) (0x80 | c & 0x3f)) {
+                    return false;
+                }
+            } else {
+                if (p + 4 > end || buf[p++] != (byte) (0xf0 | c >> 18) || buf[p++] != (byte) (0x80 | c >> 12 & 0x3f)
+                        || buf[p++] != (byte) (0x80 | c >> 6 & 0x3f) || buf[p++] != (byte) (0x80 | c & 0x3f)) {
+                    return false;
+                }
+            }
+        }
+        return p == end;
+    }
+
+    private void require(int length) {
+        if (length < 0 || length > limit - pos) {
+            throw new AvroRuntimeException("Unexpected end of data");
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.hamcrest.Matcher;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+
+/**
+ * Compares two Avro binary encodings of records of the same schema with the semantics of {@link Options}, without
+ * decoding them: excluded fields are skipped, doubles are compared with their {@link Tolerance}, maps regardless of the
+ * order of their entries and arrays regardless of the order of their elements, or by key, if the options say so. Unlike
+ * {@link org.apache.avro.io.BinaryData#compare(byte[], int, byte[], int, Schema)}, it reports the path of the first
+ * difference.
+ * <p>
+ * Values whose encodings are byte for byte equal are equal, so the records are first compared as ranges of bytes, and
+ * only walked once when the bytes differ. Values with custom matchers, and arrays not compared by index, are decoded,
+ * unless their bytes are equal. Paths are only built when the options have rules for some paths, and for the
+ * difference found. Excluders are evaluated against an empty record of the right schema, so they should only depend
+ * on the field path.
+ * <p>
+ * Instances are thread-safe if the options are frozen.
+ */
+public class BinaryRecordComparator {
+    private static final List<String> ROOT = ImmutableList.of();
+
+    private final Schema schema;
+    private final Options options;
+    private final boolean pathRules;
+    private final boolean byteRanges;
+    private final Map<Schema, IndexedRecord> placeholders = Maps.newConcurrentMap();
+
+    /**
+     * @param schema schema both records were written with
+     * @param options options to compare the records with
+     */
+    public BinaryRecordComparator(@Nonnull Schema schema, @Nonnull Options options) {
+        checkArgument(checkNotNull(schema, "schema is null").getType() == Schema.Type.RECORD, "Not a record schema: %s", schema);
+        this.schema = schema;
+        this.options = checkNotNull(options, "options is null");
+        this.pathRules = options.hasPathRules();
+        // a custom matcher may reject a value equal to the expected one
+        this.byteRanges = !options.hasCustomMatchers();
+    }
+
+    /**
+     * @param expected binary encoding of the expected record
+     * @param actual binary encoding of the actual record
+     * @return {@code true} if the records match
+     */
+    public boolean matches(@Nonnull byte[] expected, @Nonnull byte[] actual) {
+        return firstDifference(expected, actual) == null;
+    }
+
+    /**
+     * @param expected binary encoding of the expected record
+     * @param actual binary encoding of the actual record
+     * @return path of the first value which differs, empty if the records differ as a whole, eg. in their length, or
+     *         {@code null} if the records match
+     * @throws AvroRuntimeException if either encoding is malformed
+     */
+    @Nullable
+    public List<String> firstDifference(@Nonnull byte[] expected, @Nonnull byte[] actual) {
+        return firstDifference(checkNotNull(expected, "expected is null"), expected.length, checkNotNull(actual, "actual is null"),
+                actual.length);
+    }
+
+    /**
+     * Same as {@link #firstDifference(byte[], byte[])} for encodings at the start of reused buffers.
+     */
+    @Nullable
+    List<String> firstDifference(byte[] expected, int expectedLength, byte[] actual, int actualLength) {
+        BinaryCursor expectedCursor = new BinaryCursor(expected, 0, expectedLength);
+        BinaryCursor actualCursor = new BinaryCursor(actual, 0, actualLength);
+        if (byteRanges && BinaryCursor.equalRanges(expectedCursor, 0, expectedLength, actualCursor, 0, actualLength)) {
+            return null;
+        }
+        List<String> difference = compare(expectedCursor, actualCursor, schema, pathRules ? ROOT : null);
+        if (difference == null && !(expectedCursor.isAtEnd() && actualCursor.isAtEnd())) {
+            return ROOT;
+        }
+        return difference;
+    }
+
+    /**
+     * @param path path of the value if the options have path rules, otherwise {@code null}
+     * @return path of the first difference relative to the value, empty if the value itself differs, or {@code null}
+     */
+    private List<String> compare(BinaryCursor expected, BinaryCursor actual, Schema schema, @Nullable List<String> path) {
+        if (pathRules) {
+            Matcher<?> custom = options.getMatcher(path);
+            if (custom != null) {
+                expected.skipValue(schema);
+                return custom.matches(decode(actual, schema)) ? null : ROOT;
+            }
+        }
+
+        switch (schema.getType()) {
+        case NULL:
+            return null;
+        case BOOLEAN:
+            return expected.readBoolean() == actual.readBoolean() ? null : ROOT;
+        case INT:
+        case LONG:
+        case ENUM:
+            return expected.readLong() == actual.readLong() ? null : ROOT;
+        case FLOAT:
+            Tolerance floatTolerance = options.getTolerance(path, Schema.Type.FLOAT);
+            float expectedFloat = expected.readFloat();
+            float actualFloat = actual.readFloat();
+            if (floatTolerance != null) {
+                return floatTolerance.isWithin(expectedFloat, actualFloat) ? null : ROOT;
+            }
+            // same as Float.equals
+            return Float.floatToIntBits(expectedFloat) == Float.floatToIntBits(actualFloat) ? null : ROOT;
+        case DOUBLE:
+            return options.getTolerance(path, Schema.Type.DOUBLE).isWithin(expected.readDouble(), actual.readDouble()) ? null : ROOT;
+        case STRING:
+        case BYTES:
+            return compareRange(expected, expected.readLength(), actual, actual.readLength()) ? null : ROOT;
+        case FIXED:
+            return compareRange(expected, schema.getFixedSize(), actual, schema.getFixedSize()) ? null : ROOT;
+        case UNION:
+            int branch = expected.readInt();
+            if (branch != actual.readInt()) {
+                return ROOT;
+            }
+            if (branch < 0 || branch >= schema.getTypes().size()) {
+                throw new AvroRuntimeException("Malformed union branch " + branch);
+            }
+            return compare(expected, actual, schema.getTypes().get(branch), path);
+        case RECORD:
+            return compareRecord(expected, actual, schema, path);
+        case ARRAY:
+            if (!options.isOrdered(path)) {
+                Object expectedArray = decode(expected, schema);
+                return IsAvroObjectEqual.createMatcher(schema, expectedArray, path, options).matches(decode(actual, schema)) ? null : ROOT;
+            }
+            return compareArray(expected, actual, schema, path);
+        case MAP:
+            return compareMap(expected, actual, schema, path);
+        default:
+            throw new AvroRuntimeException("Unknown type " + schema.getType());
+        }
+    }
+
+    private static boolean compareRange(BinaryCursor expected, int expectedLength, BinaryCursor actual, int actualLength) {
+        int expectedStart = expected.getPosition();
+        int actualStart = actual.getPosition();
+        expected.skip(expectedLength);
+        actual.skip(actualLength);
+        return BinaryCursor.equalRanges(expected, expectedStart, expected.getPosition(), actual, actualStart, actual.getPosition());
+    }
+
+    /**
+     * Compare arrays whose elements may be in any order or paired by key, which are decoded unless their bytes are equal.
+     */
+    private List<String> compareUnordered(BinaryCursor expected, BinaryCursor actual, Schema schema, @Nullable List<String> path) {
+        int expectedStart = expected.getPosition();
+        int actualStart = actual.getPosition();
+        expected.skipValue(schema);
+        actual.skipValue(schema);
+        if (byteRanges
+                && BinaryCursor.equalRanges(expected, expectedStart, expected.getPosition(), actual, actualStart, actual.getPosition())) {
+            return null;
+        }
+        expected.setPosition(expectedStart);
+        actual.setPosition(actualStart);
+        Object expectedArray = decode(expected, schema);
+        Matcher<?> matcher = IsAvroObjectEqual.createMatcher(schema, expectedArray, path != null ? path : ROOT, options);
+        return matcher.matches(decode(actual, schema)) ? null : ROOT;
+    }
+
+    private List<String> compareRecord(BinaryCursor expected, BinaryCursor actual, Schema schema, @Nullable List<String> path) {
+        IndexedRecord placeholder = pathRules ? placeholder(schema) : null;
+        for (Field field : schema.getFields()) {
+            List<String> fieldPath = pathRules ? append(path, field.name()) : null;
+            if (pathRules && options.getExcluder().isExcluded(placeholder, fieldPath)) {
+                expected.skipValue(field.schema());
+                actual.skipValue(field.schema());
+            } else {
+                List<String> difference = compare(expected, actual, field.schema(), fieldPath);
+                if (difference != null) {
+                    return prepend(field.name(), difference);
+                }
+            }
+        }
+        return null;
+    }
+
+    private List<String> compareArray(BinaryCursor expected, BinaryCursor actual, Schema schema, @Nullable List<String> path) {
+        // the arrays may be split into blocks differently
+        long expectedRemaining = expected.readBlockCount();
+        long actualRemaining = actual.readBlockCount();
+        for (int i = 0; expectedRemaining != 0 || actualRemaining != 0; i++) {
+            if (expectedRemaining == 0 || actualRemaining == 0) {
+                return ImmutableList.of(Integer.toString(i));
+            }
+            List<String> elementPath = pathRules ? append(path, Integer.toString(i)) : null;
+            List<String> difference = compare(expected, actual, schema.getElementType(), elementPath);
+            if (difference != null) {
+                return prepend(Integer.toString(i), difference);
+            }
+            expectedRemaining = next(expected, expectedRemaining);
+            actualRemaining = next(actual, actualRemaining);
+        }
+        return null;
+    }
+
+    private static long next(BinaryCursor cursor, long remaining) {
+        return remaining == 1 ? cursor.readBlockCount() : remaining - 1;
+    }
+
+    private List<String> compareMap(BinaryCursor expected, BinaryCursor actual, Schema schema, @Nullable List<String> path) {
+        // positions of the expected values by key, as the entries may be in any order
+        Map<String, Integer> expectedEntries = Maps.newLinkedHashMap();
+        for (long count = expected.readBlockCount(); count != 0; count = expected.readBlockCount()) {
+            for (long i = 0; i < count; i++) {
+                expectedEntries.put(expected.readString(), expected.getPosition());
+                expected.skipValue(schema.getValueType());
+            }
+        }
+
+        for (long count = actual.readBlockCount(); count != 0; count = actual.readBlockCount()) {
+            for (long i = 0; i < count; i++) {
+                String key = actual.readString();
+                Integer position = expectedEntries.remove(key);
+                if (position == null) {
+                    return ImmutableList.of(key);
+                }
+                List<String> entryPath = pathRules ? append(path, key) : null;
+                List<String> difference = compare(expected.at(position), actual, schema.getValueType(), entryPath);
+                if (difference != null) {
+                    return prepend(key, difference);
+                }
+            }
+        }
+        return expectedEntries.isEmpty() ? null : ImmutableList.of(expectedEntries.keySet().iterator().next());
+    }
+
+    private IndexedRecord placeholder(Schema schema) {
+        IndexedRecord placeholder = placeholders.get(schema);
+        if (placeholder == null) {
+            placeholder = new GenericData.Record(schema);
+            placeholders.put(schema, placeholder);
+        }
+        return placeholder;
+    }
+
+    /**
+     * Decode the next value, moving the cursor past it.
+     */
+    private static Object decode(BinaryCursor cursor, Schema schema) {
+        int start = cursor.getPosition();
+        cursor.skipValue(schema);
+        try {
+            return new SpecificDatumReader<Object>(schema).read(null,
+                    DecoderFactory.get().binaryDecoder(cursor.getBuffer(), start, cursor.getPosition() - start, null));
+        } catch (IOException e) {
+            throw new AvroRuntimeException(e);
+        }
+    }
+
+    private static List<String> prepend(String segment, List<String> path) {
+        return ImmutableList.<String> builder().add(segment).addAll(path).build();
+    }
+
+    private static List<String> append(List<String> path, String segment) {
+        return ImmutableList.copyOf(Iterables.concat(path, ImmutableList.of(segment)));
+    }
+}
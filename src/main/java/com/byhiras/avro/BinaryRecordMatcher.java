@@ -0,0 +1,257 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.util.Utf8;
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+/**
+ * Matches the Avro binary encoding of a record, as a {@code byte[]} or {@link ByteBuffer}, against an expected record
+ * without decoding it. The encoding is walked in step with the expected record's schema, which must be the schema it
+ * was written with, comparing each value as it is read. Strings, bytes and fixed values are compared with the raw
+ * bytes, and matching stops at the first difference.
+ * <p>
+ * Values with custom matchers, and arrays when ignoring their order, are decoded to be matched. Mismatches are
+ * described by decoding the record and describing it with {@link IsAvroObjectEqual}.
+ */
+class BinaryRecordMatcher<T extends IndexedRecord> extends BaseMatcher<Object> {
+    private static final List<String> ROOT = ImmutableList.of();
+
+    private final T expected;
+    private final Options options;
+    private final boolean pathRules;
+
+    BinaryRecordMatcher(T expected, Options options) {
+        this.expected = expected;
+        this.options = options;
+        this.pathRules = options.hasPathRules();
+    }
+
+    @Override
+    public boolean matches(Object item) {
+        BinaryCursor cursor = BinaryCursor.of(item);
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            return matchRecord(cursor, expected.getSchema(), expected, ROOT) && cursor.isAtEnd();
+        } catch (AvroRuntimeException e) {
+            // malformed data
+            return false;
+        }
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText("binary encoding of ").appendDescriptionOf(IsAvroObjectEqual.avroObjectEqualTo(expected, options));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void describeMismatch(Object item, Description description) {
+        BinaryCursor cursor = BinaryCursor.of(item);
+        if (cursor == null) {
+            super.describeMismatch(item, description);
+            return;
+        }
+        T actual;
+        try {
+            actual = (T) decode(cursor, expected.getSchema());
+        } catch (IOException | AvroRuntimeException e) {
+            description.appendText("could not be decoded: " + e.getMessage());
+            return;
+        }
+        Matcher<T> matcher = IsAvroObjectEqual.avroObjectEqualTo(expected, options);
+        if (!matcher.matches(actual)) {
+            matcher.describeMismatch(actual, description);
+        } else if (!cursor.isAtEnd()) {
+            description.appendText("had " + (cursor.getLimit() - cursor.getPosition()) + " bytes after the record");
+        }
+    }
+
+    private boolean matchRecord(BinaryCursor cursor, Schema schema, IndexedRecord record, List<String> path) {
+        for (Field field : schema.getFields()) {
+            List<String> fieldPath = pathRules ? append(path, field.name()) : ROOT;
+            if (pathRules && options.getExcluder().isExcluded(record, fieldPath)) {
+                cursor.skipValue(field.schema());
+            } else if (!matchValue(cursor, field.schema(), record.get(field.pos()), fieldPath)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean matchValue(BinaryCursor cursor, Schema schema, Object value, List<String> path) {
+        if (pathRules) {
+            Matcher<?> custom = options.getMatcher(path);
+            if (custom != null) {
+                return custom.matches(decodeValue(cursor, schema));
+            }
+        }
+        if (value == null && schema.getType() != Schema.Type.NULL && schema.getType() != Schema.Type.UNION) {
+            cursor.skipValue(schema);
+            return false;
+        }
+
+        switch (schema.getType()) {
+        case NULL:
+            return value == null;
+        case BOOLEAN:
+            return cursor.readBoolean() == (Boolean) value;
+        case INT:
+            return cursor.readInt() == (Integer) value;
+        case LONG:
+            return cursor.readLong() == (Long) value;
+        case FLOAT:
+            Tolerance floatTolerance = options.getTolerance(path, Schema.Type.FLOAT);
+            float actualFloat = cursor.readFloat();
+            return floatTolerance != null ? floatTolerance.isWithin((Float) value, actualFloat) : value.equals(actualFloat);
+        case DOUBLE:
+            return options.getTolerance(path, Schema.Type.DOUBLE).isWithin((Double) value, cursor.readDouble());
+        case STRING: {
+            int length = cursor.readLength();
+            boolean matches = cursor.equalString(length, (CharSequence) value);
+            cursor.skip(length);
+            return matches;
+        }
+        case BYTES: {
+            int length = cursor.readLength();
+            ByteBuffer bytes = (ByteBuffer) value;
+            boolean matches;
+            if (bytes.hasArray()) {
+                matches = cursor.equalBytes(length, bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            } else {
+                byte[] copy = new byte[bytes.remaining()];
+                bytes.duplicate().get(copy);
+                matches = cursor.equalBytes(length, copy, 0, copy.length);
+            }
+            cursor.skip(length);
+            return matches;
+        }
+        case FIXED: {
+            byte[] bytes = ((GenericFixed) value).bytes();
+            boolean matches = cursor.equalBytes(schema.getFixedSize(), bytes, 0, bytes.length);
+            cursor.skip(schema.getFixedSize());
+            return matches;
+        }
+        case ENUM:
+            return cursor.readInt() == schema.getEnumOrdinal(value.toString());
+        case RECORD:
+            return matchRecord(cursor, schema, (IndexedRecord) value, path);
+        case ARRAY:
+            if (!options.isOrdered(path)) {
+                return IsAvroObjectEqual.createMatcher(schema, value, path, options).matches(decodeValue(cursor, schema));
+            }
+            return matchArray(cursor, schema, (List<Object>) value, path);
+        case MAP:
+            return matchMap(cursor, schema, (Map<Object, Object>) value, path);
+        case UNION:
+            Schema branch = IsAvroObjectEqual.getUnionBranch(schema, value, options);
+            int index = cursor.readInt();
+            if (index < 0 || index >= schema.getTypes().size()) {
+                throw new AvroRuntimeException("Malformed union branch " + index);
+            }
+            if (schema.getTypes().get(index) != branch) {
+                cursor.skipValue(schema.getTypes().get(index));
+                return false;
+            }
+            return matchValue(cursor, branch, value, path);
+        default:
+            throw new AvroRuntimeException("Unknown type " + schema.getType());
+        }
+    }
+
+    private boolean matchArray(BinaryCursor cursor, Schema schema, List<Object> list, List<String> path) {
+        int i = 0;
+        for (long count = cursor.readBlockCount(); count != 0; count = cursor.readBlockCount()) {
+            for (long j = 0; j < count; j++, i++) {
+                if (i >= list.size()) {
+                    return false;
+                }
+                List<String> elementPath = pathRules ? append(path, Integer.toString(i)) : ROOT;
+                if (!matchValue(cursor, schema.getElementType(), list.get(i), elementPath)) {
+                    return false;
+                }
+            }
+        }
+        return i == list.size();
+    }
+
+    private boolean matchMap(BinaryCursor cursor, Schema schema, Map<Object, Object> map, List<String> path) {
+        int entries = 0;
+        for (long count = cursor.readBlockCount(); count != 0; count = cursor.readBlockCount()) {
+            for (long j = 0; j < count; j++, entries++) {
+                String key = cursor.readString();
+                Object value = map.get(key);
+                if (value == null && !map.containsKey(key)) {
+                    // keys of generic maps are Utf8
+                    Utf8 utf8Key = new Utf8(key);
+                    value = map.get(utf8Key);
+                    if (value == null && !map.containsKey(utf8Key)) {
+                        return false;
+                    }
+                }
+                List<String> entryPath = pathRules ? append(path, key) : ROOT;
+                if (!matchValue(cursor, schema.getValueType(), value, entryPath)) {
+                    return false;
+                }
+            }
+        }
+        return entries == map.size();
+    }
+
+    private Object decodeValue(BinaryCursor cursor, Schema schema) {
+        try {
+            return decode(cursor, schema);
+        } catch (IOException e) {
+            throw new AvroRuntimeException(e);
+        }
+    }
+
+    /**
+     * Decode the next value, moving the cursor past it.
+     */
+    private static Object decode(BinaryCursor cursor, Schema schema) throws IOException {
+        int start = cursor.getPosition();
+        cursor.skipValue(schema);
+        return new SpecificDatumReader<Object>(schema).read(null,
+                DecoderFactory.get().binaryDecoder(cursor.getBuffer(), start, cursor.getPosition() - start, null));
+    }
+
+    private static List<String> append(List<String> path, String segment) {
+        return ImmutableList.copyOf(Iterables.concat(path, ImmutableList.of(segment)));
+    }
+}
@@ -0,0 +1,320 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.IndexedRecord;
+import org.hamcrest.Matcher;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.Lists;
+
+/**
+ * Flattens the matcher tree for one expected record into a single program of comparisons, which is run by one loop
+ * instead of a chain of nested matchers.
+ * <p>
+ * The comparator only answers whether a record matches: {@link #matches(Object)} returning {@code true} means the
+ * matcher for the expected record matches too. It is conservative, so {@code false} means the matcher must be run to
+ * find out, and to describe the mismatches.
+ * <p>
+ * The program is compiled from the matcher tree rather than from the options, so the values the comparator cannot
+ * compare itself, such as unordered arrays, floats with a tolerance and custom matchers, are delegated to the matchers
+ * already in the tree.
+ */
+final class CompiledComparator {
+    /** value is null */
+    private static final int NULL = 0;
+    /** value equals constant, operand: constant */
+    private static final int EQUALS = 1;
+    /** value is a double within a tolerance, operand: index of value and tolerance */
+    private static final int DOUBLE = 2;
+    /** value is matched by a matcher, operand: matcher constant */
+    private static final int DELEGATE = 3;
+    /** value is an instance of a record class, operands: class constant, field count, then per field its position and program */
+    private static final int RECORD = 4;
+    /** value is a list of a given size, operands: size, then per element its program */
+    private static final int LIST = 5;
+    /** value is a map with the given keys, operands: size, then per entry the key constant and the value program */
+    private static final int MAP = 6;
+
+    private final int[] code;
+    private final Object[] constants;
+    private final double[] doubles;
+
+    private CompiledComparator(int[] code, Object[] constants, double[] doubles) {
+        this.code = code;
+        this.constants = constants;
+        this.doubles = doubles;
+    }
+
+    /**
+     * Matcher of a record, a map or an ordered array, whose parts are compiled.
+     */
+    interface Composite {
+        /**
+         * @return matchers of the fields, entries or elements, in the order they are matched
+         */
+        Iterable<? extends Part> getParts();
+    }
+
+    /**
+     * Matcher of a field of a record, an entry of a map or an element of an array.
+     */
+    interface Part {
+        List<String> getPath();
+
+        Matcher<?> getValueMatcher();
+
+        /**
+         * @return position of a field or index of an element, -1 for an entry
+         */
+        int getIndex();
+
+        /**
+         * @return key of an entry, {@code null} for a field or an element
+         */
+        String getKey();
+    }
+
+    /**
+     * @param record expected record
+     * @param matcher matcher of the record, whose parts are compiled
+     * @return comparator, or {@code null} if the options compare records in a way which is not compiled
+     */
+    static CompiledComparator compile(IndexedRecord record, Composite matcher, Options options) {
+        if (options.isSchemaResolution() || options.isIgnoreRepresentation() || options.getMatchListener() != null
+                || MatchBudget.isBudgeted(options)) {
+            // the listener would not be told about each comparison, nor would the budget be counted
+            return null;
+        }
+        Compiler compiler = new Compiler(options);
+        compiler.compileRecord(record, matcher);
+        return compiler.build();
+    }
+
+    boolean matches(Object actual) {
+        return run(0, actual) >= 0;
+    }
+
+    /**
+     * @return position after the program for the value, or -1 if the value does not match
+     */
+    private int run(int pc, Object value) {
+        switch (code[pc]) {
+        case NULL:
+            return value == null ? pc + 1 : -1;
+        case EQUALS:
+            return constants[code[pc + 1]].equals(value) ? pc + 2 : -1;
+        case DOUBLE:
+            if (!(value instanceof Double)) {
+                return -1;
+            }
+            int index = code[pc + 1];
+            // same comparison as Matchers.closeTo
+            return Math.abs((Double) value - doubles[index]) - doubles[index + 1] <= 0.0 ? pc + 2 : -1;
+        case DELEGATE:
+            return ((Matcher<?>) constants[code[pc + 1]]).matches(value) ? pc + 2 : -1;
+        case RECORD:
+            if (!((Class<?>) constants[code[pc + 1]]).isInstance(value)) {
+                return -1;
+            }
+            IndexedRecord record = (IndexedRecord) value;
+            int fields = code[pc + 2];
+            pc += 3;
+            for (int i = 0; i < fields && pc >= 0; i++) {
+                pc = run(pc + 1, record.get(code[pc]));
+            }
+            return pc;
+        case LIST:
+            int size = code[pc + 1];
+            if (!(value instanceof List) || ((List<?>) value).size() != size) {
+                return -1;
+            }
+            List<?> list = (List<?>) value;
+            pc += 2;
+            for (int i = 0; i < size && pc >= 0; i++) {
+                pc = run(pc, list.get(i));
+            }
+            return pc;
+        case MAP:
+            int entries = code[pc + 1];
+            if (!(value instanceof Map) || ((Map<?, ?>) value).size() != entries) {
+                return -1;
+            }
+            Map<?, ?> map = (Map<?, ?>) value;
+            pc += 2;
+            for (int i = 0; i < entries && pc >= 0; i++) {
+                Object key = constants[code[pc]];
+                Object entryValue = map.get(key);
+                if (entryValue == null && !map.containsKey(key)) {
+                    return -1;
+                }
+                pc = run(pc + 1, entryValue);
+            }
+            return pc;
+        default:
+            throw new IllegalStateException("Unknown instruction " + code[pc]);
+        }
+    }
+
+    private static class Compiler {
+        private final Options options;
+        private int[] code = new int[64];
+        private int length;
+        private final List<Object> constants = Lists.newArrayList();
+        private double[] doubles = new double[8];
+        private int doublesLength;
+
+        Compiler(Options options) {
+            this.options = options;
+        }
+
+        CompiledComparator build() {
+            return new CompiledComparator(Arrays.copyOf(code, length), constants.toArray(), Arrays.copyOf(doubles, doublesLength));
+        }
+
+        private void compileRecord(IndexedRecord record, Composite matcher) {
+            emit(RECORD);
+            emit(constant(record.getClass()));
+            int fieldCount = length;
+            emit(0);
+            // the parts are the fields which are not excluded
+            List<Field> fields = record.getSchema().getFields();
+            for (Part part : matcher.getParts()) {
+                int pos = part.getIndex();
+                emit(pos);
+                compileValue(fields.get(pos).schema(), record.get(pos), part.getValueMatcher(), part.getPath());
+                code[fieldCount]++;
+            }
+        }
+
+        /**
+         * Follows the choices made by the matcher factory of {@link IsAvroObjectEqual}, and delegates to the matcher it
+         * created where the comparison is not compiled.
+         */
+        @SuppressWarnings("unchecked")
+        private void compileValue(Schema schema, Object value, Matcher<?> matcher, List<String> path) {
+            if (options.getMatcher(path) != null || (schema.getType() == Schema.Type.ARRAY && !options.isOrdered(path))
+                    || (schema.getType() == Schema.Type.FLOAT && options.getTolerance(path, Schema.Type.FLOAT) != null)) {
+                compileDelegate(matcher);
+                return;
+            }
+            switch (schema.getType()) {
+            case RECORD:
+                if (value == null) {
+                    emit(NULL);
+                } else if (matcher instanceof Composite) {
+                    compileRecord((IndexedRecord) value, (Composite) matcher);
+                } else {
+                    compileDelegate(matcher);
+                }
+                break;
+            case UNION:
+                compileValue(IsAvroObjectEqual.getUnionBranch(schema, value, options), value, matcher, path);
+                break;
+            case MAP:
+                Map<?, ?> map = (Map<?, ?>) value;
+                if (!(matcher instanceof Composite) || !hasStringKeys(map)) {
+                    // the matcher looks up keys which may be Utf8 in generic data by their string
+                    compileDelegate(matcher);
+                    break;
+                }
+                emit(MAP);
+                emit(map.size());
+                for (Part part : ((Composite) matcher).getParts()) {
+                    emit(constant(part.getKey()));
+                    compileValue(schema.getValueType(), map.get(part.getKey()), part.getValueMatcher(), part.getPath());
+                }
+                break;
+            case ARRAY:
+                if (!(matcher instanceof Composite)) {
+                    // empty arrays are compared with equals
+                    compileDelegate(matcher);
+                    break;
+                }
+                List<?> list = (List<?>) value;
+                emit(LIST);
+                emit(list.size());
+                for (Part part : ((Composite) matcher).getParts()) {
+                    compileValue(schema.getElementType(), list.get(part.getIndex()), part.getValueMatcher(), part.getPath());
+                }
+                break;
+            case DOUBLE:
+                double d = (Double) value;
+                if (Double.isNaN(d) || Double.isInfinite(d)) {
+                    compileEquals(value);
+                } else {
+                    emit(DOUBLE);
+                    emit(doublesLength);
+                    addDouble(d);
+                    addDouble(options.getTolerance(path, Schema.Type.DOUBLE).getError(d));
+                }
+                break;
+            default:
+                compileEquals(value);
+                break;
+            }
+        }
+
+        private void compileDelegate(Matcher<?> matcher) {
+            emit(DELEGATE);
+            emit(constant(matcher));
+        }
+
+        private static boolean hasStringKeys(Map<?, ?> map) {
+            for (Object key : map.keySet()) {
+                if (!(key instanceof String)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void compileEquals(Object value) {
+            if (value == null) {
+                emit(NULL);
+            } else {
+                emit(EQUALS);
+                emit(constant(value));
+            }
+        }
+
+        private int constant(Object value) {
+            constants.add(value);
+            return constants.size() - 1;
+        }
+
+        private void emit(int instruction) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = instruction;
+        }
+
+        private void addDouble(double value) {
+            if (doublesLength == doubles.length) {
+                doubles = Arrays.copyOf(doubles, doublesLength * 2);
+            }
+            doubles[doublesLength++] = value;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.IndexedRecord;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Reads a golden snapshot written by {@link GoldenSnapshotWriter}. Only the blocks which may hold the keys asked for
+ * are read: the index is searched for the block of each key, and the reader seeks to it unless it is already there, so
+ * verifying a few records against a snapshot of millions reads a few blocks.
+ * <p>
+ * Actual records are compared with the snapshot records of the same key, in the order they were written, using
+ * {@link AvroMatchers#avroEqualTo(IndexedRecord, Options)}. Records are decoded without the fields excluded by the
+ * options, like {@link AvroFileVerifier}, so the key field must not be excluded.
+ *
+ * @param <E> record type
+ */
+public class GoldenSnapshotReader<E extends IndexedRecord> {
+    private final File file;
+    private final List<String> keyPath;
+    private final String[] firstKeys;
+    private final long[] positions;
+    private long recordsRead;
+
+    /**
+     * @param file snapshot file, with its index next to it
+     * @throws IOException if the snapshot or its index cannot be read
+     */
+    public GoldenSnapshotReader(@Nonnull File file) throws IOException {
+        this.file = checkNotNull(file, "file is null");
+        DataFileReader<GenericRecord> index = new DataFileReader<GenericRecord>(GoldenSnapshotWriter.indexFile(file),
+                new GenericDatumReader<GenericRecord>(GoldenSnapshotWriter.INDEX_SCHEMA));
+        List<String> keys = Lists.newArrayList();
+        long[] blockPositions = new long[16];
+        try {
+            for (GenericRecord block : index) {
+                if (keys.size() == blockPositions.length) {
+                    blockPositions = Arrays.copyOf(blockPositions, keys.size() * 2);
+                }
+                blockPositions[keys.size()] = (Long) block.get("position");
+                keys.add(block.get("firstKey").toString());
+            }
+        } finally {
+            index.close();
+        }
+        this.firstKeys = keys.toArray(new String[keys.size()]);
+        this.positions = Arrays.copyOf(blockPositions, keys.size());
+
+        DataFileReader<GenericRecord> snapshot = new DataFileReader<GenericRecord>(file, new GenericDatumReader<GenericRecord>());
+        try {
+            String joined = snapshot.getMetaString(GoldenSnapshotWriter.KEY_PATH_META);
+            if (joined == null) {
+                throw new IOException(file + " is not a golden snapshot");
+            }
+            this.keyPath = ImmutableList.copyOf(Splitter.on('.').split(joined));
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    /**
+     * @return path of the key field within each record
+     */
+    public List<String> getKeyPath() {
+        return keyPath;
+    }
+
+    /**
+     * @return number of indexed blocks
+     */
+    public int getBlockCount() {
+        return positions.length;
+    }
+
+    /**
+     * @param key key of the records
+     * @return the snapshot records with the key, in the order they were written
+     * @throws IOException if the snapshot cannot be read
+     */
+    public List<E> get(@Nonnull String key) throws IOException {
+        checkNotNull(key, "key is null");
+        Cursor cursor = new Cursor(new Options());
+        try {
+            return cursor.read(key);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Verify actual records against the snapshot records with the same keys. Snapshot records whose keys are not
+     * among the actual records are not read, and so are not reported as missing.
+     *
+     * @param actual actual records
+     * @param options options to compare the records with
+     * @return the result of the verification, with mismatches prefixed by the key of the record
+     * @throws IOException if the snapshot cannot be read
+     */
+    public AvroStreamVerifier.Result verify(@Nonnull Iterable<E> actual, @Nonnull Options options) throws IOException {
+        checkNotNull(actual, "actual is null");
+        checkNotNull(options, "options is null");
+        // keys are looked up in order, so each block is read at most once
+        Map<String, List<E>> byKey = Maps.newTreeMap();
+        for (E record : actual) {
+            String key = IsAvroObjectEqual.getArrayKey(record, keyPath);
+            List<E> records = byKey.get(key);
+            if (records == null) {
+                records = Lists.newArrayListWithCapacity(1);
+                byKey.put(key, records);
+            }
+            records.add(record);
+        }
+
+        MismatchList mismatches = MismatchList.create(ImmutableList.<String> of(), options);
+        long matched = 0;
+        long pending = 0;
+        long unexpected = 0;
+        Cursor cursor = new Cursor(options);
+        try {
+            for (Map.Entry<String, List<E>> entry : byKey.entrySet()) {
+                List<E> expected = cursor.read(entry.getKey());
+                List<E> records = entry.getValue();
+                for (int i = 0; i < Math.max(expected.size(), records.size()); i++) {
+                    List<String> path = ImmutableList.of(i == 0 ? entry.getKey() : entry.getKey() + "#" + i);
+                    if (i >= records.size()) {
+                        pending++;
+                        StringDescription description = new StringDescription();
+                        description.appendText("Expected: ").appendDescriptionOf(IsAvroObjectEqual.avroObjectEqualTo(expected.get(i), options))
+                                .appendText(" but: was missing");
+                        mismatches.addMismatch(path, "was missing", description.toString());
+                    } else if (i >= expected.size()) {
+                        unexpected++;
+                        mismatches.addMismatch(path, "was not expected");
+                    } else {
+                        Matcher<E> matcher = IsAvroObjectEqual.avroObjectEqualTo(expected.get(i), options);
+                        if (matcher.matches(records.get(i))) {
+                            matched++;
+                        } else {
+                            unexpected++;
+                            MismatchList recordMismatches = new MismatchList(path);
+                            matcher.describeMismatch(records.get(i), recordMismatches);
+                            mismatches.addAll(recordMismatches);
+                        }
+                    }
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        recordsRead = cursor.read;
+        if (options.getMismatchSink() != null) {
+            options.getMismatchSink().flush();
+        }
+        return new AvroStreamVerifier.Result(matched, pending, unexpected, mismatches);
+    }
+
+    /**
+     * @return number of snapshot records decoded by the last verification
+     */
+    long getRecordsRead() {
+        return recordsRead;
+    }
+
+    /**
+     * @return the block which may hold the first record with the key: the last block starting with a smaller key,
+     *         as records with the key may continue from it into the next blocks
+     */
+    private int blockOf(String key) {
+        int index = Arrays.binarySearch(firstKeys, key);
+        if (index < 0) {
+            index = -index - 1;
+        } else {
+            // the first of the blocks starting with the key
+            while (index > 0 && firstKeys[index - 1].equals(key)) {
+                index--;
+            }
+        }
+        return Math.max(index - 1, 0);
+    }
+
+    /**
+     * Reads the records of ascending keys, seeking forward to the block of a key when it is not already being read.
+     */
+    private class Cursor {
+        private final DataFileReader<E> reader;
+        /** record read past the last key, which may have the next key */
+        private E next;
+        long read;
+
+        Cursor(Options options) throws IOException {
+            this.reader = AvroFileVerifier.openProjected(file, null, options);
+        }
+
+        List<E> read(String key) throws IOException {
+            List<E> records = Lists.newArrayListWithCapacity(1);
+            if (positions.length == 0) {
+                return records;
+            }
+            long position = positions[blockOf(key)];
+            if (reader.previousSync() < position) {
+                reader.seek(position);
+                next = null;
+            }
+            while (true) {
+                if (next == null) {
+                    if (!reader.hasNext()) {
+                        break;
+                    }
+                    next = reader.next();
+                    read++;
+                }
+                int comparison = IsAvroObjectEqual.getArrayKey(next, keyPath).compareTo(key);
+                if (comparison > 0) {
+                    break;
+                }
+                if (comparison == 0) {
+                    records.add(next);
+                }
+                next = null;
+            }
+            return records;
+        }
+
+        void close() throws IOException {
+            reader.close();
+        }
+    }
+}
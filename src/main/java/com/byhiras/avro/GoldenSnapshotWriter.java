@@ -0,0 +1,182 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.specific.SpecificDatumWriter;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Writes a golden snapshot: an Avro container file of records sorted by a key, and a sparse index next to it which
+ * holds the first key and the position of each block. {@link GoldenSnapshotReader} uses the index to read only the
+ * blocks holding the keys of the actual records. Usage:
+ *
+ * <pre>
+ * GoldenSnapshotWriter.write(file, ImmutableList.of("id"), expectedRecords);
+ * </pre>
+ * <p>
+ * Keys are the string values of the field at the key path, as for {@link AvroMatchers.Options#setArrayKey(List, List)},
+ * and records must be appended in the order of their keys. Records with the same key are allowed.
+ *
+ * @param <E> record type
+ */
+public class GoldenSnapshotWriter<E extends IndexedRecord> implements Closeable {
+    static final int DEFAULT_RECORDS_PER_BLOCK = 1000;
+    /** metadata of the container file holding the key path, joined by dots */
+    static final String KEY_PATH_META = "byhiras.snapshot.key";
+    static final Schema INDEX_SCHEMA = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"SnapshotBlock\","
+            + " \"namespace\": \"com.byhiras.avro\", \"fields\": [{\"name\": \"firstKey\", \"type\": \"string\"},"
+            + " {\"name\": \"position\", \"type\": \"long\"}]}");
+
+    private final File file;
+    private final List<String> keyPath;
+    private final int recordsPerBlock;
+    private final DataFileWriter<E> writer;
+    private final List<String> firstKeys = Lists.newArrayList();
+    private final List<Long> positions = Lists.newArrayList();
+    private long count;
+    private String lastKey;
+    private boolean closed;
+
+    /**
+     * Write the records to a snapshot, sorting them by key first.
+     *
+     * @param file snapshot file, the index is written next to it
+     * @param keyPath path of the key field within each record
+     * @param records records to write
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static <E extends IndexedRecord> void write(@Nonnull File file, @Nonnull final List<String> keyPath,
+            @Nonnull Collection<E> records) throws IOException {
+        checkArgument(!records.isEmpty(), "records is empty");
+        List<E> sorted = Lists.newArrayList(records);
+        Collections.sort(sorted, new Comparator<E>() {
+            @Override
+            public int compare(E o1, E o2) {
+                return IsAvroObjectEqual.getArrayKey(o1, keyPath).compareTo(IsAvroObjectEqual.getArrayKey(o2, keyPath));
+            }
+        });
+        GoldenSnapshotWriter<E> writer = new GoldenSnapshotWriter<E>(file, sorted.get(0).getSchema(), keyPath);
+        try {
+            for (E record : sorted) {
+                writer.append(record);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    public GoldenSnapshotWriter(@Nonnull File file, @Nonnull Schema schema, @Nonnull List<String> keyPath) throws IOException {
+        this(file, schema, keyPath, DEFAULT_RECORDS_PER_BLOCK);
+    }
+
+    /**
+     * @param file snapshot file, the index is written next to it
+     * @param schema schema of the records
+     * @param keyPath path of the key field within each record
+     * @param recordsPerBlock number of records in each indexed block, fewer means less to read for each key and a
+     *            larger index
+     * @throws IOException if the snapshot cannot be created
+     */
+    public GoldenSnapshotWriter(@Nonnull File file, @Nonnull Schema schema, @Nonnull List<String> keyPath, int recordsPerBlock)
+            throws IOException {
+        this.file = checkNotNull(file, "file is null");
+        checkNotNull(schema, "schema is null");
+        this.keyPath = ImmutableList.copyOf(checkNotNull(keyPath, "keyPath is null"));
+        checkArgument(!this.keyPath.isEmpty(), "keyPath is empty");
+        checkArgument(recordsPerBlock > 0, "recordsPerBlock must be positive: %s", recordsPerBlock);
+        this.recordsPerBlock = recordsPerBlock;
+        // blocks only end where the index says, so they are never split by size
+        this.writer = new DataFileWriter<E>(new SpecificDatumWriter<E>(schema)).setSyncInterval(1 << 30)
+                .setMeta(KEY_PATH_META, Joiner.on('.').join(this.keyPath));
+        writer.create(schema, file);
+    }
+
+    /**
+     * Append the next record.
+     *
+     * @param record record whose key is not less than the key of the previous record
+     * @throws IOException if the record cannot be written
+     */
+    public void append(@Nonnull E record) throws IOException {
+        checkNotNull(record, "record is null");
+        checkState(!closed, "writer is closed");
+        String key = IsAvroObjectEqual.getArrayKey(record, keyPath);
+        checkArgument(lastKey == null || key.compareTo(lastKey) >= 0, "records must be appended in key order: %s follows %s", key,
+                lastKey);
+        if (count % recordsPerBlock == 0) {
+            positions.add(writer.sync());
+            firstKeys.add(key);
+        }
+        writer.append(record);
+        lastKey = key;
+        count++;
+    }
+
+    /**
+     * Close the container file and write the index.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writer.close();
+        DataFileWriter<GenericRecord> indexWriter = new DataFileWriter<GenericRecord>(new GenericDatumWriter<GenericRecord>(INDEX_SCHEMA));
+        indexWriter.create(INDEX_SCHEMA, indexFile(file));
+        try {
+            for (int i = 0; i < positions.size(); i++) {
+                GenericRecord block = new GenericData.Record(INDEX_SCHEMA);
+                block.put("firstKey", firstKeys.get(i));
+                block.put("position", positions.get(i));
+                indexWriter.append(block);
+            }
+        } finally {
+            indexWriter.close();
+        }
+    }
+
+    /**
+     * @return the index file of a snapshot
+     */
+    static File indexFile(File file) {
+        return new File(file.getPath() + ".index");
+    }
+}
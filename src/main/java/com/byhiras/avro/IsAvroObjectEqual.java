@@ -24,15 +24,22 @@ import static com.byhiras.avro.AvroMatchers.excludeFields;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.GenericContainer;
+import org.apache.avro.generic.GenericEnumSymbol;
+import org.apache.avro.generic.GenericFixed;
 import org.apache.avro.generic.IndexedRecord;
 import org.apache.avro.io.EncoderFactory;
 import org.apache.avro.io.JsonEncoder;
@@ -49,11 +56,12 @@ import org.hamcrest.collection.IsIterableContainingInAnyOrder;
 import com.byhiras.avro.AvroMatchers.Options;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import com.google.common.primitives.Primitives;
 
 /**
@@ -65,7 +73,27 @@ public class IsAvroObjectEqual {
     }
 
     static <T extends IndexedRecord> Matcher<T> avroObjectEqualTo(T obj, Options options) {
-        return new AvroObjectMatcher<T>(obj, options);
+        MatchListener listener = options.getMatchListener();
+        if (listener == null) {
+            return sink(memoize(budget(new AvroObjectMatcher<T>(obj, options), options), options), options);
+        }
+        long start = System.nanoTime();
+        Matcher<T> matcher = memoize(budget(new AvroObjectMatcher<T>(obj, options), options), options);
+        listener.onBuild(System.nanoTime() - start);
+        return sink(new ListenedMatcher<T>(matcher, options), options);
+    }
+
+    private static <T> Matcher<T> memoize(Matcher<T> matcher, Options options) {
+        // mismatches written to a sink are not kept in memory
+        return options.isMemoized() ? new MemoizedMatcher<T>(matcher, options.getMismatchSink() == null) : matcher;
+    }
+
+    private static <T> Matcher<T> budget(Matcher<T> matcher, Options options) {
+        return MatchBudget.isBudgeted(options) ? new BudgetedMatcher<T>(matcher, options) : matcher;
+    }
+
+    private static <T> Matcher<T> sink(Matcher<T> matcher, Options options) {
+        return options.getMismatchSink() != null ? new SinkingMatcher<T>(matcher, options) : matcher;
     }
 
     /**
@@ -103,23 +131,31 @@ public class IsAvroObjectEqual {
             return Matchers.<Iterable<? extends E>> equalTo(values);
         }
 
+        MatchListener listener = options.getMatchListener();
+        long start = listener != null ? System.nanoTime() : 0;
         final List<Matcher<? super E>> elementMatchers = (List) createElementMatchers(null, values,
                 ImmutableList.<String> of(), options, RECORD_MATCHER_FACTORY);
         // ugly raw cast to get ListMatcher to match
-        return rootIgnoreOrder ? new CollectionMatcher<E>(elementMatchers, ImmutableList.<String> of()) : (Matcher) new ExternalListMatcher<E>(elementMatchers);
+        Matcher<Iterable<? extends E>> matcher = budget(rootIgnoreOrder ? new CollectionMatcher<E>(elementMatchers, ImmutableList.<String> of())
+                : (Matcher) new ExternalListMatcher<E>(elementMatchers, options), options);
+        if (listener != null) {
+            listener.onBuild(System.nanoTime() - start);
+            matcher = new ListenedMatcher<Iterable<? extends E>>(matcher, options);
+        }
+        return sink(matcher, options);
     }
 
     @SuppressWarnings({ "unchecked", "rawtypes" })
-    private static Matcher<?> createMatcher(Schema schema, Object value, List<String> fieldPath, Options options) {
+    static Matcher<?> createMatcher(Schema schema, Object value, List<String> fieldPath, Options options) {
         return DEFAULT_MATCHER_FACTORY.createMatcher(schema, value, fieldPath, options);
     }
 
     @SuppressWarnings({ "unchecked", "rawtypes" })
-    private static Matcher createRecordMatcher(IndexedRecord value, List<String> fieldPath, Options options) {
+    private static Matcher createRecordMatcher(IndexedRecord value, List<String> fieldPath, Options options, boolean compile) {
         if (value == null) {
             return nullValue();
         }
-        return new AvroObjectMatcher(value, fieldPath, options);
+        return new AvroObjectMatcher(value, fieldPath, options, compile);
     }
 
     @SuppressWarnings({ "unchecked", "rawtypes" })
@@ -127,6 +163,10 @@ public class IsAvroObjectEqual {
         if (values.isEmpty()) {
             return equalTo(values);
         }
+        List<String> keyPath = options.getArrayKey(fieldPath);
+        if (keyPath != null) {
+            return new KeyedListMatcher(elementSchema, values, fieldPath, keyPath, options);
+        }
 
         final List<Matcher<?>> elementMatchers = createElementMatchers(elementSchema, values, fieldPath, options,
                 DEFAULT_MATCHER_FACTORY);
@@ -135,7 +175,7 @@ public class IsAvroObjectEqual {
             return new CollectionMatcher(elementMatchers, fieldPath);
         }
         // TODO might not be very pretty output.  Make a more intelligent list matcher that lists missing values, differing indices, etc?
-        return new ListMatcher(elementMatchers, fieldPath);
+        return new ListMatcher(elementMatchers, fieldPath, options);
     }
 
     private static List<Matcher<?>> createElementMatchers(Schema elementSchema, Collection<?> values, List<String> fieldPath, Options options,
@@ -150,25 +190,66 @@ public class IsAvroObjectEqual {
         return elementMatchers;
     }
 
-    @SuppressWarnings("rawtypes")
+    /**
+     * @param element record of a keyed array
+     * @param keyPath path of the key in the record
+     * @return key of the record, {@code "null"} if the record or its key are null
+     */
+    static String getArrayKey(Object element, List<String> keyPath) {
+        Object value = element;
+        for (String name : keyPath) {
+            if (!(value instanceof IndexedRecord)) {
+                return "null";
+            }
+            IndexedRecord record = (IndexedRecord) value;
+            Schema.Field field = record.getSchema().getField(name);
+            value = field == null ? null : record.get(field.pos());
+        }
+        return String.valueOf(value);
+    }
+
     private static Matcher<?> createUnionMatcher(Schema schema, Object value, List<String> fieldPath, Options options) {
-        Matcher<?> result = null;
+        Schema branch = getUnionBranch(schema, value, options);
+        if (branch.getType() == Schema.Type.NULL) {
+            return nullValue();
+        }
+        return createMatcher(branch, value, fieldPath, options);
+    }
+
+    /**
+     * @return the branch of the union which the value belongs to
+     */
+    static Schema getUnionBranch(Schema schema, Object value, Options options) {
+        if (options.isIgnoreRepresentation()) {
+            // the branch of generic values cannot be found by class
+            return schema.getTypes().get(SpecificData.get().resolveUnion(schema, value));
+        }
+
+        Schema result = null;
 
         for (Schema possibleSchema : schema.getTypes()) {
             if (possibleSchema.getType() == Schema.Type.NULL) {
                 if (value == null) {
-                    result = nullValue();
+                    result = possibleSchema;
                     break;
                 }
             } else if (value != null) {
                 Class<?> possibleClass = SpecificData.get().getClass(possibleSchema);
 
+                if (possibleClass == null) {
+                    // a named type without a generated class, whose generic values carry their schema
+                    if (value instanceof GenericContainer && ((GenericContainer) value).getSchema().getFullName().equals(possibleSchema.getFullName())) {
+                        result = possibleSchema;
+                    }
+                    continue;
+                }
+
                 // Avro will return the primitive wrapper which the value will not be compatible with
                 if (possibleClass.isPrimitive()) {
                     possibleClass = Primitives.wrap(possibleClass);
                 }
                 if (possibleClass.isInstance(value)) {
-                    result = createMatcher(possibleSchema, value, fieldPath, options);
+                    result = possibleSchema;
                 }
             }
         }
@@ -178,14 +259,11 @@ public class IsAvroObjectEqual {
         return result;
     }
 
-    private static Matcher<?> createDoubleMatcher(Double value) {
+    private static Matcher<?> createDoubleMatcher(Double value, Tolerance tolerance) {
         if (value.isNaN() || value.isInfinite()) {
             return equalTo(value);
         }
-        if (value == 0.0) {
-            return closeTo(value, 1e-6);
-        }
-        return closeTo(value, Math.abs(value) * 1e-8);
+        return closeTo(value, tolerance.getError(value));
     }
 
     /**
@@ -204,20 +282,22 @@ public class IsAvroObjectEqual {
         @Override
         @SuppressWarnings("unchecked")
         public final boolean matches(Object item) {
+            MatchBudget.visit(objectPath);
             return item != null
                     && expectedType.isInstance(item)
-                    && matchesSafely((T) item, new Description.NullDescription());
+                    && matchesSafely((T) item, Description.NONE);
         }
 
         @SuppressWarnings("unchecked")
         @Override
         public final void describeMismatch(Object item, Description mismatchDescription) {
+            MatchBudget.visit(objectPath);
             if (item == null || !expectedType.isInstance(item)) {
                 if (mismatchDescription instanceof MismatchList) {
                     MismatchList mismatchList = MismatchList.checkArgumentIsMismatchList(mismatchDescription);
                     StringDescription stringDescription = new StringDescription();
                     super.describeMismatch(item, stringDescription);
-                    mismatchList.addMismatch(objectPath, stringDescription.toString());
+                    mismatchList.addMismatch(objectPath, item == null ? "was null" : "had the wrong type", stringDescription.toString());
                 } else {
                     super.describeMismatch(item, mismatchDescription);
                 }
@@ -238,10 +318,14 @@ public class IsAvroObjectEqual {
         }
     }
 
-    private static class AvroObjectMatcher<T extends IndexedRecord> extends AvroDiagnosingMatcher<T> {
+    private static class AvroObjectMatcher<T extends IndexedRecord> extends AvroDiagnosingMatcher<T>
+            implements CompiledComparator.Composite {
         protected final T object;
-        private final List<Matcher<T>> subMatchers;
+        private final List<FieldMatcher<T>> subMatchers;
         private final Options options;
+        private final MatchListener listener;
+        private final CompiledComparator compiled;
+        private volatile SchemaResolution lastResolution;
 
         /**
          * Simple constructor, will produce a matcher with strict equality checking.
@@ -257,7 +341,7 @@ public class IsAvroObjectEqual {
          * @param options options
          */
         public AvroObjectMatcher(T object, Options options) {
-            this(object, Lists.<String> newArrayList(), options);
+            this(object, Lists.<String> newArrayList(), options, options.isCompiled());
         }
 
         /**
@@ -265,14 +349,16 @@ public class IsAvroObjectEqual {
          *
          * @param object  The object to compare to.
          * @param options options
+         * @param compile whether to compile a comparator for the whole record, for matchers not nested in another
          */
-        private AvroObjectMatcher(T object, List<String> objectPath, @Nonnull Options options) {
+        private AvroObjectMatcher(T object, List<String> objectPath, @Nonnull Options options, boolean compile) {
             super(IndexedRecord.class, objectPath);
 
             this.object = object;
             this.options = options;
+            this.listener = options.getMatchListener();
 
-            ImmutableList.Builder<Matcher<T>> subMatcherBuilder = ImmutableList.builder();
+            ImmutableList.Builder<FieldMatcher<T>> subMatcherBuilder = ImmutableList.builder();
             for (Field field : object.getSchema().getFields()) {
                 List<String> fieldPath = ImmutableList.copyOf(Iterables.concat(objectPath, ImmutableList.of(field.name())));
                 if (!options.getExcluder().isExcluded(object, fieldPath)) {
@@ -281,6 +367,12 @@ public class IsAvroObjectEqual {
                 }
             }
             subMatchers = subMatcherBuilder.build();
+            compiled = compile ? CompiledComparator.compile(object, this, options) : null;
+        }
+
+        @Override
+        public Iterable<? extends CompiledComparator.Part> getParts() {
+            return subMatchers;
         }
 
         @SuppressWarnings({ "unchecked", "ConstantConditions" })
@@ -302,7 +394,17 @@ public class IsAvroObjectEqual {
 
         @Override
         protected boolean matchesSafely(T other, final Description mismatchDescription) {
-            if (!object.getClass().isInstance(other)) {
+            if (compiled != null && mismatchDescription instanceof NullDescription && compiled.matches(other)) {
+                return true;
+            }
+
+            IndexedRecord target = other;
+            if (options.isSchemaResolution() || options.isIgnoreRepresentation()) {
+                target = resolve(other, mismatchDescription);
+                if (target == null) {
+                    return false;
+                }
+            } else if (!object.getClass().isInstance(other)) {
                 if (mismatchDescription instanceof MismatchList) {
                     ((MismatchList) mismatchDescription).addMismatch(objectPath, "is not instance of " + object.getClass().getName());
                 }
@@ -311,10 +413,15 @@ public class IsAvroObjectEqual {
 
             boolean matches = true;
             MismatchList mismatchList = null;
-            for (Matcher<T> matcher : subMatchers) {
-                if (!matcher.matches(other)) {
+            // indexed, as an iterator is not always eliminated by escape analysis
+            for (int i = 0; i < subMatchers.size(); i++) {
+                Matcher<T> matcher = subMatchers.get(i);
+                if (!matcher.matches(target)) {
                     if (mismatchDescription instanceof Description.NullDescription) {
                         // shortcut and return false
+                        if (listener != null) {
+                            listener.onShortCircuit(objectPath);
+                        }
                         return false;
                     }
 
@@ -328,17 +435,54 @@ public class IsAvroObjectEqual {
                         }
                     }
 
-                    matcher.describeMismatch(other, mismatchList);
+                    matcher.describeMismatch(target, mismatchList);
                     matches = false;
                 }
             }
 
-            if (!matches && objectPath.isEmpty()) { // mismatch and we are the top-level element
+            if (!matches && objectPath.isEmpty() && mismatchList != mismatchDescription) { // mismatch and we are the top-level element
                 mismatchDescription.appendDescriptionOf(mismatchList);
             }
 
             return matches;
         }
+
+        /**
+         * @return view of the actual record with the field positions of the expected record, or {@code null} if the
+         *         schemas are not compatible
+         */
+        private IndexedRecord resolve(IndexedRecord other, Description mismatchDescription) {
+            Schema expectedSchema = object.getSchema();
+            Schema actualSchema = other.getSchema();
+            String incompatibility = null;
+            SchemaResolution resolution = lastResolution;
+            if (actualSchema == expectedSchema) {
+                return other;
+            } else if (!SchemaResolution.isCompatibleName(expectedSchema, actualSchema)) {
+                incompatibility = "has schema " + actualSchema.getFullName() + " which is not compatible with " + expectedSchema.getFullName();
+            } else {
+                if (resolution == null || resolution.getActualSchema() != actualSchema) {
+                    // actual records usually share one schema instance, so only the last resolution is kept
+                    resolution = SchemaResolution.resolve(expectedSchema, actualSchema, options.isSchemaResolution());
+                    lastResolution = resolution;
+                }
+                if (resolution.getMissingField() != null) {
+                    incompatibility = options.isSchemaResolution()
+                            ? "has no field " + resolution.getMissingField() + " and it has no default value"
+                            : "has no field " + resolution.getMissingField();
+                }
+            }
+
+            if (incompatibility != null) {
+                if (mismatchDescription instanceof MismatchList) {
+                    ((MismatchList) mismatchDescription).addMismatch(objectPath, incompatibility);
+                } else if (!(mismatchDescription instanceof NullDescription)) {
+                    mismatchDescription.appendText(incompatibility);
+                }
+                return null;
+            }
+            return resolution.view(other);
+        }
     }
 
     private static abstract class AbstractFieldMatcher<T> extends AvroDiagnosingMatcher<T> {
@@ -349,6 +493,14 @@ public class IsAvroObjectEqual {
             this.valueMatcher = valueMatcher;
         }
 
+        public List<String> getPath() {
+            return objectPath;
+        }
+
+        public Matcher<?> getValueMatcher() {
+            return valueMatcher;
+        }
+
         @Override
         protected boolean matchesSafely(T item, Description mismatchDescription) {
             Object value = getValue(item);
@@ -362,12 +514,12 @@ public class IsAvroObjectEqual {
                     ((InternalMatcher) valueMatcher).describeMismatch2(value, mismatchList);
                 } else {
                     // we have reached a 'leaf' mismatch, add it to the stack
+                    String expected = StringDescription.toString(valueMatcher);
                     StringDescription mismatchError = new StringDescription();
-                    mismatchError.appendText("Expected: ");
-                    valueMatcher.describeTo(mismatchError);
-                    mismatchError.appendText(" but: ");
+                    mismatchError.appendText("Expected: ").appendText(expected).appendText(" but: ");
                     valueMatcher.describeMismatch(value, mismatchError);
-                    mismatchList.addMismatch(objectPath, mismatchError.toString());
+                    mismatchList.addValueMismatch(objectPath, expected, new StringDescription().appendValue(value).toString(),
+                            mismatchError.toString());
                 }
             }
             return false;
@@ -376,7 +528,7 @@ public class IsAvroObjectEqual {
         protected abstract Object getValue(T item);
     }
 
-    private static class FieldMatcher<T extends IndexedRecord> extends AbstractFieldMatcher<T> {
+    private static class FieldMatcher<T extends IndexedRecord> extends AbstractFieldMatcher<T> implements CompiledComparator.Part {
         private final int fieldPos;
 
         public FieldMatcher(List<String> fieldPath, int fieldPos, Matcher<?> valueMatcher) {
@@ -384,13 +536,23 @@ public class IsAvroObjectEqual {
             this.fieldPos = fieldPos;
         }
 
+        @Override
+        public int getIndex() {
+            return fieldPos;
+        }
+
+        @Override
+        public String getKey() {
+            return null;
+        }
+
         @Override
         protected Object getValue(T item) {
             return item.get(fieldPos);
         }
     }
 
-    private static class MapEntryMatcher extends AbstractFieldMatcher<Map<String, ?>> {
+    private static class MapEntryMatcher extends AbstractFieldMatcher<Map<String, ?>> implements CompiledComparator.Part {
         private final String key;
 
         public MapEntryMatcher(List<String> fieldPath, String key, Matcher<?> valueMatcher) {
@@ -398,6 +560,16 @@ public class IsAvroObjectEqual {
             this.key = key;
         }
 
+        @Override
+        public int getIndex() {
+            return -1;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
         @Override
         protected Object getValue(Map<String, ?> item) {
             return item.get(key);
@@ -408,7 +580,7 @@ public class IsAvroObjectEqual {
         }
     }
 
-    private static class ListEntryMatcher extends AbstractFieldMatcher<List<?>> {
+    private static class ListEntryMatcher extends AbstractFieldMatcher<List<?>> implements CompiledComparator.Part {
         private final int index;
 
         public ListEntryMatcher(List<String> fieldPath, int index, Matcher<?> valueMatcher) {
@@ -416,6 +588,16 @@ public class IsAvroObjectEqual {
             this.index = index;
         }
 
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public String getKey() {
+            return null;
+        }
+
         @Override
         protected Object getValue(List<?> item) {
             return hasValue(item) ? item.get(index) : null;
@@ -431,61 +613,210 @@ public class IsAvroObjectEqual {
      *
      * TODO pretty up description
      */
-    private static class AvroMapMatcher extends AvroDiagnosingMatcher<Map<String, ?>> {
+    private static class AvroMapMatcher extends AvroDiagnosingMatcher<Map<String, ?>> implements CompiledComparator.Composite {
         private final Map<String, MapEntryMatcher> subMatchers = Maps.newHashMap();
+        /** the values of subMatchers, to match without an iterator */
+        private final List<MapEntryMatcher> entryMatchers;
+        /** whether the keys of actual maps may be Utf8 */
+        private final boolean utf8Keys;
+        private final MatchListener listener;
 
         public AvroMapMatcher(Schema schema, Map<String, ?> map, List<String> objectPath, Options options) {
             super(Map.class, objectPath);
+            this.utf8Keys = options.isIgnoreRepresentation() || options.isSchemaResolution();
+            this.listener = options.getMatchListener();
 
             for (Map.Entry<String, ?> entry : map.entrySet()) {
-                List<String> entryPath = ImmutableList.copyOf(Iterables.concat(objectPath, ImmutableList.of(entry.getKey())));
-                subMatchers.put(entry.getKey(), new MapEntryMatcher(entryPath, entry.getKey(), createMatcher(schema, entry.getValue(), entryPath, options)));
+                // keys may be Utf8 in generic data
+                String key = String.valueOf(entry.getKey());
+                List<String> entryPath = ImmutableList.copyOf(Iterables.concat(objectPath, ImmutableList.of(key)));
+                subMatchers.put(key, new MapEntryMatcher(entryPath, key, createMatcher(schema, entry.getValue(), entryPath, options)));
             }
+            entryMatchers = ImmutableList.copyOf(subMatchers.values());
         }
 
         @Override
-        protected boolean matchesSafely(Map<String, ?> map, Description mismatchDescription) {
-            Set<String> remainingKeys = Sets.newHashSet(map.keySet());
+        public Iterable<? extends CompiledComparator.Part> getParts() {
+            return subMatchers.values();
+        }
 
+        @Override
+        protected boolean matchesSafely(Map<String, ?> map, Description mismatchDescription) {
+            if (utf8Keys) {
+                map = withStringKeys(map);
+            }
+            if (mismatchDescription instanceof NullDescription) {
+                return matches(map);
+            }
             boolean matches = true;
-            for (Map.Entry<String, MapEntryMatcher> entry : subMatchers.entrySet()) {
-                MapEntryMatcher matcher = entry.getValue();
+            for (MapEntryMatcher matcher : subMatchers.values()) {
                 if (!matcher.matches(map)) {
-                    if (mismatchDescription instanceof Description.NullDescription) {
-                        // shortcut  and return false;
-                        return false;
-                    }
-
-                    // otherwise continue and catalogue mismatches
-                    if (matcher.hasValue(map)) {
-                        remainingKeys.remove(entry.getKey());
-                    }
                     matcher.describeMismatch(map, mismatchDescription);
                     matches = false;
-                } else {
-                    remainingKeys.remove(entry.getKey());
                 }
             }
 
-            if (remainingKeys.size() > 0) {
-                if (!(mismatchDescription instanceof Description.NullDescription)) {
-                    MismatchList mismatchList = MismatchList.checkArgumentIsMismatchList(mismatchDescription);
-                    StringDescription mismatchError = new StringDescription();
-                    mismatchError.appendText("had additional keys: ").appendValueList("[", ",", "]", remainingKeys);
-                    mismatchList.addMismatch(objectPath, mismatchError.toString());
+            // the keys of the map which are not expected, the expected keys are described by their matchers
+            List<String> additionalKeys = null;
+            for (String key : map.keySet()) {
+                if (!subMatchers.containsKey(key)) {
+                    if (additionalKeys == null) {
+                        additionalKeys = Lists.newArrayList();
+                    }
+                    additionalKeys.add(key);
                 }
+            }
+            if (additionalKeys != null) {
+                MismatchList mismatchList = MismatchList.checkArgumentIsMismatchList(mismatchDescription);
+                StringDescription mismatchError = new StringDescription();
+                mismatchError.appendText("had additional keys: ").appendValueList("[", ",", "]", additionalKeys);
+                mismatchList.addMismatch(objectPath, "had additional keys", mismatchError.toString());
                 matches = false;
             }
 
             return matches;
         }
+
+        /**
+         * Match without describing mismatches, and without copying or iterating over the keys.
+         */
+        private boolean matches(Map<String, ?> map) {
+            int expectedKeys = 0;
+            for (int i = 0; i < entryMatchers.size(); i++) {
+                MapEntryMatcher matcher = entryMatchers.get(i);
+                if (!matcher.matches(map)) {
+                    if (listener != null) {
+                        listener.onShortCircuit(objectPath);
+                    }
+                    return false;
+                }
+                if (matcher.hasValue(map)) {
+                    expectedKeys++;
+                }
+            }
+            // the map has additional keys if it has more keys than the expected keys it contains
+            return map.size() == expectedKeys;
+        }
+
+        private static Map<String, ?> withStringKeys(Map<String, ?> map) {
+            for (Object key : map.keySet()) {
+                if (!(key instanceof String)) {
+                    Map<String, Object> copy = Maps.newHashMapWithExpectedSize(map.size());
+                    for (Map.Entry<?, ?> entry : map.entrySet()) {
+                        copy.put(String.valueOf(entry.getKey()), entry.getValue());
+                    }
+                    return copy;
+                }
+            }
+            return map;
+        }
+    }
+
+    /**
+     * Promotes actual values written with another type to the expected type, following Avro schema resolution.
+     */
+    private static class PromotingMatcher<T> extends BaseMatcher<T> {
+        private final Schema.Type type;
+        private final Matcher<?> matcher;
+
+        public PromotingMatcher(Schema.Type type, Matcher<?> matcher) {
+            this.type = type;
+            this.matcher = matcher;
+        }
+
+        @Override
+        public boolean matches(Object item) {
+            return matcher.matches(SchemaResolution.promote(type, item));
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            matcher.describeTo(description);
+        }
+
+        @Override
+        public void describeMismatch(Object item, Description description) {
+            matcher.describeMismatch(SchemaResolution.promote(type, item), description);
+        }
+    }
+
+    /**
+     * Compares strings, enum symbols and fixed values regardless of their Java representation, eg. {@link String}
+     * with {@link org.apache.avro.util.Utf8}, or an enum with a {@link GenericEnumSymbol}.
+     */
+    private static class RepresentationIndependentMatcher extends BaseMatcher<Object> {
+        private final Object expected;
+        private final Object normalizedExpected;
+
+        public RepresentationIndependentMatcher(Object expected) {
+            this.expected = expected;
+            this.normalizedExpected = normalize(expected);
+        }
+
+        @Override
+        public boolean matches(Object item) {
+            return normalizedExpected == null ? item == null : normalizedExpected.equals(normalize(item));
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            description.appendValue(expected instanceof CharSequence ? expected.toString() : expected);
+        }
+
+        @Override
+        public void describeMismatch(Object item, Description description) {
+            description.appendText("was ").appendValue(item instanceof CharSequence ? item.toString() : item);
+        }
+
+        private static Object normalize(Object value) {
+            if (value instanceof CharSequence) {
+                return value.toString();
+            }
+            if (value instanceof Enum) {
+                return new EnumSymbol(((Enum<?>) value).name());
+            }
+            if (value instanceof GenericEnumSymbol) {
+                return new EnumSymbol(value.toString());
+            }
+            if (value instanceof GenericFixed) {
+                return ByteBuffer.wrap(((GenericFixed) value).bytes());
+            }
+            return value;
+        }
+
+        /**
+         * Distinguishes symbols from strings.
+         */
+        private static class EnumSymbol {
+            private final String symbol;
+
+            EnumSymbol(String symbol) {
+                this.symbol = symbol;
+            }
+
+            @Override
+            public boolean equals(Object obj) {
+                return obj instanceof EnumSymbol && ((EnumSymbol) obj).symbol.equals(symbol);
+            }
+
+            @Override
+            public int hashCode() {
+                return symbol.hashCode();
+            }
+        }
     }
 
-    private static class ListMatcher<E> extends AvroDiagnosingMatcher<Iterable<? extends E>> {
+    private static class ListMatcher<E> extends AvroDiagnosingMatcher<Iterable<? extends E>> implements CompiledComparator.Composite {
         private final List<ListEntryMatcher> matchers;
+        private final int parallelThreshold;
+        private final ForkJoinPool forkJoinPool;
+        private final MatchListener listener;
 
-        public ListMatcher(List<Matcher<? super E>> matchers, List<String> objectPath) {
+        public ListMatcher(List<Matcher<? super E>> matchers, List<String> objectPath, Options options) {
             super(Iterable.class, objectPath);
+            this.listener = options.getMatchListener();
+            this.parallelThreshold = options.getParallelThreshold();
+            this.forkJoinPool = matchers.size() >= parallelThreshold ? options.getForkJoinPool() : null;
             this.matchers = Lists.newArrayListWithCapacity(matchers.size());
             int i = 0;
             for (Matcher<? super E> matcher : matchers) {
@@ -495,6 +826,11 @@ public class IsAvroObjectEqual {
             }
         }
 
+        @Override
+        public Iterable<? extends CompiledComparator.Part> getParts() {
+            return matchers;
+        }
+
         @Override
         protected boolean matchesSafely(Iterable<? extends E> item, Description mismatchDescription) {
             // not very nice, but we need it to be a list because that's what ListEntryMatcher expects.  We
@@ -502,14 +838,17 @@ public class IsAvroObjectEqual {
             // etc nicely
             List<?> itemList = item instanceof List ? (List) item : Lists.newArrayList(item);
 
-            for (ListEntryMatcher matcher : matchers) {
-                if (!matcher.matches(itemList)) {
-                    if (!(mismatchDescription instanceof NullDescription)) {
-                        matcher.describeMismatch(itemList, mismatchDescription);
-                    }
-                    // shortcut
-                    return false;
+            int mismatchIndex = forkJoinPool != null
+                    ? forkJoinPool.invoke(new FirstMismatchTask(itemList, 0, matchers.size(), new AtomicInteger(matchers.size())))
+                    : firstMismatch(itemList, 0, matchers.size(), null);
+            if (mismatchIndex < matchers.size()) {
+                if (!(mismatchDescription instanceof NullDescription)) {
+                    matchers.get(mismatchIndex).describeMismatch(itemList, mismatchDescription);
+                } else if (listener != null) {
+                    listener.onShortCircuit(objectPath);
                 }
+                // shortcut
+                return false;
             }
             if (itemList.size() > matchers.size()) {
                 if (!(mismatchDescription instanceof Description.NullDescription)) {
@@ -521,12 +860,185 @@ public class IsAvroObjectEqual {
                         indexes.add(i);
                     }
                     mismatchError.appendText(Joiner.on(", ").join(indexes));
-                    mismatchList.addMismatch(objectPath, mismatchError.toString());
+                    mismatchList.addMismatch(objectPath, "had additional indices", mismatchError.toString());
                 }
                 return false;
             }
             return true;
         }
+
+        /**
+         * @return index of the first element in the range which does not match, or {@code to} if they all match
+         */
+        private int firstMismatch(List<?> itemList, int from, int to, AtomicInteger found) {
+            for (int i = from; i < to; i++) {
+                if (found != null && i >= found.get()) {
+                    // a lower index has already been found by another chunk
+                    break;
+                }
+                if (!matchers.get(i).matches(itemList)) {
+                    return i;
+                }
+            }
+            return to;
+        }
+
+        /**
+         * Searches for the lowest mismatching index, splitting the range into chunks which are compared concurrently.
+         * Chunks stop at indices above the lowest mismatch found so far, so the result is deterministic.
+         */
+        private class FirstMismatchTask extends RecursiveTask<Integer> {
+            private static final long serialVersionUID = 1L;
+
+            private final List<?> itemList;
+            private final int from;
+            private final int to;
+            private final AtomicInteger found;
+
+            FirstMismatchTask(List<?> itemList, int from, int to, AtomicInteger found) {
+                this.itemList = itemList;
+                this.from = from;
+                this.to = to;
+                this.found = found;
+            }
+
+            @Override
+            protected Integer compute() {
+                int chunkSize = Math.max(1, matchers.size() / (forkJoinPool.getParallelism() * 8));
+                if (to - from <= chunkSize) {
+                    int mismatch = firstMismatch(itemList, from, to, found);
+                    if (mismatch < to) {
+                        int current;
+                        while (mismatch < (current = found.get()) && !found.compareAndSet(current, mismatch)) {
+                            // retry
+                        }
+                    }
+                    return found.get();
+                }
+
+                int middle = (from + to) >>> 1;
+                invokeAll(new FirstMismatchTask(itemList, from, middle, found), new FirstMismatchTask(itemList, middle, to, found));
+                return found.get();
+            }
+        }
+    }
+
+    /**
+     * Compares an array of records by key: a hash join of the expected and actual records on the key, in linear
+     * time.
+     */
+    private static class KeyedListMatcher extends AvroDiagnosingMatcher<Iterable<?>> {
+        private final List<String> keyPath;
+        /** matchers of the records with each key, in order */
+        private final Map<String, List<Matcher<?>>> matchers = Maps.newLinkedHashMap();
+        private final MatchListener listener;
+
+        public KeyedListMatcher(Schema elementSchema, List<?> values, List<String> objectPath, List<String> keyPath, Options options) {
+            super(Iterable.class, objectPath);
+            this.keyPath = keyPath;
+            this.listener = options.getMatchListener();
+            for (Object value : values) {
+                String key = getArrayKey(value, keyPath);
+                List<Matcher<?>> keyMatchers = matchers.get(key);
+                if (keyMatchers == null) {
+                    keyMatchers = Lists.newArrayListWithCapacity(1);
+                    matchers.put(key, keyMatchers);
+                }
+                List<String> elementPath = ImmutableList.copyOf(Iterables.concat(objectPath, ImmutableList.of(elementSegment(key, keyMatchers.size()))));
+                keyMatchers.add(new KeyedEntryMatcher(elementPath, createMatcher(elementSchema, value, elementPath, options)));
+            }
+        }
+
+        /**
+         * Records after the first with the same key are numbered, eg. {@code HOME#1}.
+         */
+        private static String elementSegment(String key, int occurrence) {
+            return occurrence == 0 ? key : key + "#" + occurrence;
+        }
+
+        @Override
+        protected boolean matchesSafely(Iterable<?> item, Description mismatchDescription) {
+            boolean describe = !(mismatchDescription instanceof NullDescription);
+            Map<String, List<Object>> actualByKey = Maps.newLinkedHashMap();
+            for (Object element : item) {
+                String key = getArrayKey(element, keyPath);
+                List<Object> elements = actualByKey.get(key);
+                if (elements == null) {
+                    elements = Lists.newArrayListWithCapacity(1);
+                    actualByKey.put(key, elements);
+                }
+                elements.add(element);
+            }
+
+            boolean matches = true;
+            List<String> missingKeys = Lists.newArrayList();
+            List<String> additionalKeys = Lists.newArrayList();
+            for (Map.Entry<String, List<Matcher<?>>> entry : matchers.entrySet()) {
+                List<Object> actual = actualByKey.remove(entry.getKey());
+                List<Matcher<?>> expected = entry.getValue();
+                int paired = actual == null ? 0 : Math.min(actual.size(), expected.size());
+                for (int i = 0; i < paired; i++) {
+                    if (!expected.get(i).matches(actual.get(i))) {
+                        if (!describe) {
+                            return shortCircuit();
+                        }
+                        expected.get(i).describeMismatch(actual.get(i), mismatchDescription);
+                        matches = false;
+                    }
+                }
+                for (int i = paired; i < expected.size(); i++) {
+                    missingKeys.add(elementSegment(entry.getKey(), i));
+                }
+                for (int i = paired; actual != null && i < actual.size(); i++) {
+                    additionalKeys.add(elementSegment(entry.getKey(), i));
+                }
+                if (!describe && (!missingKeys.isEmpty() || !additionalKeys.isEmpty())) {
+                    return shortCircuit();
+                }
+            }
+            for (Map.Entry<String, List<Object>> entry : actualByKey.entrySet()) {
+                for (int i = 0; i < entry.getValue().size(); i++) {
+                    additionalKeys.add(elementSegment(entry.getKey(), i));
+                }
+            }
+
+            if (!missingKeys.isEmpty() || !additionalKeys.isEmpty()) {
+                if (describe) {
+                    MismatchList mismatchList = MismatchList.checkArgumentIsMismatchList(mismatchDescription);
+                    if (!missingKeys.isEmpty()) {
+                        mismatchList.addMismatch(objectPath, "was missing keys",
+                                new StringDescription().appendText("was missing keys: ").appendValueList("[", ",", "]", missingKeys).toString());
+                    }
+                    if (!additionalKeys.isEmpty()) {
+                        mismatchList.addMismatch(objectPath, "had additional keys",
+                                new StringDescription().appendText("had additional keys: ").appendValueList("[", ",", "]", additionalKeys).toString());
+                    }
+                }
+                matches = false;
+            }
+            return matches;
+        }
+
+        private boolean shortCircuit() {
+            if (listener != null) {
+                listener.onShortCircuit(objectPath);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Matches a record of a keyed array, which is the item itself.
+     */
+    private static class KeyedEntryMatcher extends AbstractFieldMatcher<Object> {
+        public KeyedEntryMatcher(List<String> fieldPath, Matcher<?> valueMatcher) {
+            super(Object.class, fieldPath, valueMatcher);
+        }
+
+        @Override
+        protected Object getValue(Object item) {
+            return item;
+        }
     }
 
     /**
@@ -535,13 +1047,13 @@ public class IsAvroObjectEqual {
      * @param <E>
      */
     private static class ExternalListMatcher<E> extends ListMatcher<E> {
-        public ExternalListMatcher(List<Matcher<? super E>> matchers) {
-            super(matchers, ImmutableList.<String> of());
+        public ExternalListMatcher(List<Matcher<? super E>> matchers, Options options) {
+            super(matchers, ImmutableList.<String> of(), options);
         }
 
         @Override
         protected boolean matchesSafely(Iterable<? extends E> item, Description mismatchDescription) {
-            if (mismatchDescription instanceof NullDescription) {
+            if (mismatchDescription instanceof NullDescription || mismatchDescription instanceof MismatchList) {
                 return super.matchesSafely(item, mismatchDescription);
             }
 
@@ -571,7 +1083,7 @@ public class IsAvroObjectEqual {
                 MismatchList list = (MismatchList) mismatchDescription;
                 StringDescription desc = new StringDescription();
                 boolean matches = super.matchesSafely(items, desc);
-                list.addMismatch(objectPath, desc.toString());
+                list.addMismatch(objectPath, "did not contain the items in any order", desc.toString());
                 return matches;
             }
 
@@ -585,13 +1097,297 @@ public class IsAvroObjectEqual {
                 MismatchList mismatchList = MismatchList.checkArgumentIsMismatchList(mismatchDescription);
                 StringDescription stringDescription = new StringDescription();
                 super.describeMismatch(item, stringDescription);
-                mismatchList.addMismatch(objectPath, stringDescription.toString());
+                mismatchList.addMismatch(objectPath, item == null ? "was null" : "had the wrong type", stringDescription.toString());
             } else {
                 matchesSafely((Iterable<? extends E>) item, mismatchDescription);
             }
         }
     }
 
+    /**
+     * Stops a top-level matcher which exceeds the deadline or node budget of its options, see {@link MatchBudget}.
+     */
+    private static class BudgetedMatcher<T> extends BaseMatcher<T> {
+        private final Matcher<T> matcher;
+        private final Options options;
+
+        public BudgetedMatcher(Matcher<T> matcher, Options options) {
+            this.matcher = matcher;
+            this.options = options;
+        }
+
+        @Override
+        public boolean matches(Object item) {
+            MatchBudget budget = MatchBudget.start(options);
+            try {
+                return matcher.matches(item);
+            } catch (MatchBudget.ExceededException e) {
+                return false;
+            } finally {
+                if (budget != null) {
+                    budget.end();
+                }
+            }
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            matcher.describeTo(description);
+        }
+
+        @Override
+        public void describeMismatch(Object item, Description description) {
+            MatchBudget budget = MatchBudget.start(options);
+            try {
+                matcher.describeMismatch(item, description);
+            } catch (MatchBudget.ExceededException e) {
+                if (description instanceof MismatchList) {
+                    String kind = e.getBudget() == MatchListener.Budget.DEADLINE ? "exceeded the deadline" : "exceeded the node budget";
+                    ((MismatchList) description).addMismatch(ImmutableList.<String> of(), kind, e.getMessage());
+                } else {
+                    description.appendText(e.getMessage());
+                }
+            } finally {
+                if (budget != null) {
+                    budget.end();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports the time taken by a top-level matcher, and the paths of the mismatches it describes.
+     */
+    private static class ListenedMatcher<T> extends BaseMatcher<T> {
+        private final Matcher<T> matcher;
+        private final Options options;
+        private final MatchListener listener;
+
+        public ListenedMatcher(Matcher<T> matcher, Options options) {
+            this.matcher = matcher;
+            this.options = options;
+            this.listener = options.getMatchListener();
+        }
+
+        @Override
+        public boolean matches(Object item) {
+            long start = System.nanoTime();
+            boolean matches = matcher.matches(item);
+            listener.onMatch(System.nanoTime() - start, matches);
+            return matches;
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            long start = System.nanoTime();
+            matcher.describeTo(description);
+            listener.onRender(System.nanoTime() - start);
+        }
+
+        @Override
+        public void describeMismatch(Object item, Description description) {
+            long start = System.nanoTime();
+            // describe straight into the list of the caller, which may be bounded, rather than collecting a copy
+            MismatchList mismatchList = description instanceof MismatchList ? (MismatchList) description
+                    : MismatchList.create(ImmutableList.<String> of(), options);
+            mismatchList.setListener(listener);
+            try {
+                matcher.describeMismatch(item, mismatchList);
+            } finally {
+                mismatchList.setListener(null);
+            }
+            if (mismatchList != description) {
+                description.appendDescriptionOf(mismatchList);
+            }
+            listener.onRender(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Remembers the result of matching, and the mismatches, for each actual record. Records are held weakly and
+     * compared by identity, so a repeat costs a cache lookup. Records are assumed not to change once matched: a
+     * record modified since keeps its remembered result.
+     */
+    private static class MemoizedMatcher<T> extends BaseMatcher<T> {
+        private final Matcher<T> matcher;
+        private final boolean memoizeMismatches;
+        private final Cache<Object, Memo> memos = CacheBuilder.newBuilder().weakKeys().build();
+
+        public MemoizedMatcher(Matcher<T> matcher, boolean memoizeMismatches) {
+            this.matcher = matcher;
+            this.memoizeMismatches = memoizeMismatches;
+        }
+
+        @Override
+        public boolean matches(Object item) {
+            if (!(item instanceof IndexedRecord)) {
+                return matcher.matches(item);
+            }
+            int fingerprint = shallowFingerprint((IndexedRecord) item);
+            Memo memo = memos.getIfPresent(item);
+            if (memo != null && memo.fingerprint == fingerprint) {
+                return memo.matches;
+            }
+            boolean matches = matcher.matches(item);
+            memos.put(item, new Memo(fingerprint, matches, null));
+            return matches;
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            matcher.describeTo(description);
+        }
+
+        @Override
+        public void describeMismatch(Object item, Description description) {
+            if (!(item instanceof IndexedRecord) || !memoizeMismatches) {
+                matcher.describeMismatch(item, description);
+                return;
+            }
+            int fingerprint = shallowFingerprint((IndexedRecord) item);
+            Memo memo = memos.getIfPresent(item);
+            if (memo == null || memo.fingerprint != fingerprint || memo.mismatches == null) {
+                MismatchList mismatches = new MismatchList();
+                matcher.describeMismatch(item, mismatches);
+                boolean matches = memo != null && memo.fingerprint == fingerprint ? memo.matches : mismatches.isEmpty();
+                memo = new Memo(fingerprint, matches, mismatches);
+                memos.put(item, memo);
+            }
+            if (description instanceof MismatchList) {
+                ((MismatchList) description).addAll(memo.mismatches);
+            } else {
+                description.appendDescriptionOf(memo.mismatches);
+            }
+        }
+
+        /**
+         * Hash of the top-level field values, by value for scalars and strings, and by identity for nested records,
+         * arrays, maps and bytes, so that it costs one pass over the fields without descending into them.
+         */
+        private static int shallowFingerprint(IndexedRecord record) {
+            int hash = 1;
+            int fields = record.getSchema().getFields().size();
+            for (int i = 0; i < fields; i++) {
+                Object value = record.get(i);
+                int valueHash;
+                if (value == null) {
+                    valueHash = 0;
+                } else if (value instanceof CharSequence || value instanceof Number || value instanceof Boolean || value instanceof Enum) {
+                    valueHash = value.hashCode();
+                } else {
+                    valueHash = System.identityHashCode(value);
+                }
+                hash = 31 * hash + valueHash;
+            }
+            return hash;
+        }
+
+        private static class Memo {
+            final int fingerprint;
+            final boolean matches;
+            final MismatchList mismatches;
+
+            Memo(int fingerprint, boolean matches, MismatchList mismatches) {
+                this.fingerprint = fingerprint;
+                this.matches = matches;
+                this.mismatches = mismatches;
+            }
+        }
+    }
+
+    /**
+     * Writes the mismatches described by a top-level matcher to the mismatch sink of the options, and describes only
+     * a summary of them. Mismatches described into a {@link MismatchList} are left to the owner of the list.
+     */
+    private static class SinkingMatcher<T> extends BaseMatcher<T> {
+        private final Matcher<T> matcher;
+        private final Options options;
+
+        public SinkingMatcher(Matcher<T> matcher, Options options) {
+            this.matcher = matcher;
+            this.options = options;
+        }
+
+        @Override
+        public boolean matches(Object item) {
+            return matcher.matches(item);
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            matcher.describeTo(description);
+        }
+
+        @Override
+        public void describeMismatch(Object item, Description description) {
+            if (description instanceof MismatchList) {
+                matcher.describeMismatch(item, description);
+                return;
+            }
+            MismatchList mismatchList = MismatchList.create(ImmutableList.<String> of(), options);
+            matcher.describeMismatch(item, mismatchList);
+            try {
+                options.getMismatchSink().flush();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            description.appendDescriptionOf(mismatchList);
+        }
+    }
+
+    /**
+     * Reports each comparison of a value with its expected value.
+     */
+    private static class ComparisonListeningMatcher<T> extends BaseMatcher<T> {
+        protected final Matcher<T> matcher;
+        private final Schema.Type type;
+        private final List<String> fieldPath;
+        private final MatchListener listener;
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        static Matcher<?> listen(Matcher<?> matcher, Schema.Type type, List<String> fieldPath, MatchListener listener) {
+            if (matcher instanceof InternalMatcher) {
+                return new InternalComparisonListeningMatcher(matcher, type, fieldPath, listener);
+            }
+            return new ComparisonListeningMatcher(matcher, type, fieldPath, listener);
+        }
+
+        ComparisonListeningMatcher(Matcher<T> matcher, Schema.Type type, List<String> fieldPath, MatchListener listener) {
+            this.matcher = matcher;
+            this.type = type;
+            this.fieldPath = fieldPath;
+            this.listener = listener;
+        }
+
+        @Override
+        public boolean matches(Object item) {
+            boolean matches = matcher.matches(item);
+            listener.onCompare(type, fieldPath, matches);
+            return matches;
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            matcher.describeTo(description);
+        }
+
+        @Override
+        public void describeMismatch(Object item, Description description) {
+            matcher.describeMismatch(item, description);
+        }
+    }
+
+    private static class InternalComparisonListeningMatcher<T> extends ComparisonListeningMatcher<T> implements InternalMatcher {
+        InternalComparisonListeningMatcher(Matcher<T> matcher, Schema.Type type, List<String> fieldPath, MatchListener listener) {
+            super(matcher, type, fieldPath, listener);
+        }
+
+        @Override
+        public void describeMismatch2(Object item, Description mismatchDescription) {
+            ((InternalMatcher) matcher).describeMismatch2(item, mismatchDescription);
+        }
+    }
+
     /**
      * Marker interface.
      */
@@ -611,16 +1407,26 @@ public class IsAvroObjectEqual {
     }
 
     private static final MatcherFactory DEFAULT_MATCHER_FACTORY = new MatcherFactory() {
-        @SuppressWarnings("unchecked")
         @Override
         public Matcher<?> createMatcher(Schema schema, Object value, List<String> fieldPath, Options options) {
+            Matcher<?> matcher = createValueMatcher(schema, value, fieldPath, options);
+            MatchListener listener = options.getMatchListener();
+            if (listener == null || schema.getType() == Schema.Type.UNION) {
+                // the matcher for the branch of a union is already listened to
+                return matcher;
+            }
+            return ComparisonListeningMatcher.listen(matcher, schema.getType(), fieldPath, listener);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Matcher<?> createValueMatcher(Schema schema, Object value, List<String> fieldPath, Options options) {
             Matcher<?> custom = options.getMatcher(fieldPath);
             if (custom != null) {
                 return custom;
             }
             switch (schema.getType()) {
             case RECORD:
-                return createRecordMatcher((IndexedRecord) value, fieldPath, options);
+                return createRecordMatcher((IndexedRecord) value, fieldPath, options, false);
             case UNION:
                 return createUnionMatcher(schema, value, fieldPath, options);
             case MAP:
@@ -628,9 +1434,36 @@ public class IsAvroObjectEqual {
             case ARRAY:
                 return createListMatcher(schema.getElementType(), (List<? extends IndexedRecord>) value, fieldPath, options);
             case DOUBLE:
-                return createDoubleMatcher((Double) value);
-            default:
+                return promoting(schema, createDoubleMatcher((Double) value, options.getTolerance(fieldPath, Schema.Type.DOUBLE)), options);
+            case FLOAT:
+                Tolerance tolerance = options.getTolerance(fieldPath, Schema.Type.FLOAT);
+                return promoting(schema, tolerance != null ? tolerance.matcher((Float) value) : equalTo(value), options);
+            case STRING:
+            case ENUM:
+            case FIXED:
+                // decoded data has Utf8 strings and generic enum symbols and fixed values, which are resolved by content
+                if (options.isIgnoreRepresentation() || options.isSchemaResolution()) {
+                    return promoting(schema, new RepresentationIndependentMatcher(value), options);
+                }
                 return equalTo(value);
+            default:
+                return promoting(schema, equalTo(value), options);
+            }
+        }
+
+        private Matcher<?> promoting(Schema schema, Matcher<?> matcher, Options options) {
+            if (!options.isSchemaResolution()) {
+                return matcher;
+            }
+            switch (schema.getType()) {
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+            case STRING:
+            case BYTES:
+                return new PromotingMatcher<Object>(schema.getType(), matcher);
+            default:
+                return matcher;
             }
         }
     };
@@ -642,7 +1475,9 @@ public class IsAvroObjectEqual {
         @Override
         public Matcher<?> createMatcher(Schema schema, Object value, List<String> fieldPath, Options options) {
             assert value instanceof IndexedRecord;
-            return createRecordMatcher((IndexedRecord) value, fieldPath, options);
+            Matcher<?> matcher = createRecordMatcher((IndexedRecord) value, fieldPath, options, options.isCompiled());
+            MatchListener listener = options.getMatchListener();
+            return listener == null ? matcher : ComparisonListeningMatcher.listen(matcher, Schema.Type.RECORD, fieldPath, listener);
         }
     };
 }
@@ -0,0 +1,90 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Writes mismatches as JSON Lines, one object per mismatch with its {@code fieldPath} as an array of strings and its
+ * {@code description}.
+ */
+public class JsonLinesMismatchSink implements MismatchSink {
+    private final Writer writer;
+    private final String name;
+
+    /**
+     * @param file file to create, any existing file is overwritten
+     * @throws IOException if the file cannot be created
+     */
+    public JsonLinesMismatchSink(@Nonnull File file) throws IOException {
+        this(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(checkNotNull(file, "file is null")), Charsets.UTF_8)),
+                file.getPath());
+    }
+
+    /**
+     * @param writer writer to write to, which is closed with the sink
+     */
+    public JsonLinesMismatchSink(@Nonnull Writer writer) {
+        this(checkNotNull(writer, "writer is null"), "writer");
+    }
+
+    private JsonLinesMismatchSink(Writer writer, String name) {
+        this.writer = writer;
+        this.name = name;
+    }
+
+    @Override
+    public synchronized void write(List<String> fieldPath, String mismatch) throws IOException {
+        StringBuilder line = new StringBuilder("{\"fieldPath\":[");
+        for (int i = 0; i < fieldPath.size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            JsonStrings.appendQuoted(line, fieldPath.get(i));
+        }
+        line.append("],\"description\":");
+        JsonStrings.appendQuoted(line, mismatch);
+        writer.write(line.append("}\n").toString());
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
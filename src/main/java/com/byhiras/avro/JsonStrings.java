@@ -0,0 +1,64 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Quotes strings for the JSON written by the sinks, metrics and projections, which is simple enough not to need a JSON
+ * library.
+ */
+final class JsonStrings {
+    private JsonStrings() {
+    }
+
+    static String quote(String value) {
+        return appendQuoted(new StringBuilder(value.length() + 2), value).toString();
+    }
+
+    /**
+     * Append a value as a JSON string, escaping quotes, backslashes and control characters.
+     *
+     * @return the builder
+     */
+    static StringBuilder appendQuoted(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+            case '\\':
+                json.append('\\').append(c);
+                break;
+            case '\n':
+                json.append("\\n");
+                break;
+            case '\r':
+                json.append("\\r");
+                break;
+            case '\t':
+                json.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    json.append(String.format("\\u%04x", (int) c));
+                } else {
+                    json.append(c);
+                }
+            }
+        }
+        return json.append('"');
+    }
+}
@@ -0,0 +1,135 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.byhiras.avro.MatchListener.Budget;
+import com.google.common.base.Joiner;
+
+/**
+ * Work done by the top-level match in progress on the current thread, which is stopped when it exceeds the deadline
+ * or the node budget of its {@link Options}. Matchers call {@link #visit(List)} for each record, field, map, map
+ * entry, array and array element they compare.
+ * <p>
+ * Values compared by other threads, eg. the elements of arrays compared in parallel, are not counted.
+ */
+final class MatchBudget {
+    /** number of deadline checks, as reading the clock costs more than counting */
+    private static final int CLOCK_INTERVAL = 1024;
+    private static final ThreadLocal<MatchBudget> CURRENT = new ThreadLocal<MatchBudget>();
+    /** number of threads with a budget, so that matching without one does not look up the thread local */
+    private static volatile int active;
+
+    private final Options options;
+    private final long maxNodes;
+    private final long deadline;
+    private long nodes;
+
+    private MatchBudget(Options options) {
+        this.options = options;
+        this.maxNodes = options.getNodeBudget();
+        this.deadline = options.getDeadlineNanos() > 0 ? System.nanoTime() + options.getDeadlineNanos() : 0;
+    }
+
+    /**
+     * @return {@code true} if the options set a deadline or a node budget
+     */
+    static boolean isBudgeted(Options options) {
+        return options.getNodeBudget() < Long.MAX_VALUE || options.getDeadlineNanos() > 0;
+    }
+
+    /**
+     * Start a budget for the current thread.
+     *
+     * @return the budget, or {@code null} if one has already been started by an enclosing match
+     */
+    static MatchBudget start(Options options) {
+        if (CURRENT.get() != null) {
+            return null;
+        }
+        MatchBudget budget = new MatchBudget(options);
+        CURRENT.set(budget);
+        synchronized (MatchBudget.class) {
+            active++;
+        }
+        return budget;
+    }
+
+    void end() {
+        CURRENT.remove();
+        synchronized (MatchBudget.class) {
+            active--;
+        }
+    }
+
+    /**
+     * Count a node compared by the current thread.
+     *
+     * @param path path of the node
+     * @throws ExceededException if the budget of the current match is exceeded
+     */
+    static void visit(List<String> path) {
+        if (active != 0) {
+            MatchBudget budget = CURRENT.get();
+            if (budget != null) {
+                budget.count(path);
+            }
+        }
+    }
+
+    private void count(List<String> path) {
+        nodes++;
+        if (nodes > maxNodes) {
+            throw exceeded(Budget.NODES, path);
+        }
+        if (deadline != 0 && nodes % CLOCK_INTERVAL == 0 && System.nanoTime() - deadline > 0) {
+            throw exceeded(Budget.DEADLINE, path);
+        }
+    }
+
+    private ExceededException exceeded(Budget kind, List<String> path) {
+        if (options.getMatchListener() != null) {
+            options.getMatchListener().onBudgetExceeded(kind, path);
+        }
+        String budget = kind == Budget.NODES ? "node budget of " + maxNodes
+                : "deadline of " + (options.getDeadlineNanos() < TimeUnit.MILLISECONDS.toNanos(1) ? options.getDeadlineNanos() + " ns"
+                        : TimeUnit.NANOSECONDS.toMillis(options.getDeadlineNanos()) + " ms");
+        return new ExceededException(kind, budget + " exceeded at path " + (path.isEmpty() ? "<root>" : Joiner.on('.').join(path))
+                + " after " + nodes + " nodes");
+    }
+
+    /**
+     * Unwinds the matchers when the budget is exceeded, it is caught by the top-level matcher.
+     */
+    static class ExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final Budget budget;
+
+        ExceededException(Budget budget, String message) {
+            super(message, null, false, false);
+            this.budget = budget;
+        }
+
+        Budget getBudget() {
+            return budget;
+        }
+    }
+}
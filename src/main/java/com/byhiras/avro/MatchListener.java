@@ -0,0 +1,93 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import java.util.List;
+
+import org.apache.avro.Schema;
+
+/**
+ * Receives events from matchers as they are built and compared, to find out where verification spends its time.
+ * Register one with {@link AvroMatchers.Options#setMatchListener(MatchListener)}; when none is registered the matchers
+ * do no extra work.
+ * <p>
+ * Listeners may be called from several threads at once, eg. by {@link AvroBulkVerifier}. Field paths are relative to
+ * the root of the matcher.
+ *
+ * @see MatchMetrics
+ */
+public interface MatchListener {
+    /**
+     * A matcher was built for an expected record or collection of records.
+     *
+     * @param nanos time taken to build the matcher
+     */
+    void onBuild(long nanos);
+
+    /**
+     * A top-level {@link org.hamcrest.Matcher#matches(Object)} call completed.
+     *
+     * @param nanos time taken to match
+     * @param matched whether the actual value matched
+     */
+    void onMatch(long nanos, boolean matched);
+
+    /**
+     * A top-level matcher described the expected value or a mismatch.
+     *
+     * @param nanos time taken to render the description
+     */
+    void onRender(long nanos);
+
+    /**
+     * A value was compared with its expected value.
+     *
+     * @param type schema type of the expected value
+     * @param fieldPath path of the value
+     * @param matched whether the value matched
+     */
+    void onCompare(Schema.Type type, List<String> fieldPath, boolean matched);
+
+    /**
+     * A record, map or array stopped comparing at the first mismatch instead of comparing its remaining values.
+     *
+     * @param fieldPath path of the record, map or array
+     */
+    void onShortCircuit(List<String> fieldPath);
+
+    /**
+     * A mismatch was reported.
+     *
+     * @param fieldPath path of the mismatching value
+     */
+    void onMismatch(List<String> fieldPath);
+
+    /**
+     * A top-level match was stopped because it exceeded its deadline or node budget, see
+     * {@link AvroMatchers.Options#setDeadline(long, java.util.concurrent.TimeUnit)} and
+     * {@link AvroMatchers.Options#setNodeBudget(long)}.
+     *
+     * @param budget budget which was exceeded
+     * @param fieldPath path of the value being compared
+     */
+    default void onBudgetExceeded(Budget budget, List<String> fieldPath) {
+    }
+
+    enum Budget {
+        DEADLINE, NODES
+    }
+}
@@ -0,0 +1,236 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.avro.Schema;
+
+import com.byhiras.avro.MatchListener.Budget;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.util.concurrent.AtomicLongMap;
+
+/**
+ * {@link MatchListener} which aggregates events into counters and timing histograms, which can be dumped as JSON at
+ * the end of a run with {@link #toJson()}. It is thread-safe.
+ */
+public class MatchMetrics implements MatchListener {
+    private static final Joiner FIELD_PATH_JOINER = Joiner.on('.');
+    private static final Schema.Type[] TYPES = Schema.Type.values();
+
+    private final Histogram build = new Histogram();
+    private final Histogram match = new Histogram();
+    private final Histogram render = new Histogram();
+    private final AtomicLong matched = new AtomicLong();
+    private final AtomicLongArray matchedCompares = new AtomicLongArray(TYPES.length);
+    private final AtomicLongArray mismatchedCompares = new AtomicLongArray(TYPES.length);
+    private final AtomicLongMap<String> shortCircuits = AtomicLongMap.create();
+    private final AtomicLongMap<String> mismatches = AtomicLongMap.create();
+    private final AtomicLongArray budgetsExceeded = new AtomicLongArray(Budget.values().length);
+
+    @Override
+    public void onBuild(long nanos) {
+        build.add(nanos);
+    }
+
+    @Override
+    public void onMatch(long nanos, boolean matched) {
+        match.add(nanos);
+        if (matched) {
+            this.matched.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onRender(long nanos) {
+        render.add(nanos);
+    }
+
+    @Override
+    public void onCompare(Schema.Type type, List<String> fieldPath, boolean matched) {
+        (matched ? matchedCompares : mismatchedCompares).incrementAndGet(type.ordinal());
+    }
+
+    @Override
+    public void onShortCircuit(List<String> fieldPath) {
+        shortCircuits.incrementAndGet(FIELD_PATH_JOINER.join(fieldPath));
+    }
+
+    @Override
+    public void onMismatch(List<String> fieldPath) {
+        mismatches.incrementAndGet(FIELD_PATH_JOINER.join(fieldPath));
+    }
+
+    @Override
+    public void onBudgetExceeded(Budget budget, List<String> fieldPath) {
+        budgetsExceeded.incrementAndGet(budget.ordinal());
+    }
+
+    public long getMatchCount() {
+        return match.count.get();
+    }
+
+    public long getMatchedCount() {
+        return matched.get();
+    }
+
+    /**
+     * @return number of values of the given type which were compared
+     */
+    public long getCompareCount(Schema.Type type) {
+        return matchedCompares.get(type.ordinal()) + mismatchedCompares.get(type.ordinal());
+    }
+
+    /**
+     * @return number of values of the given type which did not match their expected value
+     */
+    public long getMismatchedCompareCount(Schema.Type type) {
+        return mismatchedCompares.get(type.ordinal());
+    }
+
+    /**
+     * @return number of mismatches reported by dot-separated field path
+     */
+    public Map<String, Long> getMismatchCounts() {
+        return ImmutableSortedMap.copyOf(mismatches.asMap());
+    }
+
+    /**
+     * @return number of short-circuits by dot-separated field path
+     */
+    public Map<String, Long> getShortCircuitCounts() {
+        return ImmutableSortedMap.copyOf(shortCircuits.asMap());
+    }
+
+    /**
+     * @return number of matches stopped because they exceeded the given budget
+     */
+    public long getBudgetExceededCount(Budget budget) {
+        return budgetsExceeded.get(budget.ordinal());
+    }
+
+    public long getBuildNanos() {
+        return build.total.get();
+    }
+
+    public long getMatchNanos() {
+        return match.total.get();
+    }
+
+    public long getRenderNanos() {
+        return render.total.get();
+    }
+
+    /**
+     * @return the metrics as a JSON object
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"build\": ");
+        build.appendJson(json);
+        json.append(",\n  \"match\": ");
+        match.appendJson(json);
+        json.append(",\n  \"matched\": ").append(matched.get());
+        json.append(",\n  \"render\": ");
+        render.appendJson(json);
+        json.append(",\n  \"compares\": {");
+        String separator = "";
+        for (Schema.Type type : TYPES) {
+            long typeMatched = matchedCompares.get(type.ordinal());
+            long typeMismatched = mismatchedCompares.get(type.ordinal());
+            if (typeMatched + typeMismatched > 0) {
+                json.append(separator).append("\n    \"").append(type.getName()).append("\": {\"matched\": ")
+                        .append(typeMatched).append(", \"mismatched\": ").append(typeMismatched).append('}');
+                separator = ",";
+            }
+        }
+        json.append("\n  },\n  \"shortCircuits\": ");
+        appendCounts(json, getShortCircuitCounts());
+        json.append(",\n  \"mismatches\": ");
+        appendCounts(json, getMismatchCounts());
+        json.append(",\n  \"budgetsExceeded\": {");
+        separator = "";
+        for (Budget budget : Budget.values()) {
+            json.append(separator).append('"').append(budget.name().toLowerCase()).append("\": ").append(budgetsExceeded.get(budget.ordinal()));
+            separator = ", ";
+        }
+        json.append('}');
+        return json.append("\n}").toString();
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+    private static void appendCounts(StringBuilder json, Map<String, Long> counts) {
+        json.append('{');
+        String separator = "";
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            json.append(separator).append("\n    ");
+            JsonStrings.appendQuoted(json, entry.getKey());
+            json.append(": ").append(entry.getValue());
+            separator = ",";
+        }
+        json.append(counts.isEmpty() ? "}" : "\n  }");
+    }
+
+    /**
+     * Timings in power of two buckets of nanoseconds.
+     */
+    private static class Histogram {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+        void add(long nanos) {
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+            long current;
+            while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+                // retry
+            }
+            buckets.incrementAndGet(bucket(nanos));
+        }
+
+        private static int bucket(long nanos) {
+            return nanos <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(nanos - 1);
+        }
+
+        void appendJson(StringBuilder json) {
+            json.append("{\"count\": ").append(count.get())
+                    .append(", \"totalNanos\": ").append(total.get())
+                    .append(", \"maxNanos\": ").append(max.get())
+                    .append(", \"histogram\": {");
+            String separator = "";
+            for (int i = 0; i < buckets.length(); i++) {
+                long bucketCount = buckets.get(i);
+                if (bucketCount > 0) {
+                    // upper bound of the bucket
+                    json.append(separator).append("\"<=").append(i == 63 ? Long.MAX_VALUE : 1L << i).append("\": ").append(bucketCount);
+                    separator = ", ";
+                }
+            }
+            json.append("}}");
+        }
+    }
+}
@@ -18,14 +18,19 @@ package com.byhiras.avro;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.annotation.Nullable;
+
 import org.hamcrest.Description;
 import org.hamcrest.SelfDescribing;
 
+import com.byhiras.avro.AvroMatchers.Options;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 
 class MismatchList implements Description, SelfDescribing {
     @SuppressWarnings("ConstantConditions")
@@ -34,16 +39,157 @@ class MismatchList implements Description, SelfDescribing {
         return (MismatchList) arg;
     }
 
+    /**
+     * Kind of a mismatch between an expected and an actual value.
+     */
+    static final String DIFFERS = "differs";
+
+    /**
+     * Number of mismatches kept in memory for the description when they are also written to a sink.
+     */
+    static final int SINK_SUMMARY_SIZE = 20;
+
+    /**
+     * @param pathPrefix prepended to the field path of every mismatch added
+     * @param options options which may have a mismatch sink
+     * @return list which writes mismatches to the sink of the options, if any, and only keeps a summary
+     */
+    static MismatchList create(List<String> pathPrefix, Options options) {
+        MismatchSink sink = options.getMismatchSink();
+        return sink == null ? new MismatchList(pathPrefix) : new MismatchList(pathPrefix, sink, SINK_SUMMARY_SIZE);
+    }
+
+    private final List<String> pathPrefix;
     private final List<Mismatch> mismatches = new ArrayList<Mismatch>();
+    private final MismatchSink sink;
+    private final int retained;
+    private long dropped;
+    private MatchListener listener;
+
+    public MismatchList() {
+        this(ImmutableList.<String> of());
+    }
+
+    /**
+     * @param pathPrefix prepended to the field path of every mismatch added, eg. the index of a record in a stream
+     */
+    public MismatchList(List<String> pathPrefix) {
+        this(pathPrefix, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param pathPrefix prepended to the field path of every mismatch added
+     * @param sink sink to which every mismatch is written as it is added
+     * @param retained maximum number of mismatches to keep, later ones are only counted
+     */
+    public MismatchList(List<String> pathPrefix, @Nullable MismatchSink sink, int retained) {
+        checkArgument(retained >= 0, "retained is negative");
+        this.pathPrefix = ImmutableList.copyOf(pathPrefix);
+        this.sink = sink;
+        this.retained = retained;
+    }
 
+    /**
+     * @param fieldPath path of the mismatched value
+     * @param mismatch description of the mismatch, which is also its kind, so it should not hold values
+     */
     public Description addMismatch(Iterable<String> fieldPath, String mismatch) {
-        mismatches.add(new Mismatch(fieldPath, mismatch));
+        return addMismatch(fieldPath, mismatch, mismatch);
+    }
+
+    /**
+     * @param fieldPath path of the mismatched value
+     * @param kind kind of the mismatch, without any values, eg. {@code had additional keys}
+     * @param mismatch description of the mismatch
+     */
+    public Description addMismatch(Iterable<String> fieldPath, String kind, String mismatch) {
+        notifyListener(fieldPath);
+        add(new Mismatch(concat(fieldPath), mismatch, kind, null, null));
+        return this;
+    }
+
+    /**
+     * Add a mismatch between an expected and an actual value, of kind {@link #DIFFERS}.
+     *
+     * @param fieldPath path of the mismatched value
+     * @param expected description of the expected value
+     * @param actual description of the actual value
+     * @param mismatch description of the mismatch
+     */
+    public Description addValueMismatch(Iterable<String> fieldPath, String expected, String actual, String mismatch) {
+        notifyListener(fieldPath);
+        add(new Mismatch(concat(fieldPath), mismatch, DIFFERS, expected, actual));
         return this;
     }
 
+    /**
+     * @param listener told the field path of every mismatch added from now on, without the prefix of this list, or
+     *            {@code null} to stop
+     */
+    void setListener(@Nullable MatchListener listener) {
+        this.listener = listener;
+    }
+
+    private Iterable<String> concat(Iterable<String> fieldPath) {
+        return pathPrefix.isEmpty() ? fieldPath : Iterables.concat(pathPrefix, fieldPath);
+    }
+
+    private void notifyListener(Iterable<String> fieldPath) {
+        if (listener != null) {
+            listener.onMismatch(ImmutableList.copyOf(fieldPath));
+        }
+    }
+
+    private void add(Mismatch entry) {
+        if (sink != null) {
+            try {
+                sink.write(entry.fieldPath, entry.mismatchDescription, entry.kind, entry.expected, entry.actual);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        if (mismatches.size() < retained) {
+            mismatches.add(entry);
+        } else {
+            dropped++;
+        }
+    }
+
+    /**
+     * Adds the mismatches of another list, prefixing their field paths with the prefix of this list.
+     */
+    public void addAll(MismatchList other) {
+        for (Mismatch mismatch : other.mismatches) {
+            notifyListener(mismatch.fieldPath);
+            add(new Mismatch(concat(mismatch.fieldPath), mismatch.mismatchDescription, mismatch.kind, mismatch.expected, mismatch.actual));
+        }
+        dropped += other.dropped;
+    }
+
+    public boolean isEmpty() {
+        return mismatches.isEmpty();
+    }
+
+    /**
+     * @return number of mismatches kept
+     */
+    public int size() {
+        return mismatches.size();
+    }
+
+    /**
+     * @return number of mismatches added beyond those kept
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+
     @Override
     public void describeTo(Description description) {
         description.appendList("", "\n", "", mismatches);
+        if (dropped > 0) {
+            description.appendText("\n... " + dropped + " more mismatches" + (sink != null ? ", all written to " + sink : ""));
+        }
     }
 
     @Override
@@ -82,10 +228,17 @@ class MismatchList implements Description, SelfDescribing {
     static class Mismatch implements SelfDescribing {
         final List<String> fieldPath;
         final String mismatchDescription;
+        final String kind;
+        final String expected;
+        final String actual;
 
-        public Mismatch(Iterable<String> fieldPath, String mismatchDescription) {
+        public Mismatch(Iterable<String> fieldPath, String mismatchDescription, String kind, @Nullable String expected,
+                @Nullable String actual) {
             this.fieldPath = ImmutableList.copyOf(fieldPath);
             this.mismatchDescription = mismatchDescription;
+            this.kind = kind;
+            this.expected = expected;
+            this.actual = actual;
         }
 
         @Override
@@ -0,0 +1,57 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.byhiras.avro.AvroMatchers.Options;
+
+/**
+ * Receives mismatches as they are found, so that the mismatches of a large diff can be written out instead of being
+ * held in memory and rendered into one assertion message. See {@link Options#setMismatchSink(MismatchSink)}.
+ * <p>
+ * Sinks are not closed by the matchers. They must be thread-safe when used by {@link AvroBulkVerifier}.
+ */
+public interface MismatchSink extends Closeable, Flushable {
+    /**
+     * @param fieldPath path of the mismatched value, as shown in mismatch descriptions
+     * @param mismatch description of the mismatch
+     * @throws IOException if the mismatch cannot be written
+     */
+    void write(List<String> fieldPath, String mismatch) throws IOException;
+
+    /**
+     * Receives a mismatch with its parts as found by the matchers, so that sinks which aggregate mismatches need not
+     * parse descriptions. By default only the description is written.
+     *
+     * @param fieldPath path of the mismatched value, as shown in mismatch descriptions
+     * @param mismatch description of the mismatch
+     * @param kind kind of the mismatch, without any values, eg. {@code differs} or {@code had additional keys}
+     * @param expected description of the expected value, or {@code null} if the mismatch is not between two values
+     * @param actual description of the actual value, or {@code null} if the mismatch is not between two values
+     * @throws IOException if the mismatch cannot be written
+     */
+    default void write(List<String> fieldPath, String mismatch, String kind, @Nullable String expected, @Nullable String actual)
+            throws IOException {
+        write(fieldPath, mismatch);
+    }
+}
@@ -0,0 +1,321 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.avro.Schema;
+import org.hamcrest.Description;
+import org.hamcrest.SelfDescribing;
+import org.hamcrest.StringDescription;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A {@link MismatchSink} which aggregates mismatches instead of keeping them, for reporting a field which differs in
+ * many records as one line, eg. {@code address.postCode differs in 1,934,211 records (e.g. #17, #902)}.
+ * <p>
+ * Mismatches are grouped by their path, with array indices and map keys replaced by {@code *}, and by their kind.
+ * Each group keeps its count, the first few record indices or keys as examples, and a reservoir sample of the
+ * expected and actual values, so memory is bounded by the number of groups.
+ */
+public class MismatchSummary implements MismatchSink, SelfDescribing {
+    /** number of records whose mismatches may be interleaved, eg. by the threads of {@link AvroBulkVerifier} */
+    private static final int RECENT_RECORDS = 256;
+    private static final int MAX_TEXT_LENGTH = 200;
+    private static final Joiner PATH_JOINER = Joiner.on('.');
+
+    private final Schema schema;
+    private final boolean indexed;
+    private final Map<List<String>, Group> groups = Maps.newHashMap();
+    private final Random random = new Random(0);
+    private int maxExamples = 5;
+    private int maxSamples = 3;
+
+    /**
+     * @param schema schema of the records
+     * @return summary of the mismatches of many records, whose paths start with the index of the record as reported
+     *         by {@link AvroStreamVerifier}, {@link AvroBulkVerifier} and {@link AvroMatchers#avroContains}
+     */
+    public static MismatchSummary forRecords(@Nonnull Schema schema) {
+        return new MismatchSummary(checkNotNull(schema, "schema is null"), true);
+    }
+
+    /**
+     * @param schema schema of the record
+     * @return summary of the mismatches of one record
+     */
+    public static MismatchSummary forRecord(@Nonnull Schema schema) {
+        return new MismatchSummary(checkNotNull(schema, "schema is null"), false);
+    }
+
+    private MismatchSummary(Schema schema, boolean indexed) {
+        this.schema = schema;
+        this.indexed = indexed;
+    }
+
+    /**
+     * @param maxExamples number of record indices or keys to keep for each group
+     * @return this
+     */
+    public MismatchSummary setMaxExamples(int maxExamples) {
+        checkArgument(maxExamples >= 0, "maxExamples is negative");
+        this.maxExamples = maxExamples;
+        return this;
+    }
+
+    /**
+     * @param maxSamples number of expected and actual values to sample for each group
+     * @return this
+     */
+    public MismatchSummary setMaxSamples(int maxSamples) {
+        checkArgument(maxSamples >= 0, "maxSamples is negative");
+        this.maxSamples = maxSamples;
+        return this;
+    }
+
+    /**
+     * Mismatches written without their parts are grouped by their whole description.
+     */
+    @Override
+    public void write(List<String> fieldPath, String mismatch) {
+        write(fieldPath, mismatch, mismatch, null, null);
+    }
+
+    @Override
+    public synchronized void write(List<String> fieldPath, String mismatch, String kind, @Nullable String expected,
+            @Nullable String actual) {
+        String index = indexed && !fieldPath.isEmpty() ? fieldPath.get(0) : null;
+        List<String> keys = Lists.newArrayList();
+        String path = normalize(indexed ? fieldPath.subList(Math.min(1, fieldPath.size()), fieldPath.size()) : fieldPath, keys);
+        kind = truncate(kind);
+        if (expected != null) {
+            expected = truncate(expected);
+            actual = truncate(String.valueOf(actual));
+        }
+
+        List<String> key = ImmutableList.of(path, kind);
+        Group group = groups.get(key);
+        if (group == null) {
+            group = new Group(path, kind);
+            groups.put(key, group);
+        }
+        group.add(index, keys, expected, actual);
+    }
+
+    /**
+     * Replace array indices and map keys with wildcards, following the schema.
+     */
+    private String normalize(List<String> fieldPath, List<String> keys) {
+        List<String> normalized = Lists.newArrayListWithCapacity(fieldPath.size());
+        Schema current = schema;
+        for (String segment : fieldPath) {
+            current = current == null ? null : selectBranch(current, segment);
+            if (current == null) {
+                normalized.add(segment);
+            } else if (current.getType() == Schema.Type.RECORD) {
+                Schema.Field field = current.getField(segment);
+                normalized.add(segment);
+                current = field == null ? null : field.schema();
+            } else if (current.getType() == Schema.Type.ARRAY) {
+                normalized.add("*");
+                keys.add(segment);
+                current = current.getElementType();
+            } else if (current.getType() == Schema.Type.MAP) {
+                normalized.add("*");
+                keys.add(segment);
+                current = current.getValueType();
+            } else {
+                normalized.add(segment);
+                current = null;
+            }
+        }
+        return PATH_JOINER.join(normalized);
+    }
+
+    private static Schema selectBranch(Schema schema, String segment) {
+        if (schema.getType() != Schema.Type.UNION) {
+            return schema;
+        }
+        Schema collection = null;
+        for (Schema branch : schema.getTypes()) {
+            if (branch.getType() == Schema.Type.RECORD && branch.getField(segment) != null) {
+                return branch;
+            } else if (branch.getType() == Schema.Type.ARRAY || branch.getType() == Schema.Type.MAP) {
+                collection = branch;
+            }
+        }
+        return collection;
+    }
+
+    private static String truncate(String text) {
+        return text.length() <= MAX_TEXT_LENGTH ? text : text.substring(0, MAX_TEXT_LENGTH) + "...";
+    }
+
+    /**
+     * @return groups of mismatches, most frequent first
+     */
+    public synchronized List<Group> getGroups() {
+        List<Group> sorted = Lists.newArrayList(groups.values());
+        Collections.sort(sorted, new Comparator<Group>() {
+            @Override
+            public int compare(Group o1, Group o2) {
+                return o1.count > o2.count ? -1 : (o1.count == o2.count ? 0 : 1);
+            }
+        });
+        return sorted;
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        boolean first = true;
+        for (Group group : getGroups()) {
+            description.appendText(first ? "" : "\n").appendDescriptionOf(group);
+            first = false;
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String toString() {
+        return "mismatch summary";
+    }
+
+    /**
+     * Mismatches of one kind at one normalized path.
+     */
+    public class Group implements SelfDescribing {
+        private final String path;
+        private final String kind;
+        private long count;
+        /** records counted lately, mismatches of one record are written together but records may be interleaved */
+        private final Set<String> recentIndices = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > RECENT_RECORDS;
+            }
+        });
+        private final List<String> examples = Lists.newArrayList();
+        private final List<String[]> samples = Lists.newArrayList();
+        private long sampled;
+
+        Group(String path, String kind) {
+            this.path = path;
+            this.kind = kind;
+        }
+
+        void add(String index, List<String> keys, String expected, String actual) {
+            // several mismatches in one record, eg. in array elements, are counted once
+            if (index == null || recentIndices.add(index)) {
+                count++;
+                if (examples.size() < maxExamples) {
+                    examples.add((index != null ? "#" + index : "") + (keys.isEmpty() ? "" : keys.toString()));
+                }
+            }
+            if (expected != null) {
+                // reservoir sampling keeps each pair with equal probability
+                sampled++;
+                if (samples.size() < maxSamples) {
+                    samples.add(new String[] { expected, actual });
+                } else if (maxSamples > 0) {
+                    long slot = (long) (random.nextDouble() * sampled);
+                    if (slot < maxSamples) {
+                        samples.set((int) slot, new String[] { expected, actual });
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return path with array indices and map keys replaced by {@code *}
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public String getKind() {
+            return kind;
+        }
+
+        /**
+         * @return number of records with this mismatch, or number of mismatches for a summary of one record
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the first record indices, prefixed with {@code #}, and keys with this mismatch
+         */
+        public List<String> getExamples() {
+            synchronized (MismatchSummary.this) {
+                return ImmutableList.copyOf(examples);
+            }
+        }
+
+        /**
+         * @return sampled descriptions of expected and actual values, each as a two element array
+         */
+        public List<String[]> getSamples() {
+            synchronized (MismatchSummary.this) {
+                return ImmutableList.copyOf(samples);
+            }
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            description.appendText((path.isEmpty() ? "record" : path) + " " + kind + " in " + String.format("%,d", count)
+                    + (indexed ? " records" : " places"));
+            List<String> examples = getExamples();
+            if (!examples.isEmpty()) {
+                description.appendText(" (e.g. " + Joiner.on(", ").join(examples) + (count > examples.size() ? "..." : "") + ")");
+            }
+            for (String[] sample : getSamples()) {
+                description.appendText("\n    expected: " + sample[0] + ", actual: " + sample[1]);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return StringDescription.toString(this);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.Lists;
+
+/**
+ * Expected records for an unordered verification, kept in their binary encoding outside the Java heap, either in
+ * direct buffers or in a memory-mapped file. The heap only holds an open-addressing index from fingerprint to the
+ * position of each record, in two primitive arrays, so expected sets of tens of millions of records need neither
+ * tens of gigabytes of heap nor long garbage collections.
+ * <p>
+ * An actual record is encoded once, and compared with the stored records of the same fingerprint by a
+ * {@link BinaryRecordComparator}, without decoding them, so excluders should only depend on the field path. Stored
+ * records are only decoded to be reported as missing, or to be matched when the options compare records in a way the
+ * comparator does not: with schema resolution, ignoring representation, a match listener or a budget. Matched records
+ * are removed from the index, so duplicates do not lengthen its probe sequences. Usage:
+ *
+ * <pre>
+ * try (OffHeapExpectedSet&lt;Person&gt; expected = new OffHeapExpectedSet&lt;Person&gt;(Person.getClassSchema(), options)) {
+ *     for (Person person : expectedPeople) {
+ *         expected.add(person);
+ *     }
+ *     AvroStreamVerifier&lt;Person&gt; verifier = expected.verifier();
+ *     ...
+ * }
+ * </pre>
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @param <E> record type
+ */
+public class OffHeapExpectedSet<E extends IndexedRecord> implements Closeable {
+    static final int DEFAULT_CHUNK_SIZE = 64 << 20;
+
+    /** record header: a state byte and the length of the encoding */
+    private static final int HEADER_SIZE = 5;
+    private static final byte PENDING = 0;
+    private static final byte MATCHED = 1;
+    private static final long EMPTY = -1;
+
+    private final Schema schema;
+    private final Options options;
+    private final RecordFingerprinter fingerprinter;
+    private final int chunkSize;
+    @Nullable
+    private final RandomAccessFile file;
+    private final List<ByteBuffer> chunks = Lists.newArrayList();
+    private long fileLength;
+
+    private long[] fingerprints = new long[1024];
+    private long[] positions = newPositions(1024);
+    private int size;
+    private int pending;
+
+    private final DatumWriter<E> writer;
+    private final EncodedRecord encoded = new EncodedRecord();
+    @Nullable
+    private final BinaryRecordComparator comparator;
+    private BinaryEncoder encoder;
+    private byte[] decodeBuffer = new byte[256];
+    private boolean verifying;
+    private boolean closed;
+
+    /**
+     * Keep the records in direct buffers.
+     *
+     * @param schema schema of the expected records
+     * @param options options to compare records with, frozen
+     */
+    public OffHeapExpectedSet(@Nonnull Schema schema, @Nonnull Options options) {
+        this(schema, options, null, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Keep the records in a memory-mapped file, which is overwritten.
+     *
+     * @param schema schema of the expected records
+     * @param options options to compare records with, frozen
+     * @param file file to map
+     * @throws IOException if the file cannot be opened
+     */
+    public OffHeapExpectedSet(@Nonnull Schema schema, @Nonnull Options options, @Nonnull File file) throws IOException {
+        this(schema, options, new RandomAccessFile(checkNotNull(file, "file is null"), "rw"), DEFAULT_CHUNK_SIZE);
+        this.file.setLength(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    OffHeapExpectedSet(Schema schema, Options options, @Nullable RandomAccessFile file, int chunkSize) {
+        this.schema = checkNotNull(schema, "schema is null");
+        this.options = checkNotNull(options, "options is null").freeze();
+        this.fingerprinter = new RecordFingerprinter(this.options);
+        this.file = file;
+        this.chunkSize = chunkSize;
+        this.writer = (DatumWriter<E>) this.options.getDatumWriterFactory().apply(schema);
+        this.comparator = this.options.isSchemaResolution() || this.options.isIgnoreRepresentation()
+                || this.options.getMatchListener() != null || MatchBudget.isBudgeted(this.options) ? null
+                        : new BinaryRecordComparator(schema, this.options);
+    }
+
+    /**
+     * Add an expected record.
+     *
+     * @param expected expected record
+     */
+    public void add(@Nonnull E expected) {
+        checkNotNull(expected, "expected is null");
+        checkState(!verifying, "records cannot be added once verification has started");
+        checkState(!closed, "expected set is closed");
+        checkArgument(size < Integer.MAX_VALUE / 2, "too many expected records");
+        encode(expected);
+        long position = allocate(HEADER_SIZE + encoded.size());
+        ByteBuffer chunk = chunks.get(chunk(position)).duplicate();
+        int offset = offset(position);
+        chunk.put(offset, PENDING);
+        chunk.putInt(offset + 1, encoded.size());
+        ((Buffer) chunk).position(offset + HEADER_SIZE);
+        chunk.put(encoded.buffer(), 0, encoded.size());
+
+        if (2 * (size + 1) > positions.length) {
+            resize(2 * positions.length);
+        }
+        insert(fingerprinter.fingerprint(expected), position);
+        size++;
+        pending++;
+    }
+
+    /**
+     * @return number of expected records added
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return number of expected records which have not been matched yet
+     */
+    public long getPendingCount() {
+        return pending;
+    }
+
+    /**
+     * Match an actual record against the pending expected records with the same fingerprint, and mark the first
+     * matching one as matched, removing it from the index.
+     *
+     * @param actual actual record
+     * @return {@code true} if a pending expected record matched
+     */
+    public boolean take(@Nonnull E actual) {
+        checkNotNull(actual, "actual is null");
+        checkState(!closed, "expected set is closed");
+        verifying = true;
+        // the actual record is only encoded when a stored record has its fingerprint
+        boolean binary = comparator != null && schema.equals(actual.getSchema());
+        boolean encodedActual = false;
+        int mask = positions.length - 1;
+        for (long fingerprint : fingerprinter.candidateFingerprints(actual)) {
+            for (int slot = slot(fingerprint, mask); positions[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (fingerprints[slot] != fingerprint) {
+                    continue;
+                }
+                long position = positions[slot];
+                boolean matches;
+                if (binary) {
+                    if (!encodedActual) {
+                        encode(actual);
+                        encodedActual = true;
+                    }
+                    int length = copy(position);
+                    matches = comparator.firstDifference(decodeBuffer, length, encoded.buffer(), encoded.size()) == null;
+                } else {
+                    matches = IsAvroObjectEqual.avroObjectEqualTo(decode(position), options).matches(actual);
+                }
+                if (matches) {
+                    chunks.get(chunk(position)).put(offset(position), MATCHED);
+                    remove(slot);
+                    pending--;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return stream verifier which matches actual records in any order against the records of this set, see
+     *         {@link AvroMatchers#avroStreamVerifierInAnyOrder(java.util.Collection, Options)}
+     */
+    public AvroStreamVerifier<E> verifier() {
+        return AvroStreamVerifier.offHeap(this, options);
+    }
+
+    /**
+     * Decode the pending expected records in the order they were added, and pass them to the visitor.
+     */
+    void visitPending(Visitor<? super E> visitor) {
+        for (int i = 0; i < chunks.size(); i++) {
+            ByteBuffer chunk = chunks.get(i);
+            // the position of a chunk is the end of its last record
+            for (int offset = 0; offset < chunk.position(); offset += HEADER_SIZE + chunk.getInt(offset + 1)) {
+                long position = ((long) i << 32) | offset;
+                if (state(position) == PENDING) {
+                    visitor.visit(decode(position));
+                }
+            }
+        }
+    }
+
+    /**
+     * Release the buffers, and close the mapped file if any. The file is unmapped once the buffers are garbage
+     * collected.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        chunks.clear();
+        fingerprints = new long[0];
+        positions = new long[0];
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    /**
+     * Encode the record into {@link #encoded}.
+     */
+    private void encode(E record) {
+        encoded.reset();
+        encoder = EncoderFactory.get().binaryEncoder(encoded, encoder);
+        try {
+            writer.write(record, encoder);
+            encoder.flush();
+        } catch (IOException e) {
+            throw new AvroRuntimeException(e);
+        }
+    }
+
+    /**
+     * Copy the encoding of a stored record to the start of {@link #decodeBuffer}.
+     *
+     * @return length of the encoding
+     */
+    private int copy(long position) {
+        ByteBuffer chunk = chunks.get(chunk(position)).duplicate();
+        int offset = offset(position);
+        int length = chunk.getInt(offset + 1);
+        if (decodeBuffer.length < length) {
+            decodeBuffer = new byte[Math.max(length, 2 * decodeBuffer.length)];
+        }
+        // Buffer.position(int) so that classes compiled by newer JDKs still run on Java 8
+        ((Buffer) chunk).position(offset + HEADER_SIZE);
+        chunk.get(decodeBuffer, 0, length);
+        return length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E decode(long position) {
+        int length = copy(position);
+        try {
+            return (E) new SpecificDatumReader<Object>(schema).read(null,
+                    DecoderFactory.get().binaryDecoder(decodeBuffer, 0, length, null));
+        } catch (IOException e) {
+            throw new AvroRuntimeException(e);
+        }
+    }
+
+    private byte state(long position) {
+        return chunks.get(chunk(position)).get(offset(position));
+    }
+
+    /**
+     * @return position of {@code length} bytes, a record never spans chunks
+     */
+    private long allocate(int length) {
+        ByteBuffer last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (last == null || last.remaining() < length) {
+            last = newChunk(Math.max(chunkSize, length));
+            chunks.add(last);
+        }
+        long position = ((long) (chunks.size() - 1) << 32) | last.position();
+        ((Buffer) last).position(last.position() + length);
+        return position;
+    }
+
+    private ByteBuffer newChunk(int capacity) {
+        if (file == null) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        try {
+            ByteBuffer chunk = file.getChannel().map(FileChannel.MapMode.READ_WRITE, fileLength, capacity);
+            fileLength += capacity;
+            return chunk;
+        } catch (IOException e) {
+            throw new AvroRuntimeException(e);
+        }
+    }
+
+    private void insert(long fingerprint, long position) {
+        int mask = positions.length - 1;
+        int slot = slot(fingerprint, mask);
+        while (positions[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        fingerprints[slot] = fingerprint;
+        positions[slot] = position;
+    }
+
+    /**
+     * Empty a slot, shifting back the entries after it which would no longer be found past it.
+     */
+    private void remove(int slot) {
+        int mask = positions.length - 1;
+        int hole = slot;
+        for (int next = (slot + 1) & mask; positions[next] != EMPTY; next = (next + 1) & mask) {
+            int home = slot(fingerprints[next], mask);
+            // the entry stays if its home slot is cyclically after the hole, up to its own slot
+            boolean stays = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!stays) {
+                fingerprints[hole] = fingerprints[next];
+                positions[hole] = positions[next];
+                hole = next;
+            }
+        }
+        positions[hole] = EMPTY;
+    }
+
+    private void resize(int capacity) {
+        long[] oldFingerprints = fingerprints;
+        long[] oldPositions = positions;
+        fingerprints = new long[capacity];
+        positions = newPositions(capacity);
+        for (int i = 0; i < oldPositions.length; i++) {
+            if (oldPositions[i] != EMPTY) {
+                insert(oldFingerprints[i], oldPositions[i]);
+            }
+        }
+    }
+
+    private static long[] newPositions(int capacity) {
+        long[] positions = new long[capacity];
+        Arrays.fill(positions, EMPTY);
+        return positions;
+    }
+
+    private static int slot(long fingerprint, int mask) {
+        // fingerprints are already well mixed
+        return (int) fingerprint & mask;
+    }
+
+    private static int chunk(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int offset(long position) {
+        return (int) position;
+    }
+
+    /**
+     * Output stream whose buffer is reused for every record.
+     */
+    private static class EncodedRecord extends ByteArrayOutputStream {
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    interface Visitor<E> {
+        void visit(E record);
+    }
+}
@@ -0,0 +1,234 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import com.byhiras.avro.AvroMatchers.Excluder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Excludes the fields whose paths match any of a set of patterns, compiled into one deterministic automaton over path
+ * segments. A pattern is a list of segments separated by dots, each of which is:
+ * <ul>
+ * <li>a field name, map key or array index, eg. {@code address}</li>
+ * <li>{@code *}, any one segment</li>
+ * <li>{@code **}, any number of segments, including none</li>
+ * <li>a glob with {@code *}, {@code ?} and {@code {a,b}}, eg. {@code post*} or {@code {firstLine,secondLine}}</li>
+ * <li>a regular expression between slashes, which may contain dots, eg. {@code /line[0-9]+/}</li>
+ * </ul>
+ * For example {@code address.*}, {@code **.lastModified} or {@code familyMembers.{Sister,Brother}}.
+ * <p>
+ * The states of the automaton are sets of positions in the patterns, built lazily as paths are tested. The
+ * transitions of each state are cached by segment, so testing a path costs one lookup per segment, and segments are
+ * only matched against globs and regular expressions the first time they are seen in a given state.
+ */
+class PathPatternExcluder implements Excluder {
+    /** segments of the transitions cached per state, beyond which transitions are computed each time */
+    private static final int MAX_CACHED_TRANSITIONS = 4096;
+
+    private final List<List<Segment>> patterns;
+    private final ConcurrentMap<String, State> states = Maps.newConcurrentMap();
+    private final State start;
+
+    PathPatternExcluder(Iterable<String> patterns) {
+        this.patterns = Lists.newArrayList();
+        for (String pattern : patterns) {
+            this.patterns.add(parse(checkNotNull(pattern, "pattern is null")));
+        }
+        checkArgument(this.patterns.size() < 0x8000, "Too many patterns");
+        TreeSet<Integer> initial = new TreeSet<Integer>();
+        for (int i = 0; i < this.patterns.size(); i++) {
+            addClosure(initial, i, 0);
+        }
+        this.start = intern(initial);
+    }
+
+    @Override
+    public boolean isExcluded(Object record, List<String> fieldPath) {
+        State state = start;
+        for (int i = 0; i < fieldPath.size() && !state.dead; i++) {
+            state = state.next(fieldPath.get(i));
+        }
+        return state.accepting;
+    }
+
+    /**
+     * Positions are encoded as {@code pattern << 16 | index of the next segment}.
+     */
+    private void addClosure(TreeSet<Integer> positions, int pattern, int index) {
+        List<Segment> segments = patterns.get(pattern);
+        positions.add(pattern << 16 | index);
+        if (index < segments.size() && segments.get(index).deep) {
+            // ** may match no segment
+            addClosure(positions, pattern, index + 1);
+        }
+    }
+
+    private State intern(TreeSet<Integer> positions) {
+        String key = positions.toString();
+        State state = states.get(key);
+        if (state == null) {
+            int[] array = new int[positions.size()];
+            int i = 0;
+            boolean accepting = false;
+            for (int position : positions) {
+                array[i++] = position;
+                accepting |= (position & 0xffff) == patterns.get(position >>> 16).size();
+            }
+            State existing = states.putIfAbsent(key, state = new State(array, accepting));
+            state = existing != null ? existing : state;
+        }
+        return state;
+    }
+
+    private State transition(State state, String segment) {
+        TreeSet<Integer> next = new TreeSet<Integer>();
+        for (int position : state.positions) {
+            int pattern = position >>> 16;
+            int index = position & 0xffff;
+            List<Segment> segments = patterns.get(pattern);
+            if (index == segments.size()) {
+                continue;
+            }
+            Segment current = segments.get(index);
+            if (current.deep) {
+                // ** consumes the segment and may consume more
+                next.add(position);
+                addClosure(next, pattern, index + 1);
+            } else if (current.matches(segment)) {
+                addClosure(next, pattern, index + 1);
+            }
+        }
+        return intern(next);
+    }
+
+    private static List<Segment> parse(String pattern) {
+        checkArgument(!pattern.isEmpty(), "pattern is empty");
+        List<Segment> segments = Lists.newArrayList();
+        int start = 0;
+        boolean inRegex = false;
+        for (int i = 0; i <= pattern.length(); i++) {
+            boolean segmentEnd = i + 1 >= pattern.length() || pattern.charAt(i + 1) == '.';
+            if (i < pattern.length() && pattern.charAt(i) == '/' && (inRegex ? segmentEnd : i == start)) {
+                inRegex = !inRegex;
+            } else if (i == pattern.length() || (pattern.charAt(i) == '.' && !inRegex)) {
+                checkArgument(!inRegex, "Unterminated regular expression in %s", pattern);
+                checkArgument(i > start, "Empty segment in %s", pattern);
+                segments.add(Segment.parse(pattern.substring(start, i)));
+                start = i + 1;
+            }
+        }
+        checkArgument(segments.size() < 0xffff, "Too many segments in %s", pattern);
+        return segments;
+    }
+
+    private class State {
+        final int[] positions;
+        final boolean accepting;
+        final boolean dead;
+        private final ConcurrentMap<String, State> transitions = Maps.newConcurrentMap();
+
+        State(int[] positions, boolean accepting) {
+            this.positions = positions;
+            this.accepting = accepting;
+            this.dead = positions.length == 0;
+        }
+
+        State next(String segment) {
+            State next = transitions.get(segment);
+            if (next == null) {
+                next = transition(this, segment);
+                if (transitions.size() < MAX_CACHED_TRANSITIONS) {
+                    transitions.put(segment, next);
+                }
+            }
+            return next;
+        }
+    }
+
+    private static class Segment {
+        final boolean deep;
+        final String name;
+        final Pattern pattern;
+
+        private Segment(boolean deep, String name, Pattern pattern) {
+            this.deep = deep;
+            this.name = name;
+            this.pattern = pattern;
+        }
+
+        static Segment parse(String segment) {
+            if (segment.equals("**")) {
+                return new Segment(true, null, null);
+            }
+            if (segment.length() >= 2 && segment.startsWith("/") && segment.endsWith("/")) {
+                return new Segment(false, null, Pattern.compile(segment.substring(1, segment.length() - 1)));
+            }
+            if (!segment.matches(".*[*?{].*")) {
+                return new Segment(false, segment, null);
+            }
+            return new Segment(false, null, Pattern.compile(globToRegex(segment)));
+        }
+
+        boolean matches(String segment) {
+            return name != null ? name.equals(segment) : pattern.matcher(segment).matches();
+        }
+
+        private static String globToRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+            boolean inAlternatives = false;
+            for (char c : glob.toCharArray()) {
+                if (c == '*' || c == '?' || c == '{' || (inAlternatives && (c == ',' || c == '}'))) {
+                    if (literal.length() > 0) {
+                        regex.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    if (c == '*') {
+                        regex.append(".*");
+                    } else if (c == '?') {
+                        regex.append('.');
+                    } else if (c == '{') {
+                        checkArgument(!inAlternatives, "Nested alternatives in %s", glob);
+                        inAlternatives = true;
+                        regex.append("(?:");
+                    } else if (c == ',') {
+                        regex.append('|');
+                    } else {
+                        inAlternatives = false;
+                        regex.append(')');
+                    }
+                } else {
+                    literal.append(c);
+                }
+            }
+            checkArgument(!inAlternatives, "Unterminated alternatives in %s", glob);
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+            }
+            return regex.toString();
+        }
+    }
+}
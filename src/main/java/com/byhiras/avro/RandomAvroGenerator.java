@@ -0,0 +1,457 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.specific.SpecificData;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Seedable generator of random Avro schemas and records, for stress testing the matchers and benchmarking them at
+ * scale. Generated schemas nest records, arrays, maps and unions, include recursive references and large unions,
+ * and are bounded by a maximum depth. Records can then be mutated in one value, for checking that the mismatch is
+ * reported at the mutated path.
+ * <p>
+ * Records of schemas with generated classes are created as specific records, others as generic records. The same
+ * seed and settings produce the same schemas and records.
+ */
+public class RandomAvroGenerator {
+    private static final String NAMESPACE = "com.byhiras.avro.random";
+    private static final String[] PRIMITIVES = { "boolean", "int", "long", "float", "double", "bytes", "string" };
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    private final Random random;
+    private int maxDepth = 4;
+    private int maxFields = 8;
+    private int maxCollectionSize = 8;
+    private int maxUnionBranches = 4;
+    private int names;
+
+    public RandomAvroGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param maxDepth maximum nesting of records, arrays and maps, in schemas and in the values of recursive schemas
+     * @return this
+     */
+    public RandomAvroGenerator setMaxDepth(int maxDepth) {
+        checkArgument(maxDepth > 0, "maxDepth must be positive");
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public RandomAvroGenerator setMaxFields(int maxFields) {
+        checkArgument(maxFields > 0, "maxFields must be positive");
+        this.maxFields = maxFields;
+        return this;
+    }
+
+    /**
+     * @param maxCollectionSize maximum number of elements of arrays, entries of maps, and length of strings and bytes
+     * @return this
+     */
+    public RandomAvroGenerator setMaxCollectionSize(int maxCollectionSize) {
+        checkArgument(maxCollectionSize >= 0, "maxCollectionSize is negative");
+        this.maxCollectionSize = maxCollectionSize;
+        return this;
+    }
+
+    public RandomAvroGenerator setMaxUnionBranches(int maxUnionBranches) {
+        checkArgument(maxUnionBranches >= 2, "maxUnionBranches must be at least 2");
+        this.maxUnionBranches = maxUnionBranches;
+        return this;
+    }
+
+    /**
+     * @return a random record schema
+     */
+    public Schema generateSchema() {
+        StringBuilder json = new StringBuilder();
+        appendRecord(json, 0, Lists.<String> newArrayList());
+        return new Schema.Parser().parse(json.toString());
+    }
+
+    /**
+     * @param schema record schema
+     * @return a random record of the schema
+     */
+    public IndexedRecord generateRecord(@Nonnull Schema schema) {
+        checkArgument(schema.getType() == Schema.Type.RECORD, "Not a record schema: %s", schema);
+        return (IndexedRecord) generateValue(schema, 0);
+    }
+
+    /**
+     * Copy a record, changing one randomly chosen value. Values are primitives, enums, fixed, nulls in unions, and
+     * empty arrays and maps, which are mutated by adding an element.
+     *
+     * @param record record to copy
+     * @return the mutated copy
+     */
+    public <T extends IndexedRecord> Mutation<T> mutate(@Nonnull T record) {
+        T copy = SpecificData.get().deepCopy(record.getSchema(), record);
+        List<Slot> slots = Lists.newArrayList();
+        collectRecord(copy, ImmutableList.<String> of(), slots);
+        Slot slot = slots.get(random.nextInt(slots.size()));
+        slot.set(mutateValue(slot.schema, slot.get()));
+        return new Mutation<T>(copy, slot.path);
+    }
+
+    private void appendRecord(StringBuilder json, int depth, List<String> ancestors) {
+        String name = NAMESPACE + ".R" + names++;
+        json.append("{\"type\": \"record\", \"name\": \"").append(name).append("\", \"fields\": [");
+        ancestors.add(name);
+        int fields = 1 + random.nextInt(maxFields);
+        for (int i = 0; i < fields; i++) {
+            json.append(i == 0 ? "" : ", ").append("{\"name\": \"f").append(i).append("\", \"type\": ");
+            appendType(json, depth + 1, ancestors, true);
+            json.append('}');
+        }
+        ancestors.remove(ancestors.size() - 1);
+        json.append("]}");
+    }
+
+    private void appendType(StringBuilder json, int depth, List<String> ancestors, boolean allowUnion) {
+        int choice = random.nextInt(depth < maxDepth ? 20 : 10);
+        if (choice < 6) {
+            json.append('"').append(PRIMITIVES[random.nextInt(PRIMITIVES.length)]).append('"');
+        } else if (choice == 6) {
+            appendEnum(json);
+        } else if (choice == 7) {
+            appendFixed(json);
+        } else if (choice < 10) {
+            if (allowUnion) {
+                json.append("[\"null\", ");
+                appendType(json, depth, ancestors, false);
+                json.append(']');
+            } else {
+                json.append("\"string\"");
+            }
+        } else if (choice < 13) {
+            appendRecord(json, depth, ancestors);
+        } else if (choice < 15) {
+            json.append("{\"type\": \"array\", \"items\": ");
+            appendType(json, depth + 1, ancestors, true);
+            json.append('}');
+        } else if (choice < 17) {
+            json.append("{\"type\": \"map\", \"values\": ");
+            appendType(json, depth + 1, ancestors, true);
+            json.append('}');
+        } else if (choice < 19 && allowUnion) {
+            appendLargeUnion(json, depth, ancestors);
+        } else {
+            // a recursive reference, which values can always end with null or an empty array
+            String ancestor = ancestors.get(random.nextInt(ancestors.size()));
+            if (allowUnion && random.nextBoolean()) {
+                json.append("[\"null\", \"").append(ancestor).append("\"]");
+            } else {
+                json.append("{\"type\": \"array\", \"items\": \"").append(ancestor).append("\"}");
+            }
+        }
+    }
+
+    private void appendLargeUnion(StringBuilder json, int depth, List<String> ancestors) {
+        // each kind of branch may appear once, other than named types
+        List<String> kinds = Lists.newArrayList("null", "boolean", "int", "long", "float", "double", "bytes", "string",
+                "enum", "fixed", "record", "array", "map");
+        Collections.shuffle(kinds, random);
+        int branches = 2 + random.nextInt(maxUnionBranches - 1);
+        json.append('[');
+        for (int i = 0; i < branches && i < kinds.size(); i++) {
+            json.append(i == 0 ? "" : ", ");
+            String kind = kinds.get(i);
+            if (kind.equals("enum")) {
+                appendEnum(json);
+            } else if (kind.equals("fixed")) {
+                appendFixed(json);
+            } else if (kind.equals("record")) {
+                appendRecord(json, depth, ancestors);
+            } else if (kind.equals("array")) {
+                json.append("{\"type\": \"array\", \"items\": \"").append(PRIMITIVES[random.nextInt(PRIMITIVES.length)]).append("\"}");
+            } else if (kind.equals("map")) {
+                json.append("{\"type\": \"map\", \"values\": \"").append(PRIMITIVES[random.nextInt(PRIMITIVES.length)]).append("\"}");
+            } else {
+                json.append('"').append(kind).append('"');
+            }
+        }
+        json.append(']');
+    }
+
+    private void appendEnum(StringBuilder json) {
+        json.append("{\"type\": \"enum\", \"name\": \"").append(NAMESPACE).append(".E").append(names++).append("\", \"symbols\": [");
+        // at least two symbols, so that a value can always be mutated
+        int symbols = 2 + random.nextInt(8);
+        for (int i = 0; i < symbols; i++) {
+            json.append(i == 0 ? "" : ", ").append("\"S").append(i).append('"');
+        }
+        json.append("]}");
+    }
+
+    private void appendFixed(StringBuilder json) {
+        json.append("{\"type\": \"fixed\", \"name\": \"").append(NAMESPACE).append(".F").append(names++)
+                .append("\", \"size\": ").append(1 + random.nextInt(16)).append('}');
+    }
+
+    private Object generateValue(Schema schema, int depth) {
+        switch (schema.getType()) {
+        case NULL:
+            return null;
+        case BOOLEAN:
+            return random.nextBoolean();
+        case INT:
+            return random.nextInt();
+        case LONG:
+            return random.nextLong();
+        case FLOAT:
+            return (float) (random.nextGaussian() * 1000);
+        case DOUBLE:
+            return random.nextGaussian() * 1e6;
+        case BYTES:
+            return ByteBuffer.wrap(randomBytes(random.nextInt(maxCollectionSize + 1)));
+        case STRING:
+            return randomString(random.nextInt(maxCollectionSize + 1));
+        case ENUM:
+            return SpecificData.get().createEnum(schema.getEnumSymbols().get(random.nextInt(schema.getEnumSymbols().size())), schema);
+        case FIXED:
+            return SpecificData.get().createFixed(null, randomBytes(schema.getFixedSize()), schema);
+        case RECORD:
+            IndexedRecord record = (IndexedRecord) SpecificData.get().newRecord(null, schema);
+            for (Field field : schema.getFields()) {
+                record.put(field.pos(), generateValue(field.schema(), depth + 1));
+            }
+            return record;
+        case ARRAY:
+            int size = depth < maxDepth ? random.nextInt(maxCollectionSize + 1) : 0;
+            List<Object> array = new GenericData.Array<Object>(size, schema);
+            for (int i = 0; i < size; i++) {
+                array.add(generateValue(schema.getElementType(), depth + 1));
+            }
+            return array;
+        case MAP:
+            int entries = depth < maxDepth ? random.nextInt(maxCollectionSize + 1) : 0;
+            Map<String, Object> map = Maps.newHashMap();
+            for (int i = 0; i < entries; i++) {
+                map.put(randomString(random.nextInt(maxCollectionSize + 1)) + i, generateValue(schema.getValueType(), depth + 1));
+            }
+            return map;
+        case UNION:
+            List<Schema> types = schema.getTypes();
+            if (depth >= maxDepth && types.get(0).getType() == Schema.Type.NULL) {
+                // ends recursion
+                return null;
+            }
+            return generateValue(types.get(random.nextInt(types.size())), depth);
+        default:
+            throw new IllegalArgumentException("Unsupported schema type " + schema.getType());
+        }
+    }
+
+    private Object mutateValue(Schema schema, Object value) {
+        switch (schema.getType()) {
+        case BOOLEAN:
+            return !((Boolean) value);
+        case INT:
+            return (Integer) value + 1;
+        case LONG:
+            return (Long) value + 1;
+        case FLOAT:
+            float f = (Float) value;
+            return f + 1 + Math.abs(f);
+        case DOUBLE:
+            double d = (Double) value;
+            // well outside the tolerance of the matchers
+            return d + 1 + Math.abs(d);
+        case BYTES:
+            ByteBuffer bytes = ((ByteBuffer) value).duplicate();
+            ByteBuffer mutatedBytes = ByteBuffer.allocate(bytes.remaining() + 1);
+            mutatedBytes.put(bytes).put((byte) random.nextInt()).flip();
+            return mutatedBytes;
+        case STRING:
+            return value + randomString(1);
+        case ENUM:
+            List<String> symbols = schema.getEnumSymbols();
+            String symbol = symbols.get((symbols.indexOf(value.toString()) + 1) % symbols.size());
+            return SpecificData.get().createEnum(symbol, schema);
+        case FIXED:
+            byte[] fixed = ((GenericFixed) value).bytes().clone();
+            fixed[0] ^= 0xff;
+            return SpecificData.get().createFixed(null, fixed, schema);
+        case ARRAY:
+            List<Object> array = new GenericData.Array<Object>(1, schema);
+            array.add(generateValue(schema.getElementType(), maxDepth));
+            return array;
+        case MAP:
+            Map<String, Object> map = Maps.newHashMap();
+            map.put(randomString(1), generateValue(schema.getValueType(), maxDepth));
+            return map;
+        case UNION:
+            List<Schema> types = schema.getTypes();
+            if (value == null) {
+                Schema branch;
+                do {
+                    branch = types.get(random.nextInt(types.size()));
+                } while (branch.getType() == Schema.Type.NULL);
+                return generateValue(branch, maxDepth);
+            }
+            if (types.get(0).getType() == Schema.Type.NULL && random.nextBoolean()) {
+                return null;
+            }
+            return mutateValue(types.get(SpecificData.get().resolveUnion(schema, value)), value);
+        default:
+            throw new IllegalStateException("Cannot mutate " + schema.getType());
+        }
+    }
+
+    private void collectRecord(final IndexedRecord record, List<String> path, List<Slot> slots) {
+        for (final Field field : record.getSchema().getFields()) {
+            collectValue(new Slot(field.schema(), append(path, field.name())) {
+                @Override
+                Object get() {
+                    return record.get(field.pos());
+                }
+
+                @Override
+                void set(Object value) {
+                    record.put(field.pos(), value);
+                }
+            }, slots);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void collectValue(Slot slot, List<Slot> slots) {
+        Object value = slot.get();
+        Schema schema = slot.schema;
+        if (schema.getType() == Schema.Type.UNION && value != null) {
+            schema = schema.getTypes().get(SpecificData.get().resolveUnion(schema, value));
+        }
+
+        if (schema.getType() == Schema.Type.RECORD && value != null) {
+            collectRecord((IndexedRecord) value, slot.path, slots);
+        } else if (schema.getType() == Schema.Type.ARRAY && !((List<?>) value).isEmpty()) {
+            final List<Object> list = (List<Object>) value;
+            for (int i = 0; i < list.size(); i++) {
+                final int index = i;
+                collectValue(new Slot(schema.getElementType(), append(slot.path, Integer.toString(i))) {
+                    @Override
+                    Object get() {
+                        return list.get(index);
+                    }
+
+                    @Override
+                    void set(Object value) {
+                        list.set(index, value);
+                    }
+                }, slots);
+            }
+        } else if (schema.getType() == Schema.Type.MAP && !((Map<?, ?>) value).isEmpty()) {
+            final Map<Object, Object> map = (Map<Object, Object>) value;
+            for (final Object key : map.keySet()) {
+                collectValue(new Slot(schema.getValueType(), append(slot.path, key.toString())) {
+                    @Override
+                    Object get() {
+                        return map.get(key);
+                    }
+
+                    @Override
+                    void set(Object value) {
+                        map.put(key, value);
+                    }
+                }, slots);
+            }
+        } else {
+            slots.add(slot);
+        }
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private String randomString(int length) {
+        StringBuilder string = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            string.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+        }
+        return string.toString();
+    }
+
+    private static List<String> append(List<String> path, String segment) {
+        return ImmutableList.copyOf(Iterables.concat(path, ImmutableList.of(segment)));
+    }
+
+    /**
+     * A value within a record which can be replaced.
+     */
+    private abstract static class Slot {
+        final Schema schema;
+        final List<String> path;
+
+        Slot(Schema schema, List<String> path) {
+            this.schema = schema;
+            this.path = path;
+        }
+
+        abstract Object get();
+
+        abstract void set(Object value);
+    }
+
+    /**
+     * A copy of a record with one value changed.
+     */
+    public static class Mutation<T extends IndexedRecord> {
+        private final T record;
+        private final List<String> fieldPath;
+
+        Mutation(T record, List<String> fieldPath) {
+            this.record = record;
+            this.fieldPath = fieldPath;
+        }
+
+        public T getRecord() {
+            return record;
+        }
+
+        /**
+         * @return path of the changed value, as reported by the matchers
+         */
+        public List<String> getFieldPath() {
+            return fieldPath;
+        }
+    }
+}
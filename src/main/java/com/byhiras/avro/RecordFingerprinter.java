@@ -0,0 +1,397 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.Nullable;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.GenericEnumSymbol;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.util.Utf8;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Longs;
+
+/**
+ * Computes 64-bit fingerprints of Avro records which are consistent with {@link IsAvroObjectEqual}: whenever the
+ * matcher for an expected record matches an actual record, the fingerprint of the expected record is one of the
+ * {@link #candidateFingerprints(IndexedRecord) candidate fingerprints} of the actual record. Anything the matchers
+ * compare loosely (excluded fields, values with custom matchers and elements of arrays whose order is ignored which
+ * may be paired with any element) is left out of the fingerprint.
+ * <p>
+ * Doubles, and floats with a tolerance, are hashed by the bucket of their {@link Tolerance}. An actual value may be
+ * within the tolerance of values from two or three buckets, so each combination of candidate buckets gives a
+ * candidate fingerprint. To bound their number, only the first {@value #MAX_BUCKETED} such values of a record are
+ * hashed, and values inside maps and arrays whose order is ignored are left out, as they may be paired differently.
+ * <p>
+ * With schema resolution, or when ignoring representation, records are compared by field name through the schema of
+ * the expected record, so actual records are hashed through the schemas of the expected records fingerprinted so far:
+ * fields in the order of the expected schema, with the default value of fields the actual schema lacks, numbers as
+ * the type of the expected field they are promoted to, strings and bytes as their UTF-8 bytes, and enums by symbol.
+ * <p>
+ * Field paths are relative to the fingerprinted record, as with {@link AvroMatchers#avroEqualTo(IndexedRecord, Options)}.
+ * Excluders are evaluated against the record being fingerprinted, so they should only depend on the field path.
+ */
+class RecordFingerprinter {
+    private static final long SEED = 0xcbf29ce484222325L;
+    private static final long NULL_HASH = 0x2545f4914f6cdd1dL;
+    private static final long LOOSE_HASH = 0x61c8864680b583ebL;
+    static final int MAX_BUCKETED = 4;
+
+    private final Options options;
+    private final boolean pathRules;
+    /** whether records are compared through a view of the actual record by field name */
+    private final boolean resolving;
+    /** schemas of the expected records, which actual records are hashed through when resolving */
+    private final List<Schema> expectedSchemas = new CopyOnWriteArrayList<Schema>();
+    /** resolutions by expected schema then actual schema, both by identity */
+    private final ConcurrentMap<Schema, ConcurrentMap<Schema, SchemaResolution>> resolutions = new MapMaker().weakKeys().makeMap();
+
+    RecordFingerprinter(Options options) {
+        this.options = options;
+        this.pathRules = options.hasPathRules();
+        this.resolving = options.isSchemaResolution() || options.isIgnoreRepresentation();
+    }
+
+    /**
+     * @param record expected record
+     * @return fingerprint
+     */
+    long fingerprint(IndexedRecord record) {
+        if (resolving && !containsSchema(record.getSchema())) {
+            synchronized (expectedSchemas) {
+                if (!containsSchema(record.getSchema())) {
+                    expectedSchemas.add(record.getSchema());
+                }
+            }
+        }
+        return avalanche(hashRecord(record, record.getSchema(), ImmutableList.<String> of(), new Buckets(false), true));
+    }
+
+    private boolean containsSchema(Schema schema) {
+        for (Schema expectedSchema : expectedSchemas) {
+            if (expectedSchema == schema) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param record actual record
+     * @return fingerprints of the expected records which may match the actual record, usually only one
+     */
+    long[] candidateFingerprints(IndexedRecord record) {
+        if (!resolving) {
+            return candidateFingerprints(record, record.getSchema());
+        }
+        long[] fingerprints = null;
+        for (Schema expectedSchema : expectedSchemas) {
+            if (SchemaResolution.isCompatibleName(expectedSchema, record.getSchema())) {
+                long[] candidates = candidateFingerprints(record, expectedSchema);
+                fingerprints = fingerprints == null ? candidates : Longs.concat(fingerprints, candidates);
+            }
+        }
+        return fingerprints != null ? fingerprints : candidateFingerprints(record, record.getSchema());
+    }
+
+    private long[] candidateFingerprints(IndexedRecord record, Schema schema) {
+        Buckets buckets = new Buckets(true);
+        long first = avalanche(hashRecord(record, schema, ImmutableList.<String> of(), buckets, true));
+        int combinations = 1;
+        for (int i = 0; i < buckets.count; i++) {
+            combinations *= buckets.candidates[i].length;
+        }
+        long[] fingerprints = new long[combinations];
+        fingerprints[0] = first;
+        for (int combination = 1; combination < combinations; combination++) {
+            int remainder = combination;
+            for (int i = 0; i < buckets.count; i++) {
+                buckets.choices[i] = remainder % buckets.candidates[i].length;
+                remainder /= buckets.candidates[i].length;
+            }
+            buckets.count = 0;
+            fingerprints[combination] = avalanche(hashRecord(record, schema, ImmutableList.<String> of(), buckets, true));
+        }
+        return fingerprints;
+    }
+
+    /**
+     * @param schema schema of the expected record, which the record is hashed through when resolving, otherwise the
+     *            schema of the record
+     */
+    private long hashRecord(IndexedRecord record, Schema schema, List<String> path, Buckets buckets, boolean ordered) {
+        IndexedRecord view = record;
+        if (resolving && schema != record.getSchema()) {
+            SchemaResolution resolution = resolution(schema, record.getSchema());
+            if (resolution.getMissingField() != null) {
+                // the record never matches, so any fingerprint will do
+                return mix(SEED, record.getSchema().getFullName().hashCode());
+            }
+            view = resolution.view(record);
+        }
+        // the name of the expected schema, as an actual schema may have one of its aliases
+        long hash = mix(SEED, schema.getFullName().hashCode());
+        for (Field field : schema.getFields()) {
+            List<String> fieldPath = path;
+            if (pathRules) {
+                fieldPath = append(path, field.name());
+                if (options.getMatcher(fieldPath) != null || options.getExcluder().isExcluded(record, fieldPath)) {
+                    continue;
+                }
+            }
+            hash = mix(hash, field.pos());
+            hash = mix(hash, hashValue(view.get(field.pos()), resolving ? field.schema() : null, fieldPath, buckets, ordered));
+        }
+        return hash;
+    }
+
+    private SchemaResolution resolution(Schema expected, Schema actual) {
+        ConcurrentMap<Schema, SchemaResolution> byActual = resolutions.get(expected);
+        if (byActual == null) {
+            byActual = new MapMaker().weakKeys().makeMap();
+            ConcurrentMap<Schema, SchemaResolution> existing = resolutions.putIfAbsent(expected, byActual);
+            byActual = existing != null ? existing : byActual;
+        }
+        SchemaResolution resolution = byActual.get(actual);
+        if (resolution == null) {
+            resolution = SchemaResolution.resolve(expected, actual, options.isSchemaResolution());
+            byActual.put(actual, resolution);
+        }
+        return resolution;
+    }
+
+    /**
+     * @param schema expected schema of the value when resolving, otherwise {@code null}
+     */
+    private long hashValue(Object value, @Nullable Schema schema, List<String> path, Buckets buckets, boolean ordered) {
+        if (value == null) {
+            return NULL_HASH;
+        }
+        if (schema != null && schema.getType() == Schema.Type.UNION) {
+            schema = SchemaResolution.resolveBranch(schema, value);
+        }
+        if (value instanceof IndexedRecord) {
+            IndexedRecord record = (IndexedRecord) value;
+            Schema recordSchema = schema != null && schema.getType() == Schema.Type.RECORD ? schema : record.getSchema();
+            return hashRecord(record, recordSchema, path, buckets, ordered);
+        }
+        if (value instanceof Map) {
+            Schema valueSchema = schema != null && schema.getType() == Schema.Type.MAP ? schema.getValueType() : null;
+            return hashMap((Map<?, ?>) value, valueSchema, path, buckets);
+        }
+        if (value instanceof List) {
+            Schema elementSchema = schema != null && schema.getType() == Schema.Type.ARRAY ? schema.getElementType() : null;
+            List<String> keyPath = pathRules ? options.getArrayKey(path) : null;
+            if (keyPath != null) {
+                return hashKeyedList((List<?>) value, elementSchema, path, keyPath, buckets);
+            }
+            return options.isIgnoreArrayOrder() ? hashUnorderedList((List<?>) value, elementSchema, path, buckets)
+                    : hashList((List<?>) value, elementSchema, path, buckets, ordered);
+        }
+        if (resolving) {
+            // promote numbers to the expected type, and hash values the same whatever their representation
+            Schema.Type type = schema != null ? schema.getType() : null;
+            if (type == Schema.Type.DOUBLE && value instanceof Number) {
+                value = ((Number) value).doubleValue();
+            } else if (type == Schema.Type.FLOAT && value instanceof Number && !(value instanceof Double)) {
+                value = ((Number) value).floatValue();
+            } else if (value instanceof Integer || value instanceof Long) {
+                return mix(SEED, ((Number) value).longValue());
+            } else if (value instanceof CharSequence || value instanceof ByteBuffer) {
+                return hashUtf8(value);
+            }
+        }
+        if (value instanceof Double) {
+            return hashTolerant((Double) value, options.getTolerance(path, Schema.Type.DOUBLE), buckets, ordered);
+        }
+        if (value instanceof Float) {
+            Tolerance tolerance = options.getTolerance(path, Schema.Type.FLOAT);
+            return tolerance == null ? value.hashCode() : hashTolerant((Float) value, tolerance, buckets, ordered);
+        }
+        if (value instanceof CharSequence || value instanceof GenericEnumSymbol) {
+            return value.toString().hashCode();
+        }
+        if (value instanceof Enum) {
+            return ((Enum<?>) value).name().hashCode();
+        }
+        if (value instanceof GenericFixed) {
+            return Arrays.hashCode(((GenericFixed) value).bytes());
+        }
+        return value.hashCode();
+    }
+
+    /**
+     * Hash a string or bytes as UTF-8 bytes, so that a String, a Utf8 and their bytes hash the same.
+     */
+    private static long hashUtf8(Object value) {
+        long hash = SEED;
+        if (value instanceof Utf8) {
+            Utf8 utf8 = (Utf8) value;
+            byte[] bytes = utf8.getBytes();
+            for (int i = 0; i < utf8.getByteLength(); i++) {
+                hash = mix(hash, bytes[i]);
+            }
+        } else if (value instanceof ByteBuffer) {
+            ByteBuffer buffer = (ByteBuffer) value;
+            for (int i = buffer.position(); i < buffer.limit(); i++) {
+                hash = mix(hash, buffer.get(i));
+            }
+        } else {
+            for (byte b : value.toString().getBytes(Charsets.UTF_8)) {
+                hash = mix(hash, b);
+            }
+        }
+        return hash;
+    }
+
+    private long hashTolerant(double value, Tolerance tolerance, Buckets buckets, boolean ordered) {
+        if (!ordered || !tolerance.isBucketed() || buckets.count == MAX_BUCKETED) {
+            return LOOSE_HASH;
+        }
+        int index = buckets.count++;
+        if (!buckets.probing) {
+            return tolerance.bucket(value);
+        }
+        if (buckets.candidates[index] == null) {
+            buckets.candidates[index] = tolerance.candidateBuckets(value);
+        }
+        return buckets.candidates[index][buckets.choices[index]];
+    }
+
+    private long hashMap(Map<?, ?> map, @Nullable Schema valueSchema, List<String> path, Buckets buckets) {
+        // entries are combined commutatively as map iteration order is not significant. Entries with null values
+        // are skipped because the matchers treat them the same as missing keys
+        long hash = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+            String key = entry.getKey().toString();
+            List<String> entryPath = path;
+            if (pathRules) {
+                entryPath = append(path, key);
+                if (options.getMatcher(entryPath) != null) {
+                    continue;
+                }
+            }
+            hash += avalanche(mix(key.hashCode(), hashValue(entry.getValue(), valueSchema, entryPath, buckets, false)));
+        }
+        return hash;
+    }
+
+    private long hashList(List<?> list, @Nullable Schema elementSchema, List<String> path, Buckets buckets, boolean ordered) {
+        // trailing nulls are skipped because the matchers treat them the same as missing elements
+        int size = list.size();
+        while (size > 0 && list.get(size - 1) == null) {
+            size--;
+        }
+        long hash = SEED;
+        for (int i = 0; i < size; i++) {
+            List<String> elementPath = path;
+            if (pathRules) {
+                elementPath = append(path, Integer.toString(i));
+                if (options.getMatcher(elementPath) != null) {
+                    continue;
+                }
+            }
+            hash = mix(hash, i);
+            hash = mix(hash, hashValue(list.get(i), elementSchema, elementPath, buckets, ordered));
+        }
+        return hash;
+    }
+
+    private long hashUnorderedList(List<?> list, @Nullable Schema elementSchema, List<String> path, Buckets buckets) {
+        long hash = list.size();
+        for (int i = 0; i < list.size(); i++) {
+            List<String> elementPath = path;
+            if (pathRules) {
+                elementPath = append(path, Integer.toString(i));
+                if (options.getMatcher(elementPath) != null) {
+                    // a custom matcher may be paired with any element
+                    return LOOSE_HASH;
+                }
+            }
+            hash += avalanche(hashValue(list.get(i), elementSchema, elementPath, buckets, false));
+        }
+        return hash;
+    }
+
+    private long hashKeyedList(List<?> list, @Nullable Schema elementSchema, List<String> path, List<String> keyPath,
+            Buckets buckets) {
+        // elements are combined commutatively as they are paired by key
+        Map<String, Integer> occurrences = Maps.newHashMap();
+        long hash = list.size();
+        for (Object element : list) {
+            String key = IsAvroObjectEqual.getArrayKey(element, keyPath);
+            Integer occurrence = occurrences.get(key);
+            occurrences.put(key, occurrence == null ? 1 : occurrence + 1);
+            List<String> elementPath = append(path, occurrence == null ? key : key + "#" + occurrence);
+            if (options.getMatcher(elementPath) != null) {
+                continue;
+            }
+            hash += avalanche(hashValue(element, elementSchema, elementPath, buckets, false));
+        }
+        return hash;
+    }
+
+    private static List<String> append(List<String> path, String segment) {
+        return ImmutableList.copyOf(Iterables.concat(path, ImmutableList.of(segment)));
+    }
+
+    private static long mix(long hash, long value) {
+        return (hash ^ value) * 0x100000001b3L + Long.rotateLeft(hash, 29);
+    }
+
+    private static long avalanche(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Buckets of the tolerant values of a record, in the order they are hashed.
+     */
+    private static final class Buckets {
+        /** whether the record is an actual record, whose values are hashed by one of their candidate buckets */
+        final boolean probing;
+        final long[][] candidates = new long[MAX_BUCKETED][];
+        final int[] choices = new int[MAX_BUCKETED];
+        int count;
+
+        Buckets(boolean probing) {
+            this.probing = probing;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.GenericEnumSymbol;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.util.Utf8;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Maps the fields of an expected record schema onto the fields of an actual record schema, following Avro schema
+ * resolution with the expected schema as the reader: fields are matched by name or by the aliases of the expected
+ * field, and fields missing from the actual schema may take the default value of the expected field. Values are
+ * {@link #promote(Schema.Type, Object) promoted} to the expected type as Avro would when reading them.
+ */
+final class SchemaResolution {
+    private static final Object MISSING = new Object();
+
+    private final Schema actualSchema;
+    private final int[] positions;
+    private final Object[] defaults;
+    private final String missingField;
+    private final boolean identity;
+
+    private SchemaResolution(Schema actualSchema, int[] positions, Object[] defaults, String missingField, boolean identity) {
+        this.actualSchema = actualSchema;
+        this.positions = positions;
+        this.defaults = defaults;
+        this.missingField = missingField;
+        this.identity = identity;
+    }
+
+    /**
+     * @return {@code true} if a reader with the expected schema may read data written with the actual schema
+     */
+    static boolean isCompatibleName(Schema expected, Schema actual) {
+        return expected.getFullName().equals(actual.getFullName()) || expected.getAliases().contains(actual.getFullName());
+    }
+
+    /**
+     * Follows Avro schema resolution of a union in the reader schema: the first branch of the same type as the value,
+     * else the first branch the value may be promoted to.
+     *
+     * @param union expected union schema
+     * @param value actual value
+     * @return branch of the expected union which the value is read as, or {@code null} if there is none
+     */
+    @Nullable
+    static Schema resolveBranch(Schema union, @Nullable Object value) {
+        for (Schema branch : union.getTypes()) {
+            if (isInstance(branch, value)) {
+                return branch;
+            }
+        }
+        for (Schema branch : union.getTypes()) {
+            if (isPromotable(branch.getType(), value)) {
+                return branch;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isInstance(Schema schema, Object value) {
+        switch (schema.getType()) {
+        case NULL:
+            return value == null;
+        case BOOLEAN:
+            return value instanceof Boolean;
+        case INT:
+            return value instanceof Integer;
+        case LONG:
+            return value instanceof Long;
+        case FLOAT:
+            return value instanceof Float;
+        case DOUBLE:
+            return value instanceof Double;
+        case STRING:
+            return value instanceof CharSequence;
+        case BYTES:
+            return value instanceof ByteBuffer;
+        case ENUM:
+            return value instanceof Enum || value instanceof GenericEnumSymbol;
+        case FIXED:
+            return value instanceof GenericFixed;
+        case ARRAY:
+            return value instanceof List;
+        case MAP:
+            return value instanceof Map;
+        case RECORD:
+            return value instanceof IndexedRecord && isCompatibleName(schema, ((IndexedRecord) value).getSchema());
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * @return {@code true} if the value is of a type which Avro promotes to the given type, eg. an int to a long
+     */
+    static boolean isPromotable(Schema.Type type, @Nullable Object value) {
+        switch (type) {
+        case LONG:
+            return value instanceof Integer;
+        case FLOAT:
+            return value instanceof Integer || value instanceof Long;
+        case DOUBLE:
+            return value instanceof Integer || value instanceof Long || value instanceof Float;
+        case STRING:
+            return value instanceof ByteBuffer;
+        case BYTES:
+            return value instanceof CharSequence;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * @param type expected type
+     * @param value actual value
+     * @return the value as read with the expected type, eg. an int as a long or bytes as a string, otherwise the value
+     */
+    static Object promote(Schema.Type type, @Nullable Object value) {
+        if (!isPromotable(type, value)) {
+            return value;
+        }
+        switch (type) {
+        case LONG:
+            return ((Number) value).longValue();
+        case FLOAT:
+            return ((Number) value).floatValue();
+        case DOUBLE:
+            return ((Number) value).doubleValue();
+        case STRING:
+            ByteBuffer buffer = (ByteBuffer) value;
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            return new Utf8(bytes);
+        default:
+            return ByteBuffer.wrap(value.toString().getBytes(Charsets.UTF_8));
+        }
+    }
+
+    /**
+     * @param useDefaults whether fields missing from the actual schema take their default value, otherwise they are
+     *            reported as missing
+     */
+    static SchemaResolution resolve(Schema expected, Schema actual, boolean useDefaults) {
+        List<Field> fields = expected.getFields();
+        int[] positions = new int[fields.size()];
+        Object[] defaults = new Object[fields.size()];
+        String missingField = null;
+        boolean identity = fields.size() == actual.getFields().size();
+
+        for (Field field : fields) {
+            Field actualField = actual.getField(field.name());
+            if (actualField == null) {
+                for (String alias : field.aliases()) {
+                    actualField = actual.getField(alias);
+                    if (actualField != null) {
+                        break;
+                    }
+                }
+            }
+
+            if (actualField != null) {
+                positions[field.pos()] = actualField.pos();
+                identity &= actualField.pos() == field.pos();
+            } else {
+                positions[field.pos()] = -1;
+                identity = false;
+                Object defaultValue = useDefaults ? getDefaultValue(field) : MISSING;
+                if (defaultValue != MISSING) {
+                    defaults[field.pos()] = defaultValue;
+                } else if (missingField == null) {
+                    missingField = field.name();
+                }
+            }
+        }
+        return new SchemaResolution(actual, positions, defaults, missingField, identity);
+    }
+
+    private static Object getDefaultValue(Field field) {
+        try {
+            return SpecificData.get().getDefaultValue(field);
+        } catch (AvroRuntimeException e) {
+            // no default value
+            return MISSING;
+        }
+    }
+
+    Schema getActualSchema() {
+        return actualSchema;
+    }
+
+    /**
+     * @return name of an expected field which has neither a counterpart in the actual schema nor a default value, or
+     *         {@code null} if the schemas are compatible
+     */
+    String getMissingField() {
+        return missingField;
+    }
+
+    /**
+     * @return a view of the actual record with the field positions of the expected schema
+     */
+    IndexedRecord view(final IndexedRecord actual) {
+        if (identity) {
+            return actual;
+        }
+        return new IndexedRecord() {
+            @Override
+            public Schema getSchema() {
+                return actual.getSchema();
+            }
+
+            @Override
+            public Object get(int i) {
+                int pos = positions[i];
+                return pos >= 0 ? actual.get(pos) : defaults[i];
+            }
+
+            @Override
+            public void put(int i, Object v) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public String toString() {
+                return actual.toString();
+            }
+        };
+    }
+}
@@ -0,0 +1,204 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+
+/**
+ * Error allowed when comparing a floating point value with an expected value: a fraction of the expected value, or
+ * an absolute error when the expected value is zero. NaN and infinite expected values only match themselves.
+ * <p>
+ * Tolerances are consistent with hashing: {@link #bucket(double)} of the expected value is always among the
+ * {@link #candidateBuckets(double)} of any value within the tolerance, so records with such values can be indexed
+ * by fingerprint. Buckets are intervals of the logarithm of the magnitude of values, four times as wide as the
+ * relative tolerance, so a value is within the tolerance of values of at most two buckets, plus the bucket of zero
+ * for values within the absolute tolerance of it.
+ */
+public final class Tolerance {
+    /**
+     * The tolerance for doubles, unless set otherwise: one part in 10<sup>8</sup>, or 10<sup>-6</sup> around zero.
+     */
+    public static final Tolerance DEFAULT = new Tolerance(1e-8, 1e-6);
+
+    /**
+     * No error is allowed.
+     */
+    public static final Tolerance EXACT = new Tolerance(0.0, 0.0);
+
+    private static final long ZERO_BUCKET = 0x9e3779b97f4a7c15L;
+
+    private final double relative;
+    private final double absolute;
+    /** bound of the difference of the logarithms of values within the relative tolerance of each other */
+    private final double logDelta;
+    private final double bucketWidth;
+
+    private Tolerance(double relative, double absolute) {
+        this.relative = relative;
+        this.absolute = absolute;
+        this.logDelta = relative > 0.0 && relative < 1.0 ? -Math.log1p(-relative) : 0.0;
+        this.bucketWidth = 4 * logDelta;
+    }
+
+    /**
+     * @param relative error allowed, as a fraction of the expected value
+     * @param absolute error allowed when the expected value is zero
+     * @return tolerance
+     */
+    public static Tolerance of(double relative, double absolute) {
+        checkArgument(relative >= 0.0 && !Double.isInfinite(relative), "Invalid relative tolerance: %s", relative);
+        checkArgument(absolute >= 0.0 && !Double.isInfinite(absolute), "Invalid absolute tolerance: %s", absolute);
+        return new Tolerance(relative, absolute);
+    }
+
+    public double getRelative() {
+        return relative;
+    }
+
+    public double getAbsolute() {
+        return absolute;
+    }
+
+    /**
+     * @param expected finite expected value
+     * @return the error allowed when comparing with the expected value
+     */
+    public double getError(double expected) {
+        if (expected == 0.0) {
+            return absolute;
+        }
+        return Math.abs(expected) * relative;
+    }
+
+    /**
+     * @return {@code true} if the actual value is within the tolerance of the expected value
+     */
+    public boolean isWithin(double expected, double actual) {
+        if (Double.isNaN(expected) || Double.isInfinite(expected)) {
+            return Double.valueOf(expected).equals(actual);
+        }
+        // same comparison as Matchers.closeTo
+        return Math.abs(actual - expected) - getError(expected) <= 0.0;
+    }
+
+    /**
+     * @param expected expected value
+     * @return matcher for values of the same type as the expected value within the tolerance
+     */
+    Matcher<?> matcher(final Number expected) {
+        return new BaseMatcher<Object>() {
+            @Override
+            public boolean matches(Object item) {
+                return item != null && item.getClass() == expected.getClass()
+                        && isWithin(expected.doubleValue(), ((Number) item).doubleValue());
+            }
+
+            @Override
+            public void describeTo(Description description) {
+                if (Double.isNaN(expected.doubleValue()) || Double.isInfinite(expected.doubleValue())) {
+                    description.appendValue(expected);
+                } else {
+                    description.appendText("a numeric value within ").appendValue(getError(expected.doubleValue()))
+                            .appendText(" of ").appendValue(expected);
+                }
+            }
+
+            @Override
+            public void describeMismatch(Object item, Description description) {
+                if (item != null && item.getClass() == expected.getClass() && !Double.isNaN(expected.doubleValue())
+                        && !Double.isInfinite(expected.doubleValue())) {
+                    description.appendValue(item).appendText(" differed by ")
+                            .appendValue(Math.abs(((Number) item).doubleValue() - expected.doubleValue()) - getError(expected.doubleValue()));
+                } else {
+                    super.describeMismatch(item, description);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return {@code true} if values can be hashed into buckets, ie. the relative tolerance is less than one
+     */
+    boolean isBucketed() {
+        return relative < 1.0;
+    }
+
+    /**
+     * @param expected expected value
+     * @return bucket of the expected value
+     */
+    long bucket(double expected) {
+        if (expected == 0.0) {
+            return ZERO_BUCKET;
+        }
+        if (logDelta == 0.0 || Double.isNaN(expected) || Double.isInfinite(expected)) {
+            return Double.doubleToLongBits(expected);
+        }
+        return logBucket(expected, Math.log(Math.abs(expected)));
+    }
+
+    /**
+     * @param actual actual value
+     * @return buckets of the expected values the actual value is within the tolerance of
+     */
+    long[] candidateBuckets(double actual) {
+        boolean nearZero = Math.abs(actual) <= absolute;
+        if (actual == 0.0) {
+            // only zero is within a relative tolerance of zero
+            return new long[] { ZERO_BUCKET };
+        }
+        if (logDelta == 0.0 || Double.isNaN(actual) || Double.isInfinite(actual)) {
+            return nearZero ? new long[] { Double.doubleToLongBits(actual), ZERO_BUCKET } : new long[] { Double.doubleToLongBits(actual) };
+        }
+        // a margin of half the bound covers rounding errors, and the interval is still narrower than a bucket
+        double log = Math.log(Math.abs(actual));
+        long low = logBucket(actual, log - 1.5 * logDelta);
+        long high = logBucket(actual, log + 1.5 * logDelta);
+        if (low == high) {
+            return nearZero ? new long[] { low, ZERO_BUCKET } : new long[] { low };
+        }
+        return nearZero ? new long[] { low, high, ZERO_BUCKET } : new long[] { low, high };
+    }
+
+    private long logBucket(double value, double log) {
+        long bucket = (long) Math.floor(log / bucketWidth);
+        return value < 0 ? ~bucket : bucket;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Tolerance)) {
+            return false;
+        }
+        Tolerance other = (Tolerance) obj;
+        return Double.compare(relative, other.relative) == 0 && Double.compare(absolute, other.absolute) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Double.valueOf(relative).hashCode() * 31 + Double.valueOf(absolute).hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "tolerance " + relative + ", " + absolute + " around zero";
+    }
+}
@@ -0,0 +1,119 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assume.assumeTrue;
+
+import static com.byhiras.avro.AvroMatchers.avroContains;
+import static com.byhiras.avro.AvroMatchers.avroEqualTo;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import org.hamcrest.Matcher;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.Lists;
+
+/**
+ * Guards the matching hot path against regressions which add garbage, by measuring the bytes allocated per
+ * {@link Matcher#matches(Object)} call once the JIT has compiled it.
+ */
+public class AllocationTest {
+    /**
+     * Bytes allowed per call. Matching allocates nothing, even when escape analysis is defeated by other tests, and
+     * this is less than a description or a copy of a path, so that adding either to the hot path fails the test.
+     */
+    private static final long BUDGET = 32;
+
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 2000;
+
+    private static com.sun.management.ThreadMXBean threadMXBean;
+
+    @BeforeClass
+    public static void setUpClass() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue("thread allocation is not measurable on this JVM", bean instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue("thread allocation is not measurable on this JVM", threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void testEqualRecord() {
+        Person expected = johnSmith().build();
+        assertBudget(avroEqualTo(expected), johnSmith().build(), true);
+    }
+
+    @Test
+    public void testEqualRecord_Compiled() {
+        Person expected = johnSmith().build();
+        assertBudget(avroEqualTo(expected, new Options().setCompiled(true)), johnSmith().build(), true);
+    }
+
+    @Test
+    public void testEqualRecords() {
+        List<Person> expected = people("Sister");
+        assertBudget(avroContains(expected), people("Sister"), true);
+    }
+
+    @Test
+    public void testMismatchingRecord() {
+        Person expected = johnSmith().build();
+        Person actual = johnSmith().build();
+        actual.getAddress().setPostCode("HP7 0BQ");
+        assertBudget(avroEqualTo(expected), actual, false);
+    }
+
+    @Test
+    public void testMismatchingRecords() {
+        List<Person> expected = people("Sister");
+        assertBudget(avroContains(expected), people("Brother"), false);
+    }
+
+    private static void assertBudget(Matcher<?> matcher, Object actual, boolean matches) {
+        for (int i = 0; i < WARMUP; i++) {
+            assertThat(matcher.matches(actual), is(matches));
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            matcher.matches(actual);
+        }
+        long allocated = (threadMXBean.getThreadAllocatedBytes(threadId) - before) / ITERATIONS;
+
+        assertThat("bytes allocated per match", allocated, lessThanOrEqualTo(BUDGET));
+    }
+
+    private static List<Person> people(String relation) {
+        List<Person> people = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            Person person = johnSmith().setAge((long) i).build();
+            person.getFamilyMembers().put(relation, "Jane Smith");
+            people.add(person);
+        }
+        return people;
+    }
+}
@@ -0,0 +1,146 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.junit.Test;
+
+import com.byhiras.avro.AvroBulkVerifier.Pair;
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class AvroBulkVerifierTest {
+    @Test
+    public void testAllMatch() throws Exception {
+        AvroBulkVerifier.Report report = new AvroBulkVerifier().verify(pairs(500));
+
+        assertThat(report.isSuccessful(), is(true));
+        assertThat(report.getCount(), is(500));
+        assertThat(report.getFailureCount(), is(0));
+    }
+
+    @Test
+    public void testFailures() throws Exception {
+        List<Pair<Person>> pairs = pairs(500);
+        pairs.get(42).getActual().setFirstName("James");
+        pairs.get(7).getActual().setLastName("Hancock");
+        pairs.get(300).getActual().setAge(20L);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            AvroBulkVerifier.Report report = new AvroBulkVerifier()
+                    .setExecutor(executor)
+                    .setMaxInFlight(8)
+                    .setMaxFailureDetails(2)
+                    .verify(pairs);
+
+            assertThat(report.isSuccessful(), is(false));
+            assertThat(report.getFailureCount(), is(3));
+            assertThat(report.isSuccessful(42), is(false));
+            assertThat(report.isSuccessful(43), is(true));
+            assertThat(report.toString().split("\n").length, is(4));
+            assertThat(report.toString(), endsWith("\n... 1 more failures"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailureDetailsHaveLowestIndices() throws Exception {
+        List<Pair<Person>> pairs = pairs(500);
+        for (Pair<Person> pair : pairs) {
+            pair.getActual().setFirstName("James");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            AvroBulkVerifier.Report report = new AvroBulkVerifier()
+                    .setExecutor(executor)
+                    .setMaxFailureDetails(3)
+                    .verify(pairs);
+
+            String[] lines = report.toString().split("\n");
+            assertThat(lines.length, is(5));
+            assertThat(lines[1], startsWith("0.firstName "));
+            assertThat(lines[2], startsWith("1.firstName "));
+            assertThat(lines[3], startsWith("2.firstName "));
+            assertThat(lines[4], equalTo("... 497 more failures"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailureDetails() throws Exception {
+        List<Pair<Person>> pairs = pairs(3);
+        pairs.get(1).getActual().setFirstName("James");
+
+        AvroBulkVerifier.Report report = new AvroBulkVerifier().verify(pairs);
+
+        assertThat(report.toString().substring(report.toString().indexOf('\n')),
+                equalTo("\n1.firstName Expected: \"John\" but: was \"James\""));
+    }
+
+    @Test
+    public void testErrorIsFailure() throws Exception {
+        List<Pair<Person>> pairs = pairs(3);
+        pairs.get(1).getActual().setFirstName("James");
+        Options options = new Options().addCustomMatcher(ImmutableList.of("firstName"), new BaseMatcher<Object>() {
+            @Override
+            public boolean matches(Object item) {
+                if (!"John".equals(item)) {
+                    throw new AssertionError("not John");
+                }
+                return true;
+            }
+
+            @Override
+            public void describeTo(Description description) {
+                description.appendText("John");
+            }
+        });
+
+        AvroBulkVerifier.Report report = new AvroBulkVerifier(options).verify(pairs);
+
+        assertThat(report.getFailureCount(), is(1));
+        assertThat(report.isSuccessful(0), is(true));
+        assertThat(report.isSuccessful(1), is(false));
+        assertThat(report.toString(), endsWith("\n1 threw java.lang.AssertionError: not John"));
+    }
+
+    private static List<Pair<Person>> pairs(int count) {
+        List<Pair<Person>> pairs = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            pairs.add(Pair.of(johnSmith().setAge((long) i).build(), johnSmith().setAge((long) i).build()));
+        }
+        return pairs;
+    }
+}
@@ -0,0 +1,111 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
+
+import static com.byhiras.avro.AvroMatchers.avroExpectationIndex;
+import static com.byhiras.avro.AvroMatchers.excludeFields;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.util.List;
+
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.junit.Test;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class AvroExpectationIndexTest {
+    @Test
+    public void testFindsMatch() {
+        AvroExpectationIndex<Person> index = avroExpectationIndex();
+        List<Person> expected = Lists.newArrayList();
+        for (int i = 0; i < 1000; i++) {
+            Person person = johnSmith().setAge((long) i).build();
+            expected.add(person);
+            index.add(person);
+        }
+
+        assertThat(index.size(), is(1000));
+        assertThat(index.findMatch(johnSmith().setAge(500L).build()), sameInstance(expected.get(500)));
+        assertThat(index.indexOf(johnSmith().setAge(999L).build()), is(999));
+        assertThat(index.indexOf(johnSmith().setAge(1000L).build()), is(-1));
+        assertThat(index.findMatch(johnSmith().setAge(1000L).build()), nullValue());
+        assertThat(index.matcher().matches(johnSmith().setAge(7L).build()), is(true));
+        assertThat(index.matcher().matches("John"), is(false));
+    }
+
+    @Test
+    public void testFirstAddedWins() {
+        AvroExpectationIndex<Person> index = avroExpectationIndex();
+        index.add(johnSmith().setFirstName("Jim").build());
+        index.add(johnSmith().build(), new Options().setExcluder(excludeFields("firstName")));
+        index.add(johnSmith().build());
+
+        assertThat(index.indexOf(johnSmith().build()), is(1));
+        assertThat(index.indexOf(johnSmith().setFirstName("Jim").build()), is(0));
+        assertThat(index.indexOf(johnSmith().setFirstName("Joe").build()), is(1));
+    }
+
+    @Test
+    public void testOptionsAreGrouped() {
+        Options options = new Options().setExcluder(excludeFields("age"));
+        AvroExpectationIndex<Person> index = avroExpectationIndex();
+        index.add(johnSmith().setFirstName("Jim").build(), options);
+        index.add(johnSmith().setFirstName("Joe").build(), options);
+
+        assertThat(options.isFrozen(), is(false));
+        assertThat(index.indexOf(johnSmith().setFirstName("Joe").setAge(99L).build()), is(1));
+    }
+
+    @Test
+    public void testDescribesClosestExpectation() {
+        AvroExpectationIndex<Person> index = avroExpectationIndex();
+        index.add(johnSmith().setFirstName("Jim").setLastName("Jones").build());
+        index.add(johnSmith().setFirstName("Jim").build());
+        Matcher<Person> matcher = index.matcher();
+
+        assertThat(StringDescription.toString(matcher), equalTo("one of 2 expected records"));
+        StringDescription description = new StringDescription();
+        matcher.describeMismatch(johnSmith().build(), description);
+        assertThat(description.toString(), equalTo("closest is expectation 1:\nfirstName Expected: \"Jim\" but: was \"John\""));
+
+        MismatchList mismatches = new MismatchList();
+        matcher.describeMismatch(johnSmith().build(), mismatches);
+        assertThat(StringDescription.toString(mismatches), equalTo("1.firstName Expected: \"Jim\" but: was \"John\""));
+    }
+
+    @Test
+    public void testDescribesExpectationWithSameFingerprint() {
+        AvroExpectationIndex<Person> index = avroExpectationIndex();
+        index.add(johnSmith().setFirstName("Jim").build());
+        index.add(johnSmith().setAge(40L).build(), new Options().addCustomMatcher(ImmutableList.of("age"), greaterThan(30L)));
+
+        StringDescription description = new StringDescription();
+        index.matcher().describeMismatch(johnSmith().build(), description);
+        assertThat(description.toString(), startsWith("closest is expectation 1:\nage "));
+    }
+}
@@ -0,0 +1,147 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import static com.byhiras.avro.AvroMatchers.excludeFields;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class AvroFileVerifierTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testProjection() {
+        Schema projection = AvroFileVerifier.projection(Person.SCHEMA$, new Options().setExcluder(excludeFields("familyMembers", "digits")));
+
+        assertThat(projection.getField("familyMembers"), nullValue());
+        assertThat(projection.getField("firstName"), notNullValue());
+        Schema phoneNumber = projection.getField("telephoneNumbers").schema().getTypes().get(1).getElementType();
+        assertThat(phoneNumber.getField("digits"), nullValue());
+        assertThat(phoneNumber.getField("type"), notNullValue());
+    }
+
+    @Test
+    public void testExcludedFieldsAreNotDecoded() throws IOException {
+        File file = write(johnSmith().build(), johnSmith().setFirstName("Jim").build());
+        Options options = new Options().setExcluder(excludeFields("familyMembers", "county"));
+
+        DataFileReader<Person> reader = AvroFileVerifier.openProjected(file, Person.SCHEMA$, options);
+        try {
+            Person person = reader.next();
+            assertThat(person.getFirstName(), equalTo("John"));
+            assertThat(person.getFamilyMembers(), nullValue());
+            assertThat(person.getAddress().getCounty(), nullValue());
+            assertThat(person.getAddress().getPostCode(), equalTo("HP7 0BP"));
+            assertThat(reader.next().getFirstName(), equalTo("Jim"));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testVerify() throws IOException {
+        File file = write(johnSmith().build(), johnSmith().setFirstName("Jim").build());
+        Options options = new Options().setExcluder(excludeFields("familyMembers"));
+        Person different = johnSmith().build();
+        different.getFamilyMembers().put("Brother", "Jim Smith");
+
+        List<Person> expected = Lists.newArrayList(different, johnSmith().setFirstName("Jim").build());
+        assertThat(AvroFileVerifier.verify(file, expected, options).isSuccessful(), is(true));
+        assertThat(AvroFileVerifier.verifyInAnyOrder(file, Lists.reverse(expected), options).isSuccessful(), is(true));
+
+        AvroStreamVerifier.Result result = AvroFileVerifier.verify(file, ImmutableList.of(johnSmith().build()), new Options());
+        assertThat(result.toString(), equalTo("matched: 1, missing: 0, unexpected: 1\n1 was not expected"));
+    }
+
+    @Test
+    public void testRecordTypeAtTwoPaths() throws IOException {
+        String string = "{\"type\": \"string\", \"avro.java.string\": \"String\"}";
+        Schema schema = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"Outer\", \"fields\": ["
+                + "{\"name\": \"home\", \"type\": {\"type\": \"record\", \"name\": \"Loc\", \"fields\": ["
+                + "{\"name\": \"street\", \"type\": " + string + "}, {\"name\": \"county\", \"type\": " + string + "}]}},"
+                + "{\"name\": \"work\", \"type\": [\"null\", \"Loc\"]}]}");
+        GenericRecord record = new GenericData.Record(schema);
+        record.put("home", location(schema, "High Street", "Bucks"));
+        record.put("work", location(schema, "Low Street", "Kent"));
+        File file = folder.newFile("outer.avro");
+        DataFileWriter<GenericRecord> writer = new DataFileWriter<GenericRecord>(new GenericDatumWriter<GenericRecord>(schema))
+                .create(schema, file);
+        try {
+            writer.append(record);
+        } finally {
+            writer.close();
+        }
+
+        // the field is only left out where it is excluded at every path of its type
+        Schema projection = AvroFileVerifier.projection(schema, new Options().setExcluder(AvroMatchers.excludePaths("*.county")));
+        assertThat(projection.getField("home").schema().getField("county"), nullValue());
+        Options options = new Options().setExcluder(AvroMatchers.excludePaths("home.county"));
+        projection = AvroFileVerifier.projection(schema, options);
+        assertThat(projection.getField("work").schema().getTypes().get(1).getField("county"), notNullValue());
+
+        GenericRecord expected = new GenericData.Record(schema);
+        expected.put("home", location(schema, "High Street", "Herts"));
+        expected.put("work", location(schema, "Low Street", "Kent"));
+        assertThat(AvroFileVerifier.verify(file, ImmutableList.of(expected), options).toString(),
+                equalTo("matched: 1, missing: 0, unexpected: 0"));
+    }
+
+    private static GenericRecord location(Schema outer, String street, String county) {
+        GenericRecord location = new GenericData.Record(outer.getField("home").schema());
+        location.put("street", street);
+        location.put("county", county);
+        return location;
+    }
+
+    private File write(Person... people) throws IOException {
+        File file = folder.newFile("people.avro");
+        DataFileWriter<Person> writer = new DataFileWriter<Person>(new SpecificDatumWriter<Person>(Person.class)).create(Person.SCHEMA$, file);
+        try {
+            for (Person person : people) {
+                writer.append(person);
+            }
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
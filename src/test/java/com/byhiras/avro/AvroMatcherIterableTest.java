@@ -25,12 +25,14 @@ import static com.byhiras.avro.AvroMatchers.avroContainsInAnyOrder;
 import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 import org.hamcrest.StringDescription;
 import org.junit.Test;
 
+import com.byhiras.avro.AvroMatchers.Options;
 import com.google.common.base.Functions;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -124,6 +126,31 @@ public class AvroMatcherIterableTest {
         assertThat(diagnosis.toString(), equalTo("1.firstName Expected: \"Jim\" but: was \"James\""));
     }
 
+    @Test
+    public void testContains_Parallel() {
+        List<Person> expected = Lists.newArrayList();
+        List<Person> actual = Lists.newArrayList();
+        for (int i = 0; i < 1000; i++) {
+            expected.add(johnSmith().setAge((long) i).build());
+            actual.add(johnSmith().setAge((long) i).build());
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Matcher<?> matcher = avroContains(expected, new Options().setParallelThreshold(100).setForkJoinPool(pool));
+            assertThat(matcher.matches(actual), is(true));
+
+            actual.get(700).setFirstName("Jason");
+            actual.get(300).setFirstName("Jim");
+            assertThat(matcher.matches(actual), is(false));
+
+            Description diagnosis = new StringDescription();
+            matcher.describeMismatch(actual, diagnosis);
+            assertThat(diagnosis.toString(), equalTo("300.firstName Expected: \"John\" but: was \"Jim\""));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     @Test
     public void testContainsInAnyOrder_Match() {
         Person expected1 = johnSmith().build();
@@ -0,0 +1,145 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+import static com.byhiras.avro.AvroMatchers.avroStreamVerifier;
+import static com.byhiras.avro.AvroMatchers.avroStreamVerifierByKey;
+import static com.byhiras.avro.AvroMatchers.avroStreamVerifierInAnyOrder;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class AvroStreamVerifierTest {
+    @Test
+    public void testOrdered_Match() {
+        AvroStreamVerifier<Person> verifier = avroStreamVerifier(expected());
+
+        assertThat(verifier.offer(johnSmith().build()), is(true));
+        assertThat(verifier.getMatchedCount(), is(1L));
+        assertThat(verifier.getPendingCount(), is(1L));
+        assertThat(verifier.offer(johnSmith().setFirstName("Jim").build()), is(true));
+
+        AvroStreamVerifier.Result result = verifier.finish();
+        assertThat(result.isSuccessful(), is(true));
+        assertThat(result.toString(), equalTo("matched: 2, missing: 0, unexpected: 0"));
+    }
+
+    @Test
+    public void testOrdered_MismatchedField() {
+        AvroStreamVerifier<Person> verifier = avroStreamVerifier(expected());
+
+        verifier.offer(johnSmith().build());
+        assertThat(verifier.offer(johnSmith().setFirstName("Jason").build()), is(false));
+
+        AvroStreamVerifier.Result result = verifier.finish();
+        assertThat(result.isSuccessful(), is(false));
+        assertThat(result.toString(), equalTo("matched: 1, missing: 0, unexpected: 1\n1.firstName Expected: \"Jim\" but: was \"Jason\""));
+    }
+
+    @Test
+    public void testOrdered_AdditionalAndMissing() {
+        AvroStreamVerifier<Person> verifier = avroStreamVerifier(expected());
+        verifier.offer(johnSmith().build());
+        assertThat(verifier.finish().toString(), startsWith("matched: 1, missing: 1, unexpected: 0\n1 Expected: Person: "));
+
+        verifier = avroStreamVerifier(expected());
+        verifier.offer(johnSmith().build());
+        verifier.offer(johnSmith().setFirstName("Jim").build());
+        verifier.offer(johnSmith().setFirstName("Joan").build());
+        assertThat(verifier.finish().toString(), equalTo("matched: 2, missing: 0, unexpected: 1\n2 was not expected"));
+    }
+
+    @Test
+    public void testKeyed_Match() {
+        AvroStreamVerifier<Person> verifier = avroStreamVerifierByKey(expected(), ImmutableList.of("firstName"));
+
+        assertThat(verifier.offer(johnSmith().setFirstName("Jim").build()), is(true));
+        assertThat(verifier.offer(johnSmith().build()), is(true));
+        assertThat(verifier.finish().toString(), equalTo("matched: 2, missing: 0, unexpected: 0"));
+    }
+
+    @Test
+    public void testKeyed_Mismatches() {
+        AvroStreamVerifier<Person> verifier = avroStreamVerifierByKey(expected(), ImmutableList.of("firstName"));
+
+        assertThat(verifier.offer(johnSmith().setLastName("Smyth").build()), is(false));
+        assertThat(verifier.offer(johnSmith().build()), is(false));
+        assertThat(verifier.offer(johnSmith().setFirstName("Joan").build()), is(false));
+
+        String result = verifier.finish().toString();
+        assertThat(result, startsWith("matched: 0, missing: 1, unexpected: 3\nJohn.lastName Expected: \"Smith\" but: was \"Smyth\"\n"
+                + "John#1 was not expected\nJoan was not expected\nJim Expected: Person: "));
+    }
+
+    @Test
+    public void testUnordered_Match() {
+        AvroStreamVerifier<Person> verifier = avroStreamVerifierInAnyOrder(expected());
+
+        assertThat(verifier.offer(johnSmith().setFirstName("Jim").build()), is(true));
+        assertThat(verifier.offer(johnSmith().build()), is(true));
+        assertThat(verifier.getPendingCount(), is(0L));
+        assertThat(verifier.finish().isSuccessful(), is(true));
+    }
+
+    @Test
+    public void testUnordered_ToleranceAndExclusions() {
+        List<Person> expected = Lists.newArrayList(johnSmith().setHeight(20D).build(), johnSmith().setFirstName("Jim").build());
+        AvroStreamVerifier<Person> verifier = avroStreamVerifierInAnyOrder(expected,
+                new Options().setExcluder(AvroMatchers.excludeFields("county")));
+
+        Person actual = johnSmith().setHeight(20.0000001D).build();
+        actual.getAddress().setCounty("Somerset");
+        assertThat(verifier.offer(actual), is(true));
+        assertThat(verifier.offer(johnSmith().setFirstName("Jim").build()), is(true));
+        assertThat(verifier.finish().isSuccessful(), is(true));
+    }
+
+    @Test
+    public void testUnordered_Mismatch() {
+        AvroStreamVerifier<Person> verifier = avroStreamVerifierInAnyOrder(expected());
+
+        assertThat(verifier.offer(johnSmith().setFirstName("Jason").build()), is(false));
+        assertThat(verifier.offer(johnSmith().build()), is(true));
+        assertThat(verifier.getUnexpectedCount(), is(1L));
+
+        String result = verifier.finish().toString();
+        assertThat(result, startsWith("matched: 1, missing: 1, unexpected: 1\n0 Not matched: <{\"firstName\": \"Jason\""));
+        assertThat(result.contains("\nNo item matches: Person: {"), is(true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOfferAfterFinish() {
+        AvroStreamVerifier<Person> verifier = avroStreamVerifier(expected());
+        verifier.finish();
+        verifier.offer(johnSmith().build());
+    }
+
+    private static List<Person> expected() {
+        return Lists.newArrayList(johnSmith().build(), johnSmith().setFirstName("Jim").build());
+    }
+}
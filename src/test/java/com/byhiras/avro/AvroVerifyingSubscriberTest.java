@@ -0,0 +1,147 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import static com.byhiras.avro.AvroMatchers.avroStreamVerifier;
+import static com.byhiras.avro.AvroMatchers.avroStreamVerifierInAnyOrder;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class AvroVerifyingSubscriberTest {
+    @Test
+    public void testRequestsInBatches() throws Exception {
+        List<Person> people = people(5);
+        AvroVerifyingSubscriber<Person> subscriber = new AvroVerifyingSubscriber<Person>(avroStreamVerifier(people), 2);
+        ListPublisher publisher = new ListPublisher(people);
+        publisher.subscribe(subscriber);
+
+        assertThat(publisher.requests, equalTo((List<Long>) ImmutableList.of(2L, 2L, 2L)));
+        assertThat(subscriber.getResult().get().toString(), equalTo("matched: 5, missing: 0, unexpected: 0"));
+    }
+
+    @Test
+    public void testMismatchInAnyOrder() throws Exception {
+        List<Person> actual = Lists.newArrayList(people(3).get(2), people(3).get(1), johnSmith().setAge(7L).build());
+        AvroVerifyingSubscriber<Person> subscriber = new AvroVerifyingSubscriber<Person>(avroStreamVerifierInAnyOrder(people(3)), 10);
+        new ListPublisher(actual).subscribe(subscriber);
+
+        AvroStreamVerifier.Result result = subscriber.getResult().get();
+        assertThat(result.isSuccessful(), is(false));
+        assertThat(result.getMatchedCount(), is(2L));
+        assertThat(result.getPendingCount(), is(1L));
+    }
+
+    @Test
+    public void testSecondSubscriptionCancelled() throws Exception {
+        AvroVerifyingSubscriber<Person> subscriber = new AvroVerifyingSubscriber<Person>(avroStreamVerifier(people(1)), 1);
+        new ListPublisher(people(1)).subscribe(subscriber);
+        ListPublisher second = new ListPublisher(people(1));
+        second.subscribe(subscriber);
+
+        assertThat(second.cancelled, is(true));
+        assertThat(second.requests.isEmpty(), is(true));
+        assertThat(subscriber.getResult().get().isSuccessful(), is(true));
+    }
+
+    @Test
+    public void testError() {
+        AvroVerifyingSubscriber<Person> subscriber = new AvroVerifyingSubscriber<Person>(avroStreamVerifier(people(1)), 1);
+        // nothing is published before the error
+        subscriber.onSubscribe(new AvroVerifyingSubscriber.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(new IllegalStateException("broken pipe"));
+
+        assertThat(subscriber.getResult().isCompletedExceptionally(), is(true));
+    }
+
+    private static List<Person> people(int count) {
+        List<Person> people = Lists.newArrayList();
+        for (long i = 0; i < count; i++) {
+            people.add(johnSmith().setAge(i).build());
+        }
+        return people;
+    }
+
+    /**
+     * Publishes a list on the calling thread, honouring demand.
+     */
+    private static class ListPublisher {
+        final List<Long> requests = Lists.newArrayList();
+        final Iterator<Person> records;
+        boolean cancelled;
+
+        ListPublisher(List<Person> records) {
+            this.records = records.iterator();
+        }
+
+        void subscribe(AvroVerifyingSubscriber<Person> subscriber) {
+            subscriber.onSubscribe(new ListSubscription(subscriber));
+        }
+
+        class ListSubscription implements AvroVerifyingSubscriber.Subscription {
+            private final AvroVerifyingSubscriber<Person> subscriber;
+            private long demand;
+            private boolean emitting;
+
+            ListSubscription(AvroVerifyingSubscriber<Person> subscriber) {
+                this.subscriber = subscriber;
+            }
+
+            @Override
+            public void request(long n) {
+                requests.add(n);
+                demand += n;
+                if (emitting) {
+                    return;
+                }
+                emitting = true;
+                while (demand > 0 && !cancelled && records.hasNext()) {
+                    demand--;
+                    subscriber.onNext(records.next());
+                }
+                if (!cancelled && !records.hasNext()) {
+                    cancelled = true;
+                    subscriber.onComplete();
+                }
+                emitting = false;
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import static com.byhiras.avro.AvroMatchers.excludeFields;
+import static com.byhiras.avro.AvroMatchers.excludePaths;
+import static com.byhiras.avro.BinaryRecordMatcherTest.encode;
+import static com.byhiras.avro.IsAvroObjectEqualTest.buildPhoneNumbers;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.generic.IndexedRecord;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableList;
+
+public class BinaryRecordComparatorTest {
+    private final BinaryRecordComparator comparator = new BinaryRecordComparator(Person.getClassSchema(), new Options());
+
+    @Test
+    public void testFirstDifference() throws IOException {
+        byte[] expected = encode(johnSmith().setHeight(1.8D).build());
+
+        assertThat(comparator.firstDifference(expected, encode(johnSmith().setHeight(1.8D).build())), nullValue());
+        assertThat(comparator.firstDifference(expected, encode(johnSmith().setHeight(1.8000000001D).build())), nullValue());
+        assertThat(comparator.firstDifference(expected, encode(johnSmith().setHeight(1.81D).build())),
+                equalTo((Object) ImmutableList.of("height")));
+        assertThat(comparator.firstDifference(expected, encode(johnSmith().setHeight(null).build())),
+                equalTo((Object) ImmutableList.of("height")));
+        assertThat(comparator.firstDifference(expected, encode(johnSmith().setFirstName("Jim").setLastName("Jones").build())),
+                equalTo((Object) ImmutableList.of("firstName")));
+        assertThat(comparator.firstDifference(expected, encode(johnSmith().setHeight(1.8D)
+                .setTelephoneNumbers(buildPhoneNumbers(PhoneNumberType.HOME, "12345", PhoneNumberType.MOBILE, "07655")).build())),
+                equalTo((Object) ImmutableList.of("telephoneNumbers", "1", "digits")));
+        assertThat(comparator.firstDifference(expected, Arrays.copyOf(expected, expected.length + 1)),
+                equalTo((Object) ImmutableList.of()));
+    }
+
+    @Test
+    public void testMaps() throws IOException {
+        Map<String, String> family = new LinkedHashMap<String, String>();
+        family.put("Sister", "Jane Smith");
+        family.put("Brother", "James Smith");
+        Map<String, String> reordered = new LinkedHashMap<String, String>();
+        reordered.put("Brother", "James Smith");
+        reordered.put("Sister", "Jane Smith");
+        byte[] expected = encode(johnSmith().setFamilyMembers(family).build());
+        byte[] actual = encode(johnSmith().setFamilyMembers(reordered).build());
+
+        assertThat(Arrays.equals(expected, actual), is(false));
+        assertThat(comparator.firstDifference(expected, actual), nullValue());
+
+        reordered.put("Brother", "Jim Smith");
+        assertThat(comparator.firstDifference(expected, encode(johnSmith().setFamilyMembers(reordered).build())),
+                equalTo((Object) ImmutableList.of("familyMembers", "Brother")));
+        reordered.remove("Brother");
+        assertThat(comparator.firstDifference(expected, encode(johnSmith().setFamilyMembers(reordered).build())),
+                equalTo((Object) ImmutableList.of("familyMembers", "Brother")));
+    }
+
+    @Test
+    public void testOptions() throws IOException {
+        byte[] expected = encode(johnSmith().build());
+        byte[] actual = encode(johnSmith().setFirstName("Jim").setTelephoneNumbers(buildPhoneNumbers(
+                PhoneNumberType.WORK, "23456",
+                PhoneNumberType.HOME, "12345",
+                PhoneNumberType.MOBILE, "07654")).build());
+
+        assertThat(comparator.matches(expected, actual), is(false));
+        assertThat(new BinaryRecordComparator(Person.getClassSchema(), new Options().setIgnoreArrayOrder(true))
+                .firstDifference(expected, actual), equalTo((Object) ImmutableList.of("firstName")));
+        assertThat(new BinaryRecordComparator(Person.getClassSchema(), new Options().setExcluder(excludeFields("firstName")))
+                .firstDifference(expected, actual), equalTo((Object) ImmutableList.of("telephoneNumbers", "0", "type")));
+        assertThat(new BinaryRecordComparator(Person.getClassSchema(), new Options().setIgnoreArrayOrder(true)
+                .setExcluder(excludeFields("firstName"))).matches(expected, actual), is(true));
+        assertThat(new BinaryRecordComparator(Person.getClassSchema(), new Options().setIgnoreArrayOrder(true)
+                .addCustomMatcher(ImmutableList.of("firstName"), Matchers.startsWith("J"))).matches(expected, actual), is(true));
+        // a custom matcher is applied even when the encodings are equal
+        assertThat(new BinaryRecordComparator(Person.getClassSchema(), new Options()
+                .addCustomMatcher(ImmutableList.of("firstName"), Matchers.startsWith("X"))).matches(expected, expected), is(false));
+    }
+
+    @Test
+    public void testRandomRecords() throws IOException {
+        for (int seed = 0; seed < 200; seed++) {
+            RandomAvroGenerator generator = new RandomAvroGenerator(seed);
+            IndexedRecord record = generator.generateRecord(generator.generateSchema());
+            BinaryRecordComparator randomComparator = new BinaryRecordComparator(record.getSchema(), new Options());
+            // builds the paths as it goes, rather than only for the difference
+            BinaryRecordComparator pathComparator = new BinaryRecordComparator(record.getSchema(),
+                    new Options().setExcluder(excludePaths("no.such.path")));
+            byte[] expected = encode(record);
+
+            assertThat("seed " + seed, randomComparator.firstDifference(expected, encode(record)), nullValue());
+            for (int i = 0; i < 5; i++) {
+                RandomAvroGenerator.Mutation<IndexedRecord> mutation = generator.mutate(record);
+                byte[] actual = encode(mutation.getRecord());
+                List<String> difference = randomComparator.firstDifference(expected, actual);
+                assertThat("seed " + seed + " path " + mutation.getFieldPath(), difference, notNullValue());
+                assertThat("seed " + seed + " path " + mutation.getFieldPath(), pathComparator.firstDifference(expected, actual),
+                        equalTo(difference));
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+import static com.byhiras.avro.AvroMatchers.avroBinaryEqualTo;
+import static com.byhiras.avro.AvroMatchers.excludeFields;
+import static com.byhiras.avro.IsAvroObjectEqualTest.buildPhoneNumbers;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.hamcrest.Matcher;
+import org.hamcrest.Matchers;
+import org.hamcrest.StringDescription;
+import org.junit.Test;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableList;
+
+public class BinaryRecordMatcherTest {
+    @Test
+    public void testMatches() throws IOException {
+        Matcher<Object> matcher = avroBinaryEqualTo(johnSmith().setHeight(1.8D).build());
+
+        assertThat(matcher.matches(encode(johnSmith().setHeight(1.8D).build())), is(true));
+        assertThat(matcher.matches(ByteBuffer.wrap(encode(johnSmith().setHeight(1.8000000001D).build()))), is(true));
+        assertThat(matcher.matches(encode(johnSmith().setHeight(1.81D).build())), is(false));
+        assertThat(matcher.matches(encode(johnSmith().setFirstName("Jim").build())), is(false));
+        assertThat(matcher.matches(encode(johnSmith().setHeight(null).build())), is(false));
+        assertThat(matcher.matches(encode(johnSmith().setTelephoneNumbers(buildPhoneNumbers(PhoneNumberType.HOME, "12345")).build())), is(false));
+        assertThat(matcher.matches(johnSmith().build()), is(false));
+    }
+
+    @Test
+    public void testStrings() throws IOException {
+        for (String name : ImmutableList.of("", "J", "Jöhn", "ジョン", "😀", "John\uD800")) {
+            Matcher<Object> matcher = avroBinaryEqualTo(johnSmith().setFirstName(name).build());
+            assertThat(name, matcher.matches(encode(johnSmith().setFirstName(name).build())), is(true));
+            assertThat(name, matcher.matches(encode(johnSmith().setFirstName(name + "x").build())), is(false));
+        }
+    }
+
+    @Test
+    public void testOptions() throws IOException {
+        Person expected = johnSmith().build();
+        Person actual = johnSmith().setFirstName("Jim").setTelephoneNumbers(buildPhoneNumbers(
+                PhoneNumberType.WORK, "23456",
+                PhoneNumberType.HOME, "12345",
+                PhoneNumberType.MOBILE, "07654")).build();
+        byte[] bytes = encode(actual);
+
+        assertThat(avroBinaryEqualTo(expected).matches(bytes), is(false));
+        assertThat(avroBinaryEqualTo(expected, new Options().setIgnoreArrayOrder(true).setExcluder(excludeFields("firstName"))).matches(bytes), is(true));
+        assertThat(avroBinaryEqualTo(expected, new Options().setIgnoreArrayOrder(true)
+                .addCustomMatcher(ImmutableList.of("firstName"), Matchers.startsWith("J"))).matches(bytes), is(true));
+    }
+
+    @Test
+    public void testDescribeMismatch() throws IOException {
+        Matcher<Object> matcher = avroBinaryEqualTo(johnSmith().build());
+        byte[] bytes = encode(johnSmith().setFirstName("Jim").build());
+
+        assertThat(describeMismatch(matcher, bytes), equalTo("firstName Expected: \"John\" but: was \"Jim\""));
+        assertThat(describeMismatch(matcher, Arrays.copyOf(bytes, bytes.length - 2)), startsWith("could not be decoded"));
+        byte[] trailing = Arrays.copyOf(encode(johnSmith().build()), encode(johnSmith().build()).length + 1);
+        assertThat(matcher.matches(trailing), is(false));
+        assertThat(describeMismatch(matcher, trailing), equalTo("had 1 bytes after the record"));
+        assertThat(StringDescription.toString(matcher), startsWith("binary encoding of Person: "));
+    }
+
+    @Test
+    public void testRandomRecords() throws IOException {
+        for (int seed = 0; seed < 200; seed++) {
+            RandomAvroGenerator generator = new RandomAvroGenerator(seed);
+            IndexedRecord record = generator.generateRecord(generator.generateSchema());
+            Matcher<Object> matcher = avroBinaryEqualTo(record);
+
+            assertThat("seed " + seed, matcher.matches(encode(record)), is(true));
+            for (int i = 0; i < 5; i++) {
+                RandomAvroGenerator.Mutation<IndexedRecord> mutation = generator.mutate(record);
+                assertThat("seed " + seed + " path " + mutation.getFieldPath(), matcher.matches(encode(mutation.getRecord())), is(false));
+            }
+        }
+    }
+
+    static byte[] encode(IndexedRecord record) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+        new SpecificDatumWriter<IndexedRecord>(record.getSchema()).write(record, encoder);
+        encoder.flush();
+        return out.toByteArray();
+    }
+
+    private static String describeMismatch(Matcher<?> matcher, Object item) {
+        StringDescription description = new StringDescription();
+        matcher.describeMismatch(item, description);
+        return description.toString();
+    }
+}
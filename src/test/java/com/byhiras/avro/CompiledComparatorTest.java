@@ -0,0 +1,118 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+import static com.byhiras.avro.AvroMatchers.avroContains;
+import static com.byhiras.avro.AvroMatchers.avroEqualTo;
+import static com.byhiras.avro.AvroMatchers.excludeFields;
+import static com.byhiras.avro.IsAvroObjectEqualTest.buildPhoneNumbers;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.util.List;
+
+import org.apache.avro.generic.IndexedRecord;
+import org.hamcrest.Matcher;
+import org.hamcrest.Matchers;
+import org.hamcrest.StringDescription;
+import org.junit.Test;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class CompiledComparatorTest {
+    @Test
+    public void testMatches() {
+        Person expected = johnSmith().setHeight(1.8D).build();
+        CompiledComparator comparator = compile(expected, new Options());
+
+        assertThat(comparator.matches(johnSmith().setHeight(1.8000000001D).build()), is(true));
+        assertThat(comparator.matches(johnSmith().setHeight(1.81D).build()), is(false));
+        assertThat(comparator.matches(johnSmith().setFirstName("Jim").build()), is(false));
+        assertThat(comparator.matches(johnSmith().setTelephoneNumbers(buildPhoneNumbers(PhoneNumberType.HOME, "12345")).build()), is(false));
+        assertThat(comparator.matches(johnSmith().setFamilyMembers(null).build()), is(false));
+        assertThat(comparator.matches(null), is(false));
+    }
+
+    @Test
+    public void testAgreesWithMatcher() {
+        Person expected = johnSmith().build();
+        List<Person> actuals = Lists.newArrayList(
+                johnSmith().build(),
+                johnSmith().setFirstName(null).build(),
+                johnSmith().setGender(Gender.FEMALE).build(),
+                johnSmith().setAge(22L).build(),
+                johnSmith().setHeight(2D).build(),
+                johnSmith().setTelephoneNumbers(buildPhoneNumbers(
+                        PhoneNumberType.MOBILE, "07654",
+                        PhoneNumberType.HOME, "12345",
+                        PhoneNumberType.WORK, "23456")).build());
+        Person extraKey = johnSmith().build();
+        extraKey.getFamilyMembers().put("Brother", "James");
+        actuals.add(extraKey);
+        Person county = johnSmith().build();
+        county.getAddress().setCounty("Somerset");
+        actuals.add(county);
+
+        List<Options> optionsList = ImmutableList.of(
+                new Options(),
+                new Options().setIgnoreArrayOrder(true),
+                new Options().setExcluder(excludeFields("county")),
+                new Options().addCustomMatcher(ImmutableList.of("firstName"), Matchers.anything()));
+
+        for (Options options : optionsList) {
+            Matcher<IndexedRecord> interpreted = avroEqualTo((IndexedRecord) expected, options);
+            Matcher<IndexedRecord> compiled = avroEqualTo((IndexedRecord) expected, options.setCompiled(true));
+            for (Person actual : actuals) {
+                assertThat(actual.toString(), compiled.matches(actual), is(interpreted.matches(actual)));
+                assertThat(describeMismatch(compiled, actual), equalTo(describeMismatch(interpreted, actual)));
+            }
+        }
+    }
+
+    @Test
+    public void testContains() {
+        List<Person> expected = Lists.newArrayList(johnSmith().build(), johnSmith().setFirstName("Jim").build());
+        Matcher<Iterable<? extends Person>> matcher = avroContains(expected, new Options().setCompiled(true));
+
+        assertThat(Lists.newArrayList(johnSmith().build(), johnSmith().setFirstName("Jim").build()), matcher);
+        List<Person> actual = Lists.newArrayList(johnSmith().build(), johnSmith().setFirstName("Jason").build());
+        assertThat(matcher.matches(actual), is(false));
+        assertThat(describeMismatch(matcher, actual), startsWith("1.firstName Expected: \"Jim\" but: was \"Jason\""));
+    }
+
+    @Test
+    public void testNotCompiledWithSchemaResolution() {
+        assertThat(compile(johnSmith().build(), new Options().setSchemaResolution(true)) == null, is(true));
+    }
+
+    private static CompiledComparator compile(Person expected, Options options) {
+        Object matcher = IsAvroObjectEqual.createMatcher(Person.getClassSchema(), expected, ImmutableList.<String> of(), options);
+        return CompiledComparator.compile(expected, (CompiledComparator.Composite) matcher, options);
+    }
+
+    private static String describeMismatch(Matcher<?> matcher, Object actual) {
+        StringDescription description = new StringDescription();
+        matcher.describeMismatch(actual, description);
+        return description.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class GoldenSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testVerifyReadsOnlyBlocksOfKeys() throws IOException {
+        File file = folder.newFile();
+        try (GoldenSnapshotWriter<Person> writer = new GoldenSnapshotWriter<Person>(file, Person.getClassSchema(),
+                ImmutableList.of("email"), 100)) {
+            for (int i = 0; i < 10000; i++) {
+                writer.append(person(i).build());
+            }
+        }
+
+        GoldenSnapshotReader<Person> reader = new GoldenSnapshotReader<Person>(file);
+        assertThat(reader.getBlockCount(), is(100));
+        assertThat(reader.getKeyPath(), equalTo((List<String>) ImmutableList.of("email")));
+
+        List<Person> actual = Lists.newArrayList(person(9999).build(), person(17).build(), person(5000).build());
+        AvroStreamVerifier.Result result = reader.verify(actual, new Options());
+        assertThat(result.toString(), equalTo("matched: 3, missing: 0, unexpected: 0"));
+        // three blocks at most, and the block before each key
+        assertThat(reader.getRecordsRead(), lessThan(600L));
+    }
+
+    @Test
+    public void testMismatches() throws IOException {
+        File file = folder.newFile();
+        GoldenSnapshotWriter.write(file, ImmutableList.of("email"),
+                ImmutableList.of(person(2).build(), person(1).build(), person(1).setAge(7L).build(), person(3).build()));
+
+        GoldenSnapshotReader<Person> reader = new GoldenSnapshotReader<Person>(file);
+        assertThat(reader.get(email(1)).size(), is(2));
+        assertThat(reader.get("nobody").isEmpty(), is(true));
+
+        List<Person> actual = Lists.newArrayList(person(1).build(), person(3).setFirstName("Jim").build(), person(4).build());
+        AvroStreamVerifier.Result result = reader.verify(actual, new Options());
+        assertThat(result.isSuccessful(), is(false));
+        assertThat(result.getMatchedCount(), is(1L));
+        assertThat(result.getPendingCount(), is(1L));
+        assertThat(result.getUnexpectedCount(), is(2L));
+        String description = result.toString();
+        assertThat(description, description.contains(email(1) + "#1 Expected: "), is(true));
+        assertThat(description, description.contains(email(3) + ".firstName Expected: \"John\""), is(true));
+        assertThat(description, description.contains(email(4) + " was not expected"), is(true));
+    }
+
+    @Test
+    public void testKeyStraddlingBlocks() throws IOException {
+        File file = folder.newFile();
+        try (GoldenSnapshotWriter<Person> writer = new GoldenSnapshotWriter<Person>(file, Person.getClassSchema(),
+                ImmutableList.of("email"), 2)) {
+            writer.append(person(1).build());
+            for (long i = 0; i < 5; i++) {
+                writer.append(person(2).setAge(i).build());
+            }
+        }
+
+        GoldenSnapshotReader<Person> reader = new GoldenSnapshotReader<Person>(file);
+        List<Person> records = reader.get(email(2));
+        assertThat(records.size(), is(5));
+        assertThat(records.get(0).getAge(), is(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAppendOutOfOrder() throws IOException {
+        try (GoldenSnapshotWriter<Person> writer = new GoldenSnapshotWriter<Person>(folder.newFile(), Person.getClassSchema(),
+                ImmutableList.of("email"))) {
+            writer.append(person(2).build());
+            writer.append(person(1).build());
+        }
+    }
+
+    private static Person.Builder person(int id) {
+        return johnSmith().setEmail(email(id));
+    }
+
+    private static String email(int id) {
+        return String.format("person%05d@acme.com", id);
+    }
+}
@@ -0,0 +1,164 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import static com.byhiras.avro.AvroMatchers.avroEqualTo;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Set;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.util.Utf8;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.junit.Test;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
+
+public class IgnoreRepresentationTest {
+    /**
+     * Person schema without the String type hints, so that strings are read as {@link Utf8}.
+     */
+    private static final Schema GENERIC_PERSON = new Schema.Parser().parse(
+            Person.SCHEMA$.toString().replace(",\"avro.java.string\":\"String\"", ""));
+
+    @Test
+    public void testSpecificMatchesGeneric() throws IOException {
+        Person expected = johnSmith().build();
+        GenericRecord actual = toGeneric(expected);
+        assertThat(actual.get("firstName"), instanceOf(Utf8.class));
+
+        assertThat(actual, avroEqualTo((IndexedRecord) expected, new Options().setIgnoreRepresentation(true)));
+        assertThat(avroEqualTo((IndexedRecord) expected).matches(actual), is(false));
+    }
+
+    @Test
+    public void testGenericMatchesSpecific() throws IOException {
+        Person actual = johnSmith().build();
+        GenericRecord expected = toGeneric(actual);
+
+        assertThat(actual, avroEqualTo((IndexedRecord) expected, new Options().setIgnoreRepresentation(true)));
+    }
+
+    @Test
+    public void testFieldOrderInAnyOrder() {
+        Schema ab = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"R\", \"fields\": ["
+                + "{\"name\": \"a\", \"type\": \"int\"}, {\"name\": \"b\", \"type\": \"int\"}]}");
+        Schema ba = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"R\", \"fields\": ["
+                + "{\"name\": \"b\", \"type\": \"int\"}, {\"name\": \"a\", \"type\": \"int\"}]}");
+        GenericRecord expected = new GenericData.Record(ab);
+        expected.put("a", 1);
+        expected.put("b", 2);
+        GenericRecord actual = new GenericData.Record(ba);
+        actual.put("a", 1);
+        actual.put("b", 2);
+        Options options = new Options().setIgnoreRepresentation(true);
+
+        assertThat(avroEqualTo((IndexedRecord) expected, options).matches(actual), is(true));
+        AvroStreamVerifier<IndexedRecord> verifier = AvroMatchers.avroStreamVerifierInAnyOrder(
+                ImmutableList.<IndexedRecord> of(expected), options);
+        assertThat(verifier.offer(actual), is(true));
+        AvroExpectationIndex<IndexedRecord> index = AvroMatchers.avroExpectationIndex();
+        index.add(expected, options);
+        assertThat(index.indexOf(actual), is(0));
+    }
+
+    @Test
+    public void testFingerprintsDependOnValues() throws IOException {
+        Schema ab = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"R\", \"fields\": ["
+                + "{\"name\": \"a\", \"type\": \"int\"}, {\"name\": \"b\", \"type\": \"string\"}]}");
+        Schema ba = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"R\", \"fields\": ["
+                + "{\"name\": \"b\", \"type\": \"string\"}, {\"name\": \"a\", \"type\": \"int\"}]}");
+        Options options = new Options().setIgnoreRepresentation(true);
+        RecordFingerprinter fingerprinter = new RecordFingerprinter(options);
+
+        Set<Long> fingerprints = Sets.newHashSet();
+        for (int i = 0; i < 100; i++) {
+            GenericRecord expected = new GenericData.Record(ab);
+            expected.put("a", i);
+            expected.put("b", "name" + i);
+            fingerprints.add(fingerprinter.fingerprint(expected));
+
+            GenericRecord actual = new GenericData.Record(ba);
+            actual.put("b", new Utf8("name" + i));
+            actual.put("a", i);
+            assertThat(Longs.contains(fingerprinter.candidateFingerprints(actual), fingerprinter.fingerprint(expected)), is(true));
+        }
+        assertThat(fingerprints.size(), is(100));
+
+        Person person = johnSmith().build();
+        GenericRecord generic = toGeneric(person);
+        assertThat(Longs.contains(fingerprinter.candidateFingerprints(generic), fingerprinter.fingerprint(person)), is(true));
+        assertThat(fingerprinter.fingerprint(johnSmith().setFirstName("Jim").build()), not(fingerprinter.fingerprint(person)));
+    }
+
+    @Test
+    public void testMismatches() throws IOException {
+        Person expected = johnSmith().build();
+        GenericRecord actual = toGeneric(johnSmith().setFirstName("James").setGender(Gender.FEMALE).build());
+        ((GenericRecord) ((GenericData.Array<?>) actual.get("telephoneNumbers")).get(1)).put("digits", new Utf8("01234"));
+
+        Matcher<IndexedRecord> matcher = avroEqualTo((IndexedRecord) expected, new Options().setIgnoreRepresentation(true));
+        assertThat(matcher.matches(actual), is(false));
+
+        StringDescription description = new StringDescription();
+        matcher.describeMismatch(actual, description);
+        assertThat(description.toString(), equalTo("firstName Expected: \"John\" but: was \"James\"\n"
+                + "gender Expected: <MALE> but: was <FEMALE>\n"
+                + "telephoneNumbers.1.digits Expected: \"07654\" but: was \"01234\""));
+    }
+
+    @Test
+    public void testMapKeys() throws IOException {
+        Person expected = johnSmith().build();
+        GenericRecord actual = toGeneric(expected);
+        expected.getFamilyMembers().put("Brother", "James");
+
+        Matcher<IndexedRecord> matcher = avroEqualTo((IndexedRecord) expected, new Options().setIgnoreRepresentation(true));
+        StringDescription description = new StringDescription();
+        matcher.describeMismatch(actual, description);
+        assertThat(description.toString(), equalTo("familyMembers.Brother Expected: \"James\" but: was null"));
+    }
+
+    private static GenericRecord toGeneric(Person person) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(bytes, null);
+        new SpecificDatumWriter<Person>(Person.SCHEMA$).write(person, encoder);
+        encoder.flush();
+        return new GenericDatumReader<GenericRecord>(Person.SCHEMA$, GENERIC_PERSON)
+                .read(null, DecoderFactory.get().binaryDecoder(bytes.toByteArray(), null));
+    }
+}
@@ -30,6 +30,10 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.hamcrest.Matcher;
 import org.hamcrest.StringDescription;
@@ -369,6 +373,46 @@ public class IsAvroObjectEqualTest {
         assertThat(actual, isAvroObjectEqualTo(expected, ImmutableSet.of("countryId", "age")));
     }
 
+    @Test(expected = IllegalStateException.class)
+    public void testFrozenOptions_Immutable() {
+        Options options = new Options().setIgnoreArrayOrder(true).freeze();
+
+        assertThat(options.isFrozen(), is(true));
+        assertThat(options.isIgnoreArrayOrder(), is(true));
+        assertThat(options.freeze(), sameInstance(options));
+        options.setIgnoreArrayOrder(false);
+    }
+
+    @Test
+    public void testFrozenOptions_SharedMatcher() throws Exception {
+        actual.getAddress().setCounty("Somerset");
+        final Person mismatched = johnSmith().setFirstName("James").build();
+        final Matcher<?> matcher = avroObjectEqualTo(expected, new Options()
+                .setExcluder(AvroMatchers.excludeFields("county"))
+                .freeze());
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Boolean>> results = Lists.newArrayList();
+            for (int i = 0; i < 1000; i++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        StringDescription description = new StringDescription();
+                        matcher.describeMismatch(mismatched, description);
+                        return matcher.matches(actual) && !matcher.matches(mismatched)
+                                && description.toString().equals("firstName Expected: \"John\" but: was \"James\"");
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get(), is(true));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     private void assertMismatchedAndDescriptionEqualTo(Matcher<?> matcher, String description) {
         assertThat(matcher.matches(actual), is(false));
 
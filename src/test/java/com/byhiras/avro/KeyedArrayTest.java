@@ -0,0 +1,112 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import static com.byhiras.avro.AvroMatchers.avroBinaryEqualTo;
+import static com.byhiras.avro.AvroMatchers.avroEqualTo;
+import static com.byhiras.avro.AvroMatchers.avroStreamVerifierInAnyOrder;
+import static com.byhiras.avro.IsAvroObjectEqualTest.buildPhoneNumbers;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.junit.Test;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class KeyedArrayTest {
+    private final Options options = new Options().setArrayKey(ImmutableList.of("telephoneNumbers"), ImmutableList.of("digits"));
+
+    @Test
+    public void testMatchesInAnyOrder() throws IOException {
+        Person expected = johnSmith().build();
+        Person actual = johnSmith().setTelephoneNumbers(buildPhoneNumbers(
+                PhoneNumberType.WORK, "23456",
+                PhoneNumberType.HOME, "12345",
+                PhoneNumberType.MOBILE, "07654")).build();
+
+        assertThat(avroEqualTo(expected).matches(actual), is(false));
+        assertThat(avroEqualTo(expected, options).matches(actual), is(true));
+        assertThat(avroBinaryEqualTo(expected, options).matches(BinaryRecordMatcherTest.encode(actual)), is(true));
+    }
+
+    @Test
+    public void testDescribeMismatch() {
+        Person expected = johnSmith().build();
+        Person actual = johnSmith().setTelephoneNumbers(buildPhoneNumbers(
+                PhoneNumberType.WORK, "12345",
+                PhoneNumberType.HOME, "99999",
+                PhoneNumberType.MOBILE, "07654",
+                PhoneNumberType.MOBILE, "07654")).build();
+        Matcher<Person> matcher = avroEqualTo(expected, options);
+
+        assertThat(matcher.matches(actual), is(false));
+        StringDescription description = new StringDescription();
+        matcher.describeMismatch(actual, description);
+        assertThat(description.toString(), equalTo("telephoneNumbers.12345.type Expected: <HOME> but: was <WORK>\n"
+                + "telephoneNumbers was missing keys: [\"23456\"]\n"
+                + "telephoneNumbers had additional keys: [\"07654#1\",\"99999\"]"));
+    }
+
+    @Test
+    public void testLargeArrays() {
+        Random random = new Random(0);
+        List<PhoneNumber> numbers = Lists.newArrayList();
+        for (int i = 0; i < 20000; i++) {
+            numbers.add(new PhoneNumber(PhoneNumberType.values()[random.nextInt(3)], Integer.toString(i)));
+        }
+        List<PhoneNumber> shuffled = Lists.newArrayList(numbers);
+        Collections.shuffle(shuffled, random);
+        Person expected = johnSmith().setTelephoneNumbers(numbers).build();
+        Person actual = johnSmith().setTelephoneNumbers(shuffled).build();
+
+        assertThat(avroEqualTo(expected, options).matches(actual), is(true));
+        shuffled.set(5, new PhoneNumber(PhoneNumberType.WORK, "x"));
+        assertThat(avroEqualTo(expected, options).matches(actual), is(false));
+    }
+
+    @Test
+    public void testUnorderedVerifier() {
+        List<Person> expected = Lists.newArrayList();
+        List<Person> actual = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            expected.add(johnSmith().setAge((long) i).setTelephoneNumbers(buildPhoneNumbers(
+                    PhoneNumberType.HOME, "12345",
+                    PhoneNumberType.MOBILE, Integer.toString(i))).build());
+            actual.add(0, johnSmith().setAge((long) i).setTelephoneNumbers(buildPhoneNumbers(
+                    PhoneNumberType.MOBILE, Integer.toString(i),
+                    PhoneNumberType.HOME, "12345")).build());
+        }
+
+        AvroStreamVerifier<Person> verifier = avroStreamVerifierInAnyOrder(expected, options);
+        for (Person person : actual) {
+            verifier.offer(person);
+        }
+        assertThat(verifier.finish().toString(), equalTo("matched: 100, missing: 0, unexpected: 0"));
+    }
+}
@@ -0,0 +1,93 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+import static com.byhiras.avro.AvroMatchers.avroContains;
+import static com.byhiras.avro.AvroMatchers.avroEqualTo;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.junit.Test;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.byhiras.avro.MatchListener.Budget;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+public class MatchBudgetTest {
+    @Test
+    public void testNodeBudget() {
+        Person person = johnSmith().setFamilyMembers(family(10000)).build();
+        MatchMetrics metrics = new MatchMetrics();
+        Matcher<Person> matcher = avroEqualTo(person, new Options().setNodeBudget(1000).setMatchListener(metrics));
+
+        assertThat(matcher.matches(person), is(false));
+        assertThat(metrics.getBudgetExceededCount(Budget.NODES), is(1L));
+        assertThat(metrics.getBudgetExceededCount(Budget.DEADLINE), is(0L));
+        assertThat(describeMismatch(matcher, person), startsWith("node budget of 1000 exceeded at path familyMembers."));
+        assertThat(describeMismatch(matcher, person).endsWith(" after 1001 nodes"), is(true));
+
+        assertThat(avroEqualTo(person, new Options().setNodeBudget(100000)).matches(person), is(true));
+    }
+
+    @Test
+    public void testDeadline() {
+        Person person = johnSmith().setFamilyMembers(family(100000)).build();
+        Matcher<Person> matcher = avroEqualTo(person, new Options().setDeadline(1, TimeUnit.NANOSECONDS));
+
+        assertThat(matcher.matches(person), is(false));
+        assertThat(describeMismatch(matcher, person), startsWith("deadline of 1 ns exceeded at path familyMembers."));
+        assertThat(avroEqualTo(person, new Options().setDeadline(1, TimeUnit.MINUTES)).matches(person), is(true));
+    }
+
+    @Test
+    public void testBudgetPerMatch() {
+        List<Person> people = ImmutableList.of(johnSmith().build(), johnSmith().build());
+        Options options = new Options().setNodeBudget(40);
+
+        // the budget applies to the whole collection, and is reset for each match
+        assertThat(avroEqualTo(people.get(0), options).matches(people.get(0)), is(true));
+        Matcher<Iterable<? extends Person>> matcher = avroContains(people, options);
+        assertThat(matcher.matches(people), is(false));
+        assertThat(matcher.matches(people), is(false));
+        assertThat(describeMismatch(matcher, people), equalTo(describeMismatch(matcher, people)));
+    }
+
+    private static Map<String, String> family(int size) {
+        Map<String, String> family = Maps.newHashMap();
+        for (int i = 0; i < size; i++) {
+            family.put("member" + i, "name" + i);
+        }
+        return family;
+    }
+
+    private static String describeMismatch(Matcher<?> matcher, Object actual) {
+        StringDescription description = new StringDescription();
+        matcher.describeMismatch(actual, description);
+        return description.toString();
+    }
+}
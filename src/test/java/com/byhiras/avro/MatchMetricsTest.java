@@ -0,0 +1,140 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+
+import static com.byhiras.avro.AvroMatchers.avroContains;
+import static com.byhiras.avro.AvroMatchers.avroEqualTo;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.junit.Test;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+public class MatchMetricsTest {
+    @Test
+    public void testMatch() {
+        MatchMetrics metrics = new MatchMetrics();
+        Matcher<Person> matcher = avroEqualTo(johnSmith().build(), new Options().setMatchListener(metrics));
+
+        assertThat(johnSmith().build(), matcher);
+        assertThat(metrics.getMatchCount(), is(1L));
+        assertThat(metrics.getMatchedCount(), is(1L));
+        // the address and three phone numbers, the root record is not a comparison
+        assertThat(metrics.getCompareCount(Schema.Type.RECORD), is(4L));
+        assertThat(metrics.getCompareCount(Schema.Type.ARRAY), is(1L));
+        assertThat(metrics.getCompareCount(Schema.Type.MAP), is(1L));
+        assertThat(metrics.getCompareCount(Schema.Type.ENUM), is(4L));
+        assertThat(metrics.getMismatchedCompareCount(Schema.Type.STRING), is(0L));
+        assertThat(metrics.getShortCircuitCounts().isEmpty(), is(true));
+        assertThat(metrics.toJson(), containsString("\"build\": {\"count\": 1,"));
+    }
+
+    @Test
+    public void testMismatch() {
+        MatchMetrics metrics = new MatchMetrics();
+        Person expected = johnSmith().build();
+        Matcher<Person> matcher = avroEqualTo(expected, new Options().setMatchListener(metrics));
+        Person actual = johnSmith().setFirstName("James").setTelephoneNumbers(IsAvroObjectEqualTest.buildPhoneNumbers(
+                PhoneNumberType.HOME, "12345",
+                PhoneNumberType.MOBILE, "07655",
+                PhoneNumberType.WORK, "23456")).build();
+
+        assertThat(matcher.matches(actual), is(false));
+        assertThat(metrics.getShortCircuitCounts(), equalTo((Object) ImmutableMap.of("", 1L)));
+        assertThat(metrics.getMismatchedCompareCount(Schema.Type.STRING), is(1L));
+
+        assertThat(describeMismatch(matcher, actual), equalTo(describeMismatch(avroEqualTo(expected), actual)));
+        assertThat(metrics.getMismatchCounts(), equalTo((Object) ImmutableMap.of("firstName", 1L, "telephoneNumbers.1.digits", 1L)));
+        assertThat(metrics.getRenderNanos(), greaterThan(0L));
+    }
+
+    @Test
+    public void testContains() {
+        MatchMetrics metrics = new MatchMetrics();
+        List<Person> expected = Lists.newArrayList(johnSmith().build(), johnSmith().setFirstName("Jim").build());
+        Matcher<Iterable<? extends Person>> matcher = avroContains(expected, new Options().setMatchListener(metrics));
+        List<Person> actual = Lists.newArrayList(johnSmith().build(), johnSmith().setFirstName("Jason").build());
+
+        assertThat(matcher.matches(actual), is(false));
+        assertThat(describeMismatch(matcher, actual), equalTo(describeMismatch(avroContains(expected, new Options()), actual)));
+        assertThat(metrics.getMismatchCounts(), hasEntry("1.firstName", 1L));
+    }
+
+    @Test
+    public void testMismatchesWithSink() {
+        MatchMetrics metrics = new MatchMetrics();
+        StringWriter written = new StringWriter();
+        Person expected = johnSmith().build();
+        Person actual = johnSmith().build();
+        for (int i = 0; i < 30; i++) {
+            expected.getFamilyMembers().put("Cousin" + i, "Jim");
+            actual.getFamilyMembers().put("Cousin" + i, "James");
+        }
+        Matcher<Person> matcher = avroEqualTo(expected,
+                new Options().setMatchListener(metrics).setMismatchSink(new JsonLinesMismatchSink(written)));
+
+        assertThat(matcher.matches(actual), is(false));
+        // the description is bounded, but the listener and the sink are told about every mismatch
+        assertThat(describeMismatch(matcher, actual), containsString("\n... 10 more mismatches, all written to writer"));
+        assertThat(metrics.getMismatchCounts().size(), is(30));
+        assertThat(metrics.getMismatchCounts(), hasEntry("familyMembers.Cousin29", 1L));
+        assertThat(written.toString().split("\n").length, is(30));
+    }
+
+    @Test
+    public void testJson() {
+        MatchMetrics metrics = new MatchMetrics();
+        metrics.onMismatch(Lists.newArrayList("familyMembers", "\"Uncle\" Bob"));
+        metrics.onMatch(3, false);
+        metrics.onMatch(1000, true);
+
+        assertThat(metrics.toJson(), equalTo("{\n"
+                + "  \"build\": {\"count\": 0, \"totalNanos\": 0, \"maxNanos\": 0, \"histogram\": {}},\n"
+                + "  \"match\": {\"count\": 2, \"totalNanos\": 1003, \"maxNanos\": 1000, \"histogram\": {\"<=4\": 1, \"<=1024\": 1}},\n"
+                + "  \"matched\": 1,\n"
+                + "  \"render\": {\"count\": 0, \"totalNanos\": 0, \"maxNanos\": 0, \"histogram\": {}},\n"
+                + "  \"compares\": {\n"
+                + "  },\n"
+                + "  \"shortCircuits\": {},\n"
+                + "  \"mismatches\": {\n"
+                + "    \"familyMembers.\\\"Uncle\\\" Bob\": 1\n"
+                + "  },\n"
+                + "  \"budgetsExceeded\": {\"deadline\": 0, \"nodes\": 0}\n"
+                + "}"));
+    }
+
+    private static String describeMismatch(Matcher<?> matcher, Object actual) {
+        StringDescription description = new StringDescription();
+        matcher.describeMismatch(actual, description);
+        return description.toString();
+    }
+}
@@ -0,0 +1,115 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+import static com.byhiras.avro.AvroMatchers.avroEqualTo;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.junit.Test;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableList;
+
+public class MemoizedMatcherTest {
+    @Test
+    public void testRepeatedMatchesCompareOnce() {
+        CountingMatcher counter = new CountingMatcher("John");
+        Matcher<Person> matcher = avroEqualTo(johnSmith().build(), options(counter));
+        Person actual = johnSmith().build();
+
+        assertThat(matcher.matches(actual), is(true));
+        assertThat(matcher.matches(actual), is(true));
+        assertThat(matcher.matches(actual), is(true));
+        assertThat(counter.count, is(1));
+
+        // a different but equal record is compared again
+        assertThat(matcher.matches(johnSmith().build()), is(true));
+        assertThat(counter.count, is(2));
+    }
+
+    @Test
+    public void testMismatchesAreRemembered() {
+        CountingMatcher counter = new CountingMatcher("John");
+        Matcher<Person> matcher = avroEqualTo(johnSmith().build(), options(counter));
+        Person actual = johnSmith().setFirstName("Jim").setAge(22L).build();
+
+        assertThat(matcher.matches(actual), is(false));
+        String description = describeMismatch(matcher, actual);
+        int count = counter.count;
+        assertThat(describeMismatch(matcher, actual), equalTo(description));
+        assertThat(matcher.matches(actual), is(false));
+        assertThat(counter.count, is(count));
+        assertThat(description, equalTo(describeMismatch(avroEqualTo(johnSmith().build(), options(new CountingMatcher("John")).setMemoized(false)), actual)));
+    }
+
+    @Test
+    public void testModifiedRecordIsMatchedAgain() {
+        CountingMatcher counter = new CountingMatcher("John");
+        Matcher<Person> matcher = avroEqualTo(johnSmith().setHeight(1.8D).build(), options(counter));
+        Person actual = johnSmith().setHeight(1.8D).build();
+
+        assertThat(matcher.matches(actual), is(true));
+        actual.setHeight(1.9D);
+        assertThat(matcher.matches(actual), is(false));
+        assertThat(counter.count, is(2));
+        assertThat(describeMismatch(matcher, actual), startsWith("height Expected: a numeric value within"));
+
+        actual.setHeight(1.8D);
+        assertThat(matcher.matches(actual), is(true));
+        assertThat(matcher.matches(actual), is(true));
+        assertThat(counter.count, is(4));
+    }
+
+    private static Options options(CountingMatcher counter) {
+        return new Options().setMemoized(true).addCustomMatcher(ImmutableList.of("firstName"), counter);
+    }
+
+    private static String describeMismatch(Matcher<?> matcher, Object actual) {
+        StringDescription description = new StringDescription();
+        matcher.describeMismatch(actual, description);
+        return description.toString();
+    }
+
+    private static class CountingMatcher extends BaseMatcher<Object> {
+        private final Object expected;
+        int count;
+
+        CountingMatcher(Object expected) {
+            this.expected = expected;
+        }
+
+        @Override
+        public boolean matches(Object item) {
+            count++;
+            return expected.equals(item);
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            description.appendValue(expected);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import static com.byhiras.avro.AvroMatchers.avroEqualTo;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+public class MismatchSinkTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testJsonLines() {
+        StringWriter writer = new StringWriter();
+        Matcher<Person> matcher = avroEqualTo(johnSmith().build(), new Options().setMismatchSink(new JsonLinesMismatchSink(writer)));
+        StringDescription description = new StringDescription();
+        matcher.describeMismatch(johnSmith().setFirstName("Jim \"Jimmy\"\n").build(), description);
+
+        assertThat(description.toString(), equalTo("firstName Expected: \"John\" but: was \"Jim \\\"Jimmy\\\"\\n\""));
+        assertThat(writer.toString(), equalTo(
+                "{\"fieldPath\":[\"firstName\"],\"description\":\"Expected: \\\"John\\\" but: was \\\"Jim \\\\\\\"Jimmy\\\\\\\"\\\\n\\\"\"}\n"));
+    }
+
+    @Test
+    public void testOnlySummaryIsDescribed() throws IOException {
+        File file = folder.newFile("mismatches.jsonl");
+        JsonLinesMismatchSink sink = new JsonLinesMismatchSink(file);
+        Matcher<Person> matcher = avroEqualTo(withFamily(100, "Smith"), new Options().setMismatchSink(sink));
+        StringDescription description = new StringDescription();
+        matcher.describeMismatch(withFamily(100, "Jones"), description);
+
+        assertThat(description.toString().split("\n").length, is(MismatchList.SINK_SUMMARY_SIZE + 1));
+        assertThat(description.toString(), endsWith("\n... 80 more mismatches, all written to " + file.getPath()));
+        assertThat(Files.readLines(file, Charsets.UTF_8).size(), is(100));
+        sink.close();
+    }
+
+    @Test
+    public void testAvroFile() throws IOException {
+        File file = folder.newFile("mismatches.avro");
+        AvroFileMismatchSink sink = new AvroFileMismatchSink(file);
+        Options options = new Options().setMismatchSink(sink);
+        AvroStreamVerifier<Person> verifier = AvroMatchers.avroStreamVerifier(ImmutableList.of(withFamily(30, "Smith")), options);
+        verifier.offer(withFamily(30, "Jones"));
+        assertThat(verifier.finish().toString(), endsWith("\n... 10 more mismatches, all written to " + file.getPath()));
+        sink.close();
+
+        List<GenericRecord> records = Lists.newArrayList();
+        DataFileReader<GenericRecord> reader = new DataFileReader<GenericRecord>(file, new GenericDatumReader<GenericRecord>());
+        try {
+            for (GenericRecord record : reader) {
+                records.add(record);
+            }
+        } finally {
+            reader.close();
+        }
+        assertThat(records.size(), is(30));
+        List<?> fieldPath = (List<?>) records.get(0).get("fieldPath");
+        assertThat(fieldPath.size(), is(3));
+        assertThat(fieldPath.get(0).toString(), equalTo("0"));
+        assertThat(fieldPath.get(1).toString(), equalTo("familyMembers"));
+    }
+
+    private static Person withFamily(int size, String surname) {
+        Map<String, String> family = Maps.newHashMap();
+        for (int i = 0; i < size; i++) {
+            family.put("Member" + i, "Member " + surname);
+        }
+        return johnSmith().setFamilyMembers(family).build();
+    }
+}
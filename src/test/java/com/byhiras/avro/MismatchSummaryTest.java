@@ -0,0 +1,120 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import static com.byhiras.avro.AvroMatchers.avroEqualTo;
+import static com.byhiras.avro.AvroMatchers.avroStreamVerifier;
+import static com.byhiras.avro.IsAvroObjectEqualTest.buildPhoneNumbers;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.util.List;
+
+import org.hamcrest.StringDescription;
+import org.junit.Test;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class MismatchSummaryTest {
+    @Test
+    public void testGroupsRecords() {
+        MismatchSummary summary = MismatchSummary.forRecords(Person.SCHEMA$).setMaxSamples(1);
+        List<Person> expected = Lists.newArrayList();
+        for (int i = 0; i < 1000; i++) {
+            expected.add(johnSmith().build());
+        }
+        AvroStreamVerifier<Person> verifier = avroStreamVerifier(expected, new Options().setMismatchSink(summary));
+        for (int i = 0; i < 1000; i++) {
+            Person actual = johnSmith().build();
+            if (i % 2 == 0) {
+                actual.getAddress().setPostCode("HP7 0BQ");
+            }
+            if (i % 100 == 0) {
+                actual.setTelephoneNumbers(buildPhoneNumbers(
+                        PhoneNumberType.HOME, "12345",
+                        PhoneNumberType.MOBILE, "07655",
+                        PhoneNumberType.WORK, "23456"));
+            }
+            verifier.offer(actual);
+        }
+        verifier.finish();
+
+        assertThat(StringDescription.toString(summary), equalTo(
+                "address.postCode differs in 500 records (e.g. #0, #2, #4, #6, #8...)\n"
+                        + "    expected: \"HP7 0BP\", actual: \"HP7 0BQ\"\n"
+                        + "telephoneNumbers.*.digits differs in 10 records (e.g. #0[1], #100[1], #200[1], #300[1], #400[1]...)\n"
+                        + "    expected: \"07654\", actual: \"07655\""));
+        MismatchSummary.Group group = summary.getGroups().get(0);
+        assertThat(group.getPath(), equalTo("address.postCode"));
+        assertThat(group.getCount(), is(500L));
+    }
+
+    @Test
+    public void testSingleRecord() {
+        MismatchSummary summary = MismatchSummary.forRecord(Person.SCHEMA$);
+        StringDescription description = new StringDescription();
+        Person actual = johnSmith().build();
+        actual.getFamilyMembers().put("Sister", "Jane Jones");
+        avroEqualTo(johnSmith().build(), new Options().setMismatchSink(summary)).describeMismatch(actual, description);
+
+        assertThat(summary.getGroups().size(), is(1));
+        MismatchSummary.Group group = summary.getGroups().get(0);
+        assertThat(group.getPath(), equalTo("familyMembers.*"));
+        assertThat(group.getExamples(), equalTo((List<String>) ImmutableList.of("[Sister]")));
+        assertThat(group.getSamples().get(0)[1], equalTo("\"Jane Jones\""));
+    }
+
+    @Test
+    public void testSamplesAreBounded() {
+        MismatchSummary summary = MismatchSummary.forRecords(Person.SCHEMA$).setMaxExamples(2).setMaxSamples(3);
+        for (int i = 0; i < 10000; i++) {
+            summary.write(ImmutableList.of(Integer.toString(i), "age"), "Expected: <21L> but: was <" + i + "L>", "differs", "<21L>",
+                    "<" + i + "L>");
+        }
+        summary.write(ImmutableList.of("7"), "was not expected");
+
+        List<MismatchSummary.Group> groups = summary.getGroups();
+        assertThat(groups.size(), is(2));
+        assertThat(groups.get(0).getCount(), is(10000L));
+        assertThat(groups.get(0).getExamples().size(), is(2));
+        assertThat(groups.get(0).getSamples().size(), is(3));
+        assertThat(groups.get(1).toString(), equalTo("record was not expected in 1 records (e.g. #7)"));
+    }
+
+    @Test
+    public void testInterleavedRecordsCountedOnce() {
+        MismatchSummary summary = MismatchSummary.forRecords(Person.SCHEMA$);
+        // mismatches of records verified by different threads arrive interleaved
+        for (int element = 0; element < 3; element++) {
+            for (int record = 0; record < 4; record++) {
+                summary.write(ImmutableList.of(Integer.toString(record), "telephoneNumbers", Integer.toString(element), "digits"),
+                        "Expected: \"1\" but: was \"2\"", "differs", "\"1\"", "\"2\"");
+            }
+        }
+        // values are not parsed out of the description
+        summary.write(ImmutableList.of("9", "firstName"), "Expected: \"a but: b\" but: was \"c\"", "differs", "\"a but: b\"", "\"c\"");
+
+        List<MismatchSummary.Group> groups = summary.getGroups();
+        assertThat(groups.get(0).getCount(), is(4L));
+        assertThat(groups.get(1).getSamples().get(0)[0], equalTo("\"a but: b\""));
+    }
+}
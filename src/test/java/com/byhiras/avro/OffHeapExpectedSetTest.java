@@ -0,0 +1,129 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.Lists;
+
+public class OffHeapExpectedSetTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testVerifyInAnyOrder() throws IOException {
+        // small chunks so that records are spread over many of them
+        try (OffHeapExpectedSet<Person> expected = new OffHeapExpectedSet<Person>(Person.getClassSchema(), new Options(), null, 1024)) {
+            assertVerifies(expected);
+        }
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        File file = folder.newFile();
+        try (OffHeapExpectedSet<Person> expected = new OffHeapExpectedSet<Person>(Person.getClassSchema(), new Options(),
+                new RandomAccessFile(file, "rw"), 4096)) {
+            assertVerifies(expected);
+            assertThat(file.length() > 0, is(true));
+        }
+    }
+
+    @Test
+    public void testMismatches() throws IOException {
+        try (OffHeapExpectedSet<Person> expected = new OffHeapExpectedSet<Person>(Person.getClassSchema(), new Options())) {
+            expected.add(johnSmith().build());
+            expected.add(johnSmith().build());
+            expected.add(johnSmith().setFirstName("Jim").build());
+
+            AvroStreamVerifier<Person> verifier = expected.verifier();
+            assertThat(verifier.offer(johnSmith().build()), is(true));
+            assertThat(verifier.offer(johnSmith().build()), is(true));
+            assertThat(verifier.offer(johnSmith().build()), is(false));
+
+            AvroStreamVerifier.Result result = verifier.finish();
+            assertThat(result.isSuccessful(), is(false));
+            assertThat(result.getPendingCount(), is(1L));
+            assertThat(result.toString().startsWith("matched: 2, missing: 1, unexpected: 1\n2 Not matched: "), is(true));
+            assertThat(result.toString().contains("\nNo item matches: Person: {"), is(true));
+            assertThat(result.toString().contains("\"Jim\""), is(true));
+        }
+    }
+
+    @Test
+    public void testDuplicates() throws IOException {
+        Options options = new Options().setExcluder(AvroMatchers.excludePaths("height"));
+        try (OffHeapExpectedSet<Person> expected = new OffHeapExpectedSet<Person>(Person.getClassSchema(), options)) {
+            List<Person> people = Lists.newArrayList();
+            for (long i = 0; i < 2000; i++) {
+                // many copies of a few records, so that matched records must leave the probe sequences of the others
+                Person person = johnSmith().setAge(i % 5).build();
+                people.add(person);
+                expected.add(person);
+            }
+
+            Collections.shuffle(people, new Random(0));
+            AvroStreamVerifier<Person> verifier = expected.verifier();
+            for (Person person : people) {
+                assertThat(verifier.offer(johnSmith().setAge(person.getAge()).setHeight(2.0).build()), is(true));
+            }
+            assertThat(verifier.offer(johnSmith().setAge(0L).build()), is(false));
+            assertThat(verifier.finish().toString().startsWith("matched: 2000, missing: 0, unexpected: 1"), is(true));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddAfterVerifying() throws IOException {
+        try (OffHeapExpectedSet<Person> expected = new OffHeapExpectedSet<Person>(Person.getClassSchema(), new Options())) {
+            expected.take(johnSmith().build());
+            expected.add(johnSmith().build());
+        }
+    }
+
+    private static void assertVerifies(OffHeapExpectedSet<Person> expected) {
+        List<Person> people = Lists.newArrayList();
+        for (long i = 0; i < 3000; i++) {
+            Person person = johnSmith().setAge(i % 1000).setHeight(1.5 + i / 10000.0).build();
+            people.add(person);
+            expected.add(person);
+        }
+        assertThat(expected.size(), is(3000L));
+
+        Collections.shuffle(people, new Random(0));
+        AvroStreamVerifier<Person> verifier = expected.verifier();
+        for (Person person : people) {
+            verifier.offer(person);
+        }
+        AvroStreamVerifier.Result result = verifier.finish();
+        assertThat(result.toString(), equalTo("matched: 3000, missing: 0, unexpected: 0"));
+    }
+}
@@ -0,0 +1,101 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import static com.byhiras.avro.AvroMatchers.avroEqualTo;
+import static com.byhiras.avro.AvroMatchers.excludePaths;
+import static com.byhiras.avro.IsAvroObjectEqualTest.buildPhoneNumbers;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.byhiras.avro.AvroMatchers.Excluder;
+import com.byhiras.avro.AvroMatchers.Options;
+
+public class PathPatternExcluderTest {
+    @Test
+    public void testGlobs() {
+        Excluder excluder = excludePaths("address.*", "**.lastModified", "familyMembers.{Sister,Brother}", "telephoneNumbers.*.dig?ts");
+
+        assertExcluded(excluder, true, "address.county");
+        assertExcluded(excluder, false, "address");
+        assertExcluded(excluder, false, "address.county.name");
+        assertExcluded(excluder, true, "lastModified");
+        assertExcluded(excluder, true, "a.b.c.lastModified");
+        assertExcluded(excluder, false, "a.b.c.lastModifiedBy");
+        assertExcluded(excluder, true, "familyMembers.Sister");
+        assertExcluded(excluder, true, "familyMembers.Brother");
+        assertExcluded(excluder, false, "familyMembers.Mother");
+        assertExcluded(excluder, true, "telephoneNumbers.2.digits");
+        assertExcluded(excluder, false, "telephoneNumbers.2.type");
+        // transitions are cached, so test again
+        assertExcluded(excluder, true, "a.b.c.lastModified");
+        assertExcluded(excluder, false, "familyMembers.Mother");
+    }
+
+    @Test
+    public void testDeepWildcards() {
+        Excluder excluder = excludePaths("a.**", "**.x.**.y", "/line[0-9]+/.**.z");
+
+        assertExcluded(excluder, true, "a");
+        assertExcluded(excluder, true, "a.b.c");
+        assertExcluded(excluder, true, "x.y");
+        assertExcluded(excluder, true, "p.x.q.r.y");
+        assertExcluded(excluder, false, "p.x.q.r.y.s");
+        assertExcluded(excluder, true, "line12.z");
+        assertExcluded(excluder, true, "line1.b.z");
+        assertExcluded(excluder, false, "lines.z");
+    }
+
+    @Test
+    public void testRegexWithDots() {
+        Excluder excluder = excludePaths("/a.c/.b", "/x|y/");
+
+        assertExcluded(excluder, true, "abc.b");
+        assertExcluded(excluder, true, "x");
+        assertExcluded(excluder, true, "y");
+        assertExcluded(excluder, false, "abc");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPattern() {
+        excludePaths("a..b");
+    }
+
+    @Test
+    public void testMatching() {
+        Person expected = johnSmith().build();
+        Person actual = johnSmith().setTelephoneNumbers(buildPhoneNumbers(
+                PhoneNumberType.HOME, "1",
+                PhoneNumberType.MOBILE, "2",
+                PhoneNumberType.WORK, "3")).build();
+        actual.getAddress().setCounty("Somerset");
+
+        assertThat(avroEqualTo(expected).matches(actual), is(false));
+        assertThat(avroEqualTo(expected, new Options().setExcluder(excludePaths("address.county", "**.digits"))).matches(actual), is(true));
+        assertThat(avroEqualTo(expected, new Options().setExcluder(excludePaths("address.county", "*.digits"))).matches(actual), is(false));
+    }
+
+    private static void assertExcluded(Excluder excluder, boolean excluded, String path) {
+        assertThat(path, excluder.isExcluded(null, Arrays.asList(path.split("\\."))), is(excluded));
+    }
+}
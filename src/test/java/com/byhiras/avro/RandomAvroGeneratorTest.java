@@ -0,0 +1,91 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+
+import static com.byhiras.avro.AvroMatchers.avroEqualTo;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.specific.SpecificData;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.junit.Test;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.base.Joiner;
+
+public class RandomAvroGeneratorTest {
+    private static final int SEEDS = 200;
+
+    @Test
+    public void testSameSeedGeneratesSameRecords() {
+        RandomAvroGenerator first = new RandomAvroGenerator(42);
+        RandomAvroGenerator second = new RandomAvroGenerator(42);
+        Schema schema = first.generateSchema();
+
+        assertThat(second.generateSchema(), equalTo(schema));
+        assertThat(second.generateRecord(schema), equalTo(first.generateRecord(schema)));
+    }
+
+    @Test
+    public void testCopiesMatch() {
+        for (int seed = 0; seed < SEEDS; seed++) {
+            RandomAvroGenerator generator = new RandomAvroGenerator(seed);
+            IndexedRecord record = generator.generateRecord(generator.generateSchema());
+            IndexedRecord copy = SpecificData.get().deepCopy(record.getSchema(), record);
+
+            assertThat("seed " + seed, copy, avroEqualTo(record));
+            assertThat("seed " + seed, copy, avroEqualTo(record, new Options().setCompiled(true)));
+        }
+    }
+
+    @Test
+    public void testMutationsAreReportedAtPath() {
+        for (int seed = 0; seed < SEEDS; seed++) {
+            RandomAvroGenerator generator = new RandomAvroGenerator(seed);
+            IndexedRecord record = generator.generateRecord(generator.generateSchema());
+            Matcher<IndexedRecord> matcher = avroEqualTo(record);
+            for (int i = 0; i < 5; i++) {
+                RandomAvroGenerator.Mutation<IndexedRecord> mutation = generator.mutate(record);
+                String path = Joiner.on('.').join(mutation.getFieldPath());
+
+                assertThat("seed " + seed + " path " + path, matcher.matches(mutation.getRecord()), is(false));
+                StringDescription description = new StringDescription();
+                matcher.describeMismatch(mutation.getRecord(), description);
+                assertThat("seed " + seed, description.toString(), startsWith(path + " "));
+            }
+        }
+    }
+
+    @Test
+    public void testSpecificRecords() {
+        RandomAvroGenerator generator = new RandomAvroGenerator(7);
+        IndexedRecord person = generator.generateRecord(Person.SCHEMA$);
+
+        assertThat(person, instanceOf(Person.class));
+        RandomAvroGenerator.Mutation<IndexedRecord> mutation = generator.mutate(person);
+        assertThat(mutation.getRecord(), instanceOf(Person.class));
+        assertThat(mutation.getRecord(), is(not(avroEqualTo(person))));
+    }
+}
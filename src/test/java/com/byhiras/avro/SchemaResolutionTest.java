@@ -0,0 +1,207 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+import static com.byhiras.avro.AvroMatchers.avroEqualTo;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericEnumSymbol;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.util.Utf8;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.junit.Test;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+
+public class SchemaResolutionTest {
+    /**
+     * Person as written by an older writer: reordered fields, an added field, without the email field, with a title
+     * in bytes, an int age, a float height, and an extra gender and phone number type symbol.
+     */
+    private static final Schema PERSON_V2 = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"Person\", "
+            + "\"namespace\": \"com.byhiras.avro\", \"fields\": ["
+            + "{\"name\": \"lastName\", \"type\": [\"null\", \"string\"]}, "
+            + "{\"name\": \"firstName\", \"type\": [\"null\", \"string\"]}, "
+            + "{\"name\": \"nickname\", \"type\": [\"null\", \"string\"]}, "
+            + "{\"name\": \"title\", \"type\": [\"null\", \"bytes\"]}, "
+            + "{\"name\": \"age\", \"type\": [\"null\", \"int\"]}, "
+            + "{\"name\": \"height\", \"type\": [\"null\", \"float\"]}, "
+            + "{\"name\": \"gender\", \"type\": {\"type\": \"enum\", \"name\": \"Gender\", "
+            + "  \"symbols\": [\"MALE\", \"FEMALE\", \"OTHER\"]}}, "
+            + "{\"name\": \"telephoneNumbers\", \"type\": [\"null\", {\"type\": \"array\", \"items\": {\"type\": \"record\", "
+            + "  \"name\": \"PhoneNumber\", \"fields\": ["
+            + "  {\"name\": \"type\", \"type\": {\"type\": \"enum\", \"name\": \"PhoneNumberType\", "
+            + "    \"symbols\": [\"HOME\", \"WORK\", \"MOBILE\", \"FAX\", \"PAGER\"]}}, "
+            + "  {\"name\": \"digits\", \"type\": \"string\"}]}}]}, "
+            + "{\"name\": \"address\", \"type\": [\"null\", {\"type\": \"record\", \"name\": \"Location\", \"fields\": ["
+            + "  {\"name\": \"postCode\", \"type\": [\"null\", \"string\"]}, "
+            + "  {\"name\": \"firstLine\", \"type\": [\"null\", \"string\"]}]}]}, "
+            + "{\"name\": \"familyMembers\", \"type\": [\"null\", {\"type\": \"map\", \"values\": \"string\"}]}]}");
+
+    @Test
+    public void testResolvedMatch() throws IOException {
+        GenericRecord actual = actual();
+        assertThat(actual.get("firstName"), instanceOf(Utf8.class));
+        assertThat(actual.get("title"), instanceOf(ByteBuffer.class));
+        assertThat(actual.get("age"), instanceOf(Integer.class));
+        assertThat(actual.get("height"), instanceOf(Float.class));
+        assertThat(actual.get("gender"), instanceOf(GenericEnumSymbol.class));
+
+        Options options = new Options().setSchemaResolution(true);
+        assertThat(actual, avroEqualTo((IndexedRecord) expected(), options));
+        AvroExpectationIndex<IndexedRecord> index = AvroMatchers.avroExpectationIndex();
+        index.add(johnSmith().setFirstName("Jim").build(), options);
+        index.add(expected(), options);
+        assertThat(index.indexOf(actual), is(1));
+    }
+
+    @Test
+    public void testResolvedMismatch() throws IOException {
+        GenericRecord actual = actual();
+        ((GenericRecord) actual.get("address")).put("firstLine", new Utf8("Low and Under"));
+        actual.put("firstName", new Utf8("James"));
+
+        assertMismatch(actual, "firstName Expected: \"John\" but: was \"James\"\n"
+                + "address.firstLine Expected: \"High and Over\" but: was \"Low and Under\"");
+    }
+
+    @Test
+    public void testPromotedMismatch() throws IOException {
+        GenericRecord actual = actual();
+        actual.put("title", ByteBuffer.wrap("Dr".getBytes(Charsets.UTF_8)));
+        actual.put("age", 22);
+        actual.put("gender", new GenericData.EnumSymbol(PERSON_V2.getField("gender").schema(), "OTHER"));
+
+        assertMismatch(actual, "title Expected: \"Mr\" but: was \"Dr\"\n"
+                + "age Expected: <21L> but: was <22L>\n"
+                + "gender Expected: <MALE> but: was <OTHER>");
+    }
+
+    @Test
+    public void testMissingFieldUsesDefault() throws IOException {
+        Person expected = expected();
+        expected.setEmail("john.smith@acme.com");
+
+        Matcher<IndexedRecord> matcher = avroEqualTo((IndexedRecord) expected, new Options().setSchemaResolution(true));
+        assertThat(matcher.matches(actual()), is(false));
+        StringDescription description = new StringDescription();
+        matcher.describeMismatch(actual(), description);
+        assertThat(description.toString(), equalTo("email Expected: \"john.smith@acme.com\" but: was null"));
+    }
+
+    @Test
+    public void testIncompatibleName() throws IOException {
+        GenericRecord actual = actual();
+        Schema place = Schema.createRecord("Place", null, "com.byhiras.avro", false);
+        place.setFields(Collections.<Schema.Field> emptyList());
+        actual.put("address", new GenericData.Record(place));
+
+        assertMismatch(actual, "address has schema com.byhiras.avro.Place which is not compatible with com.byhiras.avro.Location");
+    }
+
+    @Test
+    public void testWithoutResolution() throws IOException {
+        assertThat(avroEqualTo((IndexedRecord) expected()).matches(actual()), is(false));
+    }
+
+    @Test
+    public void testPromote() {
+        assertThat(SchemaResolution.promote(Schema.Type.LONG, 1), equalTo((Object) 1L));
+        assertThat(SchemaResolution.promote(Schema.Type.FLOAT, 1L), equalTo((Object) 1f));
+        assertThat(SchemaResolution.promote(Schema.Type.DOUBLE, 1.5f), equalTo((Object) 1.5));
+        assertThat(SchemaResolution.promote(Schema.Type.STRING, ByteBuffer.wrap(new byte[] { 'a' })), equalTo((Object) new Utf8("a")));
+        assertThat(SchemaResolution.promote(Schema.Type.BYTES, "a"), equalTo((Object) ByteBuffer.wrap(new byte[] { 'a' })));
+        assertThat(SchemaResolution.promote(Schema.Type.INT, 1L), equalTo((Object) 1L));
+    }
+
+    private static void assertMismatch(GenericRecord actual, String description) {
+        Matcher<IndexedRecord> matcher = avroEqualTo((IndexedRecord) expected(), new Options().setSchemaResolution(true));
+        assertThat(matcher.matches(actual), is(false));
+
+        StringDescription stringDescription = new StringDescription();
+        matcher.describeMismatch(actual, stringDescription);
+        assertThat(stringDescription.toString(), equalTo(description));
+    }
+
+    private static Person expected() {
+        Person person = johnSmith().setEmail(null).setHeight(1.75).build();
+        person.getAddress().setSecondLine(null);
+        person.getAddress().setThirdLine(null);
+        person.getAddress().setCounty(null);
+        return person;
+    }
+
+    /**
+     * @return John Smith as written with {@link #PERSON_V2} and decoded as a generic record
+     */
+    private static GenericRecord actual() throws IOException {
+        Person person = johnSmith().build();
+        Schema phoneNumberSchema = PERSON_V2.getField("telephoneNumbers").schema().getTypes().get(1).getElementType();
+        List<GenericRecord> phoneNumbers = new GenericData.Array<GenericRecord>(3, PERSON_V2.getField("telephoneNumbers").schema()
+                .getTypes().get(1));
+        for (PhoneNumber phoneNumber : person.getTelephoneNumbers()) {
+            GenericRecord record = new GenericData.Record(phoneNumberSchema);
+            record.put("type", new GenericData.EnumSymbol(phoneNumberSchema.getField("type").schema(), phoneNumber.getType().name()));
+            record.put("digits", phoneNumber.getDigits());
+            phoneNumbers.add(record);
+        }
+        GenericRecord address = new GenericData.Record(PERSON_V2.getField("address").schema().getTypes().get(1));
+        address.put("firstLine", person.getAddress().getFirstLine());
+        address.put("postCode", person.getAddress().getPostCode());
+
+        GenericRecord record = new GenericData.Record(PERSON_V2);
+        record.put("lastName", person.getLastName());
+        record.put("firstName", person.getFirstName());
+        record.put("nickname", "Johnny");
+        record.put("title", ByteBuffer.wrap(person.getTitle().getBytes(Charsets.UTF_8)));
+        record.put("age", person.getAge().intValue());
+        record.put("height", 1.75f);
+        record.put("gender", new GenericData.EnumSymbol(PERSON_V2.getField("gender").schema(), person.getGender().name()));
+        record.put("telephoneNumbers", phoneNumbers);
+        record.put("address", address);
+        record.put("familyMembers", ImmutableMap.copyOf(person.getFamilyMembers()));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(bytes, null);
+        new GenericDatumWriter<GenericRecord>(PERSON_V2).write(record, encoder);
+        encoder.flush();
+        return new GenericDatumReader<GenericRecord>(PERSON_V2)
+                .read(null, DecoderFactory.get().binaryDecoder(bytes.toByteArray(), null));
+    }
+}
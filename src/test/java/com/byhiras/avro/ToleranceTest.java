@@ -0,0 +1,110 @@
+package com.byhiras.avro;
+
+/**
+ * Copyright 2015 Byhiras (Europe) Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import static com.byhiras.avro.AvroMatchers.avroEqualTo;
+import static com.byhiras.avro.AvroMatchers.avroStreamVerifierInAnyOrder;
+import static com.byhiras.avro.IsAvroObjectEqualTest.johnSmith;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.junit.Test;
+
+import com.byhiras.avro.AvroMatchers.Options;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Longs;
+
+public class ToleranceTest {
+    @Test
+    public void testCandidateBucketsContainExpectedBucket() {
+        Random random = new Random(0);
+        for (Tolerance tolerance : ImmutableList.of(Tolerance.DEFAULT, Tolerance.of(1e-3, 0.1), Tolerance.of(0.0, 1e-6), Tolerance.EXACT)) {
+            for (int i = 0; i < 100000; i++) {
+                double expected = i % 100 == 0 ? 0.0 : (random.nextBoolean() ? 1 : -1) * Math.pow(10, random.nextInt(40) - 20) * random.nextDouble();
+                double error = tolerance.getError(expected);
+                // some values on the edge of the tolerance, some outside
+                double actual = expected + (i % 3 == 0 ? (random.nextBoolean() ? error : -error) : (2 * random.nextDouble() - 1) * error * 1.1);
+                if (tolerance.isWithin(expected, actual)) {
+                    assertThat(tolerance + " " + expected + " " + actual,
+                            Longs.contains(tolerance.candidateBuckets(actual), tolerance.bucket(expected)), is(true));
+                }
+            }
+        }
+        assertThat(Longs.contains(Tolerance.DEFAULT.candidateBuckets(Double.NaN), Tolerance.DEFAULT.bucket(Double.NaN)), is(true));
+        assertThat(Tolerance.DEFAULT.candidateBuckets(1.0).length <= 2, is(true));
+    }
+
+    @Test
+    public void testPathTolerance() throws IOException {
+        Person expected = johnSmith().setHeight(1.8).build();
+        Person actual = johnSmith().setHeight(1.81).build();
+
+        assertThat(avroEqualTo(expected).matches(actual), is(false));
+        assertThat(avroEqualTo(expected, new Options().setTolerance(Tolerance.of(0.01, 0.0))).matches(actual), is(true));
+        Matcher<Person> matcher = avroEqualTo(expected, new Options().setTolerance(ImmutableList.of("height"), Tolerance.of(0.001, 0.0)));
+        assertThat(matcher.matches(actual), is(false));
+        StringDescription description = new StringDescription();
+        matcher.describeMismatch(actual, description);
+        assertThat(description.toString().startsWith("height Expected: a numeric value within <0.0018"), is(true));
+        assertThat(avroEqualTo(expected, new Options().setTolerance(ImmutableList.of("height"), Tolerance.of(0.01, 0.0))).matches(actual), is(true));
+        assertThat(new BinaryRecordComparator(Person.getClassSchema(), new Options().setTolerance(ImmutableList.of("height"), Tolerance.of(0.01, 0.0)))
+                .matches(BinaryRecordMatcherTest.encode(expected), BinaryRecordMatcherTest.encode(actual)), is(true));
+    }
+
+    @Test
+    public void testFloats() {
+        Matcher<?> matcher = Tolerance.of(1e-3, 0.0).matcher(1.0f);
+
+        assertThat(matcher.matches(1.0005f), is(true));
+        assertThat(matcher.matches(1.01f), is(false));
+        assertThat(matcher.matches(1.0005), is(false));
+    }
+
+    @Test
+    public void testUnorderedMatchingIndexesDoubles() {
+        Options options = new Options().setTolerance(Tolerance.of(1e-6, 1e-6));
+        RecordFingerprinter fingerprinter = new RecordFingerprinter(options);
+        List<Person> expected = Lists.newArrayList();
+        List<Person> actual = Lists.newArrayList();
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; i++) {
+            double height = i == 0 ? 0.0 : random.nextGaussian() * 100;
+            Person person = johnSmith().setHeight(height).build();
+            Person close = johnSmith().setHeight(height + (2 * random.nextDouble() - 1) * Tolerance.of(1e-6, 1e-6).getError(height)).build();
+            assertThat(Longs.contains(fingerprinter.candidateFingerprints(close), fingerprinter.fingerprint(person)), is(true));
+            expected.add(person);
+            actual.add(0, close);
+        }
+        // distinct heights are in distinct buckets
+        assertThat(fingerprinter.fingerprint(johnSmith().setHeight(1.0).build()) == fingerprinter.fingerprint(johnSmith().setHeight(2.0).build()), is(false));
+
+        AvroStreamVerifier<Person> verifier = avroStreamVerifierInAnyOrder(expected, options);
+        for (Person person : actual) {
+            verifier.offer(person);
+        }
+        assertThat(verifier.finish().toString(), equalTo("matched: 1000, missing: 0, unexpected: 0"));
+    }
+}